@@ -23,6 +23,14 @@ repositories {
     mavenCentral()
 }
 
+// JMH benchmarks live in src/jmh/java and run with `./gradlew jmh`
+val jmh: SourceSet by sourceSets.creating {
+    compileClasspath += sourceSets.main.get().output
+    runtimeClasspath += sourceSets.main.get().output
+}
+
+configurations[jmh.implementationConfigurationName].extendsFrom(configurations.implementation.get())
+
 dependencies {
     implementation("org.bouncycastle:bcprov-jdk15to18:1.80")
     implementation("org.bouncycastle:bcpkix-jdk15to18:1.80")
@@ -35,12 +43,24 @@ dependencies {
     // Other test dependencies
     testImplementation("commons-io:commons-io:2.4")
     testImplementation("org.slf4j:slf4j-simple:1.7.25")
+
+    // Benchmarks
+    "jmhImplementation"("org.openjdk.jmh:jmh-core:1.37")
+    "jmhAnnotationProcessor"("org.openjdk.jmh:jmh-generator-annprocess:1.37")
 }
 
 tasks.test {
     useJUnitPlatform()
 }
 
+tasks.register<JavaExec>("jmh") {
+    group = "verification"
+    description = "Runs the JMH benchmarks. Select benchmarks with -Pjmh.includes=<regex>."
+    classpath = jmh.runtimeClasspath
+    mainClass.set("org.openjdk.jmh.Main")
+    args(findProperty("jmh.includes")?.toString() ?: ".*")
+}
+
 nexusPublishing {
     repositories {
         sonatype {
@@ -0,0 +1,61 @@
+package com.widen.urlbuilder;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.spec.ECGenParameterSpec;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the throughput of signing a CloudFront URL with RSA-2048 and SHA-1, RSA-2048 and SHA-256, and ECDSA
+ * P-256 and SHA-256.
+ * <p>
+ * Run with {@code ./gradlew jmh -Pjmh.includes=CloudfrontSigningBenchmark}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CloudfrontSigningBenchmark {
+
+    @Param({"RSA_SHA1", "RSA_SHA256", "ECDSA_SHA256"})
+    public CloudfrontSignatureAlgorithm algorithm;
+
+    private CloudfrontUrlBuilder builder;
+
+    @Setup
+    public void setUp() throws GeneralSecurityException {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance(algorithm.getKeyAlgorithm());
+        if (algorithm == CloudfrontSignatureAlgorithm.ECDSA_SHA256) {
+            generator.initialize(new ECGenParameterSpec("secp256r1"));
+        }
+        else {
+            generator.initialize(2048);
+        }
+        PrivateKey key = generator.generateKeyPair().getPrivate();
+
+        builder = new CloudfrontUrlBuilder("d111111abcdef8.cloudfront.net", "/photos/2024/summer/beach.jpg", "K2JCJMDEHXQW5F", key, algorithm)
+            .withSsl()
+            .withAttachmentFilename("beach.jpg")
+            .expireIn(1, TimeUnit.HOURS);
+    }
+
+    @Benchmark
+    public String sign() {
+        return builder.toString();
+    }
+}
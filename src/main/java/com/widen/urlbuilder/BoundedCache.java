@@ -0,0 +1,151 @@
+package com.widen.urlbuilder;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+/**
+ * A small, thread-safe cache that keeps the most recently used values up to a fixed number of entries.
+ * <p>
+ * Used for values that are derived from configuration, such as bucket name verdicts, resolved endpoints and signed
+ * policies: the working set is small, but callers cannot bound it. Lookups of cached values take no locks, as they
+ * sit on the render path of every builder. Each hit stamps its entry; when the cache grows beyond its capacity, one
+ * thread drops the entries used least recently until it is a tenth below capacity, instead of starting over.
+ * <p>
+ * Each value is computed once: a lookup that finds the value still being computed by another thread waits for it
+ * instead of computing it again. A computation that throws is not cached, and the exception is rethrown to every
+ * thread that waited for it.
+ */
+final class BoundedCache<K, V> {
+
+    private final ConcurrentMap<K, Slot<V>> entries = new ConcurrentHashMap<>();
+
+    private final int capacity;
+
+    private final AtomicBoolean evicting = new AtomicBoolean();
+
+    /**
+     * @param capacity maximum number of entries
+     * @throws IllegalArgumentException if capacity is less than 1
+     */
+    BoundedCache(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be at least 1");
+        }
+        this.capacity = capacity;
+    }
+
+    /**
+     * Get the value for a key, computing it on first use.
+     *
+     * @param compute derives the value of a key; must not return null
+     */
+    V get(K key, Function<? super K, ? extends V> compute) {
+        Slot<V> slot = entries.get(key);
+
+        if (slot == null) {
+            Slot<V> computing = new Slot<>();
+            slot = entries.computeIfAbsent(key, k -> computing);
+            if (slot == computing) {
+                return computeAsOwner(key, computing, compute);
+            }
+        }
+
+        slot.used = System.nanoTime();
+        try {
+            return slot.value.join();
+        }
+        catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * @return number of entries, including values still being computed
+     */
+    int size() {
+        return entries.size();
+    }
+
+    private V computeAsOwner(K key, Slot<V> slot, Function<? super K, ? extends V> compute) {
+        V value;
+        try {
+            value = compute.apply(key);
+        }
+        catch (RuntimeException | Error e) {
+            entries.remove(key, slot);
+            slot.value.completeExceptionally(e);
+            throw e;
+        }
+        slot.value.complete(value);
+
+        if (entries.size() > capacity) {
+            evict();
+        }
+        return value;
+    }
+
+    /**
+     * Drop the entries used least recently until the cache is a tenth below capacity. Values still being computed are
+     * kept. Only one thread evicts at a time; the others carry on.
+     */
+    private void evict() {
+        if (!evicting.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            // stamps are read once, as hits keep updating them while the candidates are sorted
+            List<Candidate<K, V>> done = new ArrayList<>();
+            for (Map.Entry<K, Slot<V>> e : entries.entrySet()) {
+                if (e.getValue().value.isDone()) {
+                    done.add(new Candidate<>(e.getKey(), e.getValue()));
+                }
+            }
+            done.sort(Comparator.comparingLong(c -> c.used));
+
+            int target = capacity - capacity / 10;
+            for (int i = 0; i < done.size() && entries.size() > target; i++) {
+                entries.remove(done.get(i).key, done.get(i).slot);
+            }
+        }
+        finally {
+            evicting.set(false);
+        }
+    }
+
+    private static final class Slot<V> {
+
+        final CompletableFuture<V> value = new CompletableFuture<>();
+
+        /** {@link System#nanoTime()} of the last lookup; racy updates only blur the eviction order. */
+        volatile long used = System.nanoTime();
+    }
+
+    private static final class Candidate<K, V> {
+
+        final K key;
+
+        final Slot<V> slot;
+
+        final long used;
+
+        Candidate(K key, Slot<V> slot) {
+            this.key = key;
+            this.slot = slot;
+            this.used = slot.used;
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package com.widen.urlbuilder;
+
+import java.util.Date;
+
+/**
+ * A CloudFront custom policy that grants access to every URL matching a resource pattern.
+ * <p>
+ * A canned policy names one URL, so each URL needs its own RSA signature. A custom policy names a pattern such as
+ * {@code https://d111111abcdef8.cloudfront.net/gallery/42/*} instead; one signature over the policy then
+ * authorizes any number of URLs under it. Use it with {@link CloudfrontUrlBuilder#withCustomPolicy(CloudfrontCustomPolicy)}:
+ * the encoded policy and its signature are cached by the credentials, so every URL rendered for the same pattern
+ * and expiry is stamped with the cached pair without signing again. Aligning expiry with
+ * {@link CloudfrontUrlBuilder#withExpiryPolicy(ExpiryPolicy)} keeps the expiry, and so the cached pair, the same for
+ * a whole window.
+ * <p>
+ * <b>Example:</b>
+ * <pre>
+ * CloudfrontCustomPolicy gallery = CloudfrontCustomPolicy.builder("https://d111111abcdef8.cloudfront.net/gallery/42/*")
+ *     .fromIpAddress("192.0.2.0/24")
+ *     .build();
+ *
+ * new CloudfrontUrlBuilder(hostname, "/gallery/42/1.jpg", credentials)
+ *     .withSsl()
+ *     .withCustomPolicy(gallery)
+ *     .withExpiryPolicy(ExpiryPolicy.alignedTo(15, TimeUnit.MINUTES))
+ *     .expireIn(1, TimeUnit.HOURS)
+ *     .toString();
+ * </pre>
+ * <p>
+ * Instances are immutable.
+ *
+ * @see <a href="https://docs.aws.amazon.com/AmazonCloudFront/latest/DeveloperGuide/private-content-creating-signed-url-custom-policy.html">Creating a signed URL using a custom policy</a>
+ * @since 3.0.0
+ */
+public final class CloudfrontCustomPolicy {
+
+    private static final long NOT_SET = Long.MIN_VALUE;
+
+    private final String resource;
+
+    private final long activeFromEpochSeconds;
+
+    private final String ipAddress;
+
+    /** The policy up to the expiry time, which is the only part that changes between signatures. */
+    private final String jsonPrefix;
+
+    /** The policy after the expiry time. */
+    private final String jsonSuffix;
+
+    private CloudfrontCustomPolicy(Builder builder) {
+        this.resource = builder.resource;
+        this.activeFromEpochSeconds = builder.activeFromEpochSeconds;
+        this.ipAddress = builder.ipAddress;
+
+        StringBuilder prefix = new StringBuilder(128).append("{\"Statement\":[{\"Resource\":\"");
+        appendJson(prefix, resource);
+        jsonPrefix = prefix.append("\",\"Condition\":{\"DateLessThan\":{\"AWS:EpochTime\":").toString();
+
+        StringBuilder suffix = new StringBuilder(64).append('}');
+        if (activeFromEpochSeconds != NOT_SET) {
+            suffix.append(",\"DateGreaterThan\":{\"AWS:EpochTime\":").append(activeFromEpochSeconds).append('}');
+        }
+        if (ipAddress != null) {
+            suffix.append(",\"IpAddress\":{\"AWS:SourceIp\":\"");
+            appendJson(suffix, ipAddress);
+            suffix.append("\"}");
+        }
+        jsonSuffix = suffix.append("}}]}").toString();
+    }
+
+    /**
+     * Start configuring a policy.
+     *
+     * @param resource URL pattern the policy grants access to; {@code *} matches any run of characters and
+     * {@code ?} any single character
+     * @throws IllegalArgumentException if resource is blank
+     */
+    public static Builder builder(String resource) {
+        return new Builder(resource);
+    }
+
+    public String getResource() {
+        return resource;
+    }
+
+    /**
+     * @return the time before which access is denied, or null if access starts immediately
+     */
+    public Date getActiveFrom() {
+        return activeFromEpochSeconds != NOT_SET ? new Date(activeFromEpochSeconds * 1000L) : null;
+    }
+
+    /**
+     * @return the IP range in CIDR notation access is limited to, or null if any address is allowed
+     */
+    public String getIpAddress() {
+        return ipAddress;
+    }
+
+    /**
+     * @return true if the resource pattern matches a URL, as CloudFront matches it
+     */
+    public boolean matches(String url) {
+        return matches(resource, url);
+    }
+
+    /**
+     * Render the policy statement for an expiry time.
+     *
+     * @param expires expiry time, in epoch seconds
+     */
+    String toJson(long expires) {
+        return new StringBuilder(jsonPrefix.length() + jsonSuffix.length() + 20)
+            .append(jsonPrefix)
+            .append(expires)
+            .append(jsonSuffix)
+            .toString();
+    }
+
+    /**
+     * @return true if a resource pattern matches a URL, as CloudFront matches it
+     */
+    static boolean matches(String pattern, String text) {
+        // Backtracks to the most recent '*' only, which is linear for patterns with a single wildcard
+        int p = 0;
+        int t = 0;
+        int starPattern = -1;
+        int starText = -1;
+
+        while (t < text.length()) {
+            if (p < pattern.length() && (pattern.charAt(p) == '?' || pattern.charAt(p) == text.charAt(t))) {
+                p++;
+                t++;
+            }
+            else if (p < pattern.length() && pattern.charAt(p) == '*') {
+                starPattern = p++;
+                starText = t;
+            }
+            else if (starPattern >= 0) {
+                p = starPattern + 1;
+                t = ++starText;
+            }
+            else {
+                return false;
+            }
+        }
+
+        while (p < pattern.length() && pattern.charAt(p) == '*') {
+            p++;
+        }
+        return p == pattern.length();
+    }
+
+    private static void appendJson(StringBuilder json, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\');
+            }
+            json.append(c);
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof CloudfrontCustomPolicy)) {
+            return false;
+        }
+        CloudfrontCustomPolicy other = (CloudfrontCustomPolicy) o;
+        return jsonPrefix.equals(other.jsonPrefix) && jsonSuffix.equals(other.jsonSuffix);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * jsonPrefix.hashCode() + jsonSuffix.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "CloudfrontCustomPolicy{resource=" + resource + ", activeFrom=" + getActiveFrom() + ", ipAddress=" + ipAddress + "}";
+    }
+
+    public static final class Builder {
+
+        private final String resource;
+
+        private long activeFromEpochSeconds = NOT_SET;
+
+        private String ipAddress;
+
+        private Builder(String resource) {
+            InternalUtils.checkNotBlank(resource, "resource");
+            this.resource = resource;
+        }
+
+        /**
+         * Deny access before a time. Time is accurate to seconds.
+         *
+         * @throws IllegalArgumentException if date is null
+         */
+        public Builder activeFrom(Date date) {
+            InternalUtils.checkNotNull(date, "date");
+            this.activeFromEpochSeconds = Math.floorDiv(date.getTime(), 1000L);
+            return this;
+        }
+
+        /**
+         * Limit access to clients in an IP range.
+         *
+         * @param cidr IP address or range in CIDR notation, e.g. {@code 192.0.2.0/24}
+         * @throws IllegalArgumentException if cidr is blank
+         */
+        public Builder fromIpAddress(String cidr) {
+            InternalUtils.checkNotBlank(cidr, "cidr");
+            this.ipAddress = cidr;
+            return this;
+        }
+
+        public CloudfrontCustomPolicy build() {
+            return new CloudfrontCustomPolicy(this);
+        }
+    }
+}
@@ -1,11 +1,25 @@
 package com.widen.urlbuilder;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.StringReader;
 import java.security.KeyFactory;
 import java.security.PrivateKey;
+import java.security.PublicKey;
 import java.security.Security;
 import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+
+import org.bouncycastle.asn1.ASN1OctetString;
+import org.bouncycastle.asn1.ASN1Sequence;
+import org.bouncycastle.asn1.DERNull;
+import org.bouncycastle.asn1.pkcs.PKCSObjectIdentifiers;
+import org.bouncycastle.asn1.pkcs.PrivateKeyInfo;
+import org.bouncycastle.asn1.pkcs.RSAPrivateKey;
+import org.bouncycastle.asn1.sec.ECPrivateKey;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.asn1.x509.SubjectPublicKeyInfo;
+import org.bouncycastle.asn1.x9.X9ObjectIdentifiers;
 
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 import org.bouncycastle.openssl.PEMKeyPair;
@@ -14,13 +28,15 @@ import org.bouncycastle.openssl.PEMParser;
 public class CloudfrontPrivateKeyUtils
 {
 
+    /**
+     * Read an RSA or EC private key in DER form: PKCS#8, or the PKCS#1 / SEC1 structure OpenSSL writes for
+     * {@code RSA PRIVATE KEY} and {@code EC PRIVATE KEY} PEM files.
+     */
     public static PrivateKey fromDerBinary(InputStream stream)
     {
         try
         {
-            PKCS8EncodedKeySpec key = new PKCS8EncodedKeySpec(InternalUtils.toByteArray(stream));
-            KeyFactory keyFactory = KeyFactory.getInstance("RSA");
-            return keyFactory.generatePrivate(key);
+            return toPrivateKey(privateKeyInfo(InternalUtils.toByteArray(stream)));
         }
         catch (Exception e)
         {
@@ -28,6 +44,10 @@ public class CloudfrontPrivateKeyUtils
         }
     }
 
+    /**
+     * Read an RSA or EC private key from PEM: {@code RSA PRIVATE KEY}, {@code EC PRIVATE KEY} (optionally preceded by
+     * {@code EC PARAMETERS}), or PKCS#8 {@code PRIVATE KEY}.
+     */
     public static PrivateKey fromPemString(String pem)
     {
         registerBouncyCastleProvider();
@@ -35,11 +55,42 @@ public class CloudfrontPrivateKeyUtils
         try
         {
             PEMParser reader = new PEMParser(new StringReader(pem));
-            PEMKeyPair pair = (PEMKeyPair) reader.readObject();
-            PKCS8EncodedKeySpec privateKeySpec = new PKCS8EncodedKeySpec(pair.getPrivateKeyInfo().getEncoded());
+            for (Object object = reader.readObject(); object != null; object = reader.readObject())
+            {
+                if (object instanceof PEMKeyPair)
+                {
+                    return toPrivateKey(((PEMKeyPair) object).getPrivateKeyInfo());
+                }
+                if (object instanceof PrivateKeyInfo)
+                {
+                    return toPrivateKey((PrivateKeyInfo) object);
+                }
+                // Skip EC PARAMETERS and anything else ahead of the key
+            }
+            throw new IllegalArgumentException("No private key found in PEM.");
+        }
+        catch (Exception e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
 
-            KeyFactory factory = KeyFactory.getInstance("RSA");
-            return factory.generatePrivate(privateKeySpec);
+    /**
+     * Read the RSA or EC public key of a Cloudfront key pair, as used by {@link SignedUrlVerifier}. Accepts a
+     * {@code PUBLIC KEY} PEM, as uploaded to Cloudfront, or the {@code RSA PRIVATE KEY} PEM of the key pair.
+     */
+    public static PublicKey publicKeyFromPemString(String pem)
+    {
+        registerBouncyCastleProvider();
+
+        try
+        {
+            PEMParser reader = new PEMParser(new StringReader(pem));
+            Object object = reader.readObject();
+            SubjectPublicKeyInfo info = object instanceof PEMKeyPair ? ((PEMKeyPair) object).getPublicKeyInfo() : (SubjectPublicKeyInfo) object;
+
+            KeyFactory factory = KeyFactory.getInstance(keyAlgorithm(info.getAlgorithm()));
+            return factory.generatePublic(new X509EncodedKeySpec(info.getEncoded()));
         }
         catch (Exception e)
         {
@@ -52,4 +103,51 @@ public class CloudfrontPrivateKeyUtils
         Security.addProvider(new BouncyCastleProvider());
     }
 
+    /**
+     * Wrap PKCS#1 RSA and SEC1 EC structures in PKCS#8 so all three decode the same way.
+     */
+    private static PrivateKeyInfo privateKeyInfo(byte[] der) throws IOException
+    {
+        ASN1Sequence sequence = ASN1Sequence.getInstance(der);
+
+        // PKCS#8: version, AlgorithmIdentifier, key
+        if (sequence.size() >= 3 && sequence.getObjectAt(1) instanceof ASN1Sequence)
+        {
+            return PrivateKeyInfo.getInstance(sequence);
+        }
+
+        // SEC1: version 1, private key octets, [0] curve, [1] public key
+        if (sequence.getObjectAt(1) instanceof ASN1OctetString)
+        {
+            ECPrivateKey key = ECPrivateKey.getInstance(sequence);
+            if (key.getParametersObject() == null)
+            {
+                throw new IllegalArgumentException("EC private key does not name its curve.");
+            }
+            return new PrivateKeyInfo(new AlgorithmIdentifier(X9ObjectIdentifiers.id_ecPublicKey, key.getParametersObject()), key);
+        }
+
+        // PKCS#1: version, modulus, public exponent, ...
+        return new PrivateKeyInfo(new AlgorithmIdentifier(PKCSObjectIdentifiers.rsaEncryption, DERNull.INSTANCE), RSAPrivateKey.getInstance(sequence));
+    }
+
+    private static PrivateKey toPrivateKey(PrivateKeyInfo info) throws Exception
+    {
+        KeyFactory factory = KeyFactory.getInstance(keyAlgorithm(info.getPrivateKeyAlgorithm()));
+        return factory.generatePrivate(new PKCS8EncodedKeySpec(info.getEncoded()));
+    }
+
+    private static String keyAlgorithm(AlgorithmIdentifier algorithm)
+    {
+        if (PKCSObjectIdentifiers.rsaEncryption.equals(algorithm.getAlgorithm()))
+        {
+            return "RSA";
+        }
+        if (X9ObjectIdentifiers.id_ecPublicKey.equals(algorithm.getAlgorithm()))
+        {
+            return "EC";
+        }
+        throw new IllegalArgumentException("Unsupported key algorithm " + algorithm.getAlgorithm() + "; Cloudfront keys are RSA or EC.");
+    }
+
 }
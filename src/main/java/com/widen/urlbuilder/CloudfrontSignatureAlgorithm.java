@@ -0,0 +1,100 @@
+package com.widen.urlbuilder;
+
+import java.security.Key;
+
+/**
+ * Signature algorithms CloudFront accepts for signed URLs and cookies.
+ * <p>
+ * The algorithm follows from the key pair and the hash CloudFront is told to use: RSA key pairs sign with SHA-1,
+ * the default, or SHA-256; ECDSA P-256 key pairs sign with SHA-256. ECDSA signing is far cheaper than RSA-2048, so
+ * new key groups should prefer it. Anything other than SHA-1 is announced with a {@code Hash-Algorithm} URL
+ * parameter, or a {@code CloudFront-Hash-Algorithm} cookie.
+ *
+ * @see CloudfrontUrlBuilder.TrustedSignerCredentials
+ * @see <a href="https://docs.aws.amazon.com/AmazonCloudFront/latest/DeveloperGuide/private-content-trusted-signers.html">Specifying signers</a>
+ * @since 3.0.0
+ */
+public enum CloudfrontSignatureAlgorithm {
+
+    /** RSA with SHA-1; the default for RSA key pairs. */
+    RSA_SHA1("RSA", "SHA1", "SHA1withRSA"),
+
+    /** RSA with SHA-256. */
+    RSA_SHA256("RSA", "SHA256", "SHA256withRSA"),
+
+    /** ECDSA with SHA-256; the default for EC key pairs. */
+    ECDSA_SHA256("EC", "SHA256", "SHA256withECDSA");
+
+    private final String keyAlgorithm;
+
+    private final String hashAlgorithm;
+
+    private final String jcaName;
+
+    CloudfrontSignatureAlgorithm(String keyAlgorithm, String hashAlgorithm, String jcaName) {
+        this.keyAlgorithm = keyAlgorithm;
+        this.hashAlgorithm = hashAlgorithm;
+        this.jcaName = jcaName;
+    }
+
+    /**
+     * @return the default algorithm for a key: {@link #RSA_SHA1} for RSA keys, {@link #ECDSA_SHA256} for EC keys
+     * @throws IllegalArgumentException if key is null or neither an RSA nor an EC key
+     */
+    public static CloudfrontSignatureAlgorithm defaultFor(Key key) {
+        InternalUtils.checkNotNull(key, "key");
+        CloudfrontSignatureAlgorithm algorithm = of(key, "SHA1");
+        if (algorithm == null) {
+            algorithm = of(key, "SHA256");
+        }
+        if (algorithm == null) {
+            throw new IllegalArgumentException("Unsupported key algorithm " + key.getAlgorithm() + "; CloudFront keys are RSA or EC.");
+        }
+        return algorithm;
+    }
+
+    /**
+     * @param hashAlgorithm value of a {@code Hash-Algorithm} parameter; null for the default, SHA-1
+     * @return the algorithm for a key and hash, or null if CloudFront does not accept the combination
+     */
+    static CloudfrontSignatureAlgorithm of(Key key, String hashAlgorithm) {
+        String hash = hashAlgorithm != null ? hashAlgorithm : "SHA1";
+        // Bouncy Castle names EC keys "ECDSA"
+        String keyAlgorithm = "ECDSA".equals(key.getAlgorithm()) ? "EC" : key.getAlgorithm();
+
+        for (CloudfrontSignatureAlgorithm algorithm : values()) {
+            if (algorithm.keyAlgorithm.equals(keyAlgorithm) && algorithm.hashAlgorithm.equals(hash)) {
+                return algorithm;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the JCA name of the key algorithm, {@code RSA} or {@code EC}
+     */
+    public String getKeyAlgorithm() {
+        return keyAlgorithm;
+    }
+
+    /**
+     * @return the hash as CloudFront names it, {@code SHA1} or {@code SHA256}
+     */
+    public String getHashAlgorithm() {
+        return hashAlgorithm;
+    }
+
+    /**
+     * @return the JCA name of the signature algorithm, for {@link java.security.Signature#getInstance(String)}
+     */
+    public String getJcaName() {
+        return jcaName;
+    }
+
+    /**
+     * @return true if CloudFront must be told the hash algorithm, i.e. it is not SHA-1
+     */
+    boolean announcesHash() {
+        return !"SHA1".equals(hashAlgorithm);
+    }
+}
@@ -0,0 +1,290 @@
+package com.widen.urlbuilder;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Issues CloudFront signed cookies, which authorize every request a browser makes under a custom policy.
+ * <p>
+ * A signed URL carries its own signature, so a page of assets needs one RSA signature per URL. Signed cookies are
+ * set once, e.g. at login, and cover every URL the {@link CloudfrontCustomPolicy} matches for as long as they are
+ * valid; the asset URLs themselves stay unsigned. Cookies are signed with the same
+ * {@link CloudfrontUrlBuilder.TrustedSignerCredentials} as URLs and share their cache of signed policies, so
+ * sessions that start within the same {@link ExpiryPolicy} window get the same cookies without signing
+ * again.
+ * <p>
+ * Instances are immutable and thread-safe.
+ * <p>
+ * <b>Typical usage:</b>
+ * <pre>
+ * CloudfrontSignedCookies cookies = CloudfrontSignedCookies.builder(credentials,
+ *         CloudfrontCustomPolicy.builder("https://media.example.com/*").build())
+ *     .withDomain("media.example.com")
+ *     .withExpiryPolicy(ExpiryPolicy.alignedTo(15, TimeUnit.MINUTES))
+ *     .build();
+ *
+ * for (String header : cookies.setCookieHeaders(8, TimeUnit.HOURS)) {
+ *     response.addHeader("Set-Cookie", header);
+ * }
+ * </pre>
+ *
+ * @see <a href="https://docs.aws.amazon.com/AmazonCloudFront/latest/DeveloperGuide/private-content-setting-signed-cookie-custom-policy.html">Setting signed cookies using a custom policy</a>
+ * @since 3.0.0
+ */
+public final class CloudfrontSignedCookies {
+
+    /** Name of the cookie holding the encoded policy. */
+    public static final String POLICY = "CloudFront-Policy";
+
+    /** Name of the cookie holding the policy signature. */
+    public static final String SIGNATURE = "CloudFront-Signature";
+
+    /** Name of the cookie holding the key pair id. */
+    public static final String KEY_PAIR_ID = "CloudFront-Key-Pair-Id";
+
+    /** Name of the cookie naming the hash algorithm, set when it is not SHA1. */
+    public static final String HASH_ALGORITHM = "CloudFront-Hash-Algorithm";
+
+    private static final DateTimeFormatter COOKIE_DATE = DateTimeFormatter
+        .ofPattern("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US)
+        .withZone(ZoneOffset.UTC);
+
+    private final CloudfrontUrlBuilder.TrustedSignerCredentials credentials;
+
+    private final CloudfrontCustomPolicy policy;
+
+    /** {@code ; Domain=...; Path=...}, before the expiry. */
+    private final String scopeAttributes;
+
+    /** {@code ; Secure; HttpOnly; SameSite=...}, after the expiry. */
+    private final String flagAttributes;
+
+    private final Clock clock;
+
+    private final ExpiryPolicy expiryPolicy;
+
+    private CloudfrontSignedCookies(Builder builder) {
+        this.credentials = builder.credentials;
+        this.policy = builder.policy;
+        this.clock = builder.clock;
+        this.expiryPolicy = builder.expiryPolicy;
+
+        StringBuilder scope = new StringBuilder(64);
+        if (builder.domain != null) {
+            scope.append("; Domain=").append(builder.domain);
+        }
+        scopeAttributes = scope.append("; Path=").append(builder.path).toString();
+
+        StringBuilder flags = new StringBuilder(32);
+        if (builder.secure) {
+            flags.append("; Secure");
+        }
+        if (builder.httpOnly) {
+            flags.append("; HttpOnly");
+        }
+        if (builder.sameSite != null) {
+            flags.append("; SameSite=").append(builder.sameSite);
+        }
+        flagAttributes = flags.toString();
+    }
+
+    /**
+     * Start configuring cookies.
+     *
+     * @param credentials the key pair the distribution trusts
+     * @param policy the URLs the cookies grant access to
+     * @throws IllegalArgumentException if credentials or policy is null
+     */
+    public static Builder builder(CloudfrontUrlBuilder.TrustedSignerCredentials credentials, CloudfrontCustomPolicy policy) {
+        return new Builder(credentials, policy);
+    }
+
+    public CloudfrontCustomPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Sign cookies that are valid for a duration from now.
+     *
+     * @param duration how long the cookies grant access
+     * @param unit unit of duration
+     * @return cookie names and values, in the order {@link #POLICY}, {@link #SIGNATURE}, {@link #KEY_PAIR_ID} and,
+     * for {@linkplain CloudfrontSignatureAlgorithm algorithms} other than SHA1, {@link #HASH_ALGORITHM}
+     * @throws IllegalArgumentException if unit is null
+     */
+    public Map<String, String> cookies(long duration, TimeUnit unit) {
+        InternalUtils.checkNotNull(unit, "unit");
+        return cookies(expiryPolicy.expiresAt(clock.millis(), unit.toMillis(duration)));
+    }
+
+    /**
+     * Sign cookies that are valid until an absolute time. Time is accurate to seconds.
+     *
+     * @throws IllegalArgumentException if expireAt is null
+     * @see #cookies(long, TimeUnit)
+     */
+    public Map<String, String> cookies(Date expireAt) {
+        InternalUtils.checkNotNull(expireAt, "expireAt");
+        return cookies(Math.floorDiv(expireAt.getTime(), 1000L));
+    }
+
+    /**
+     * Sign cookies that are valid for a duration from now, as {@code Set-Cookie} header values. The cookies expire
+     * in the browser when the policy does.
+     *
+     * @return one header value per cookie
+     * @throws IllegalArgumentException if unit is null
+     */
+    public List<String> setCookieHeaders(long duration, TimeUnit unit) {
+        InternalUtils.checkNotNull(unit, "unit");
+        return setCookieHeaders(expiryPolicy.expiresAt(clock.millis(), unit.toMillis(duration)));
+    }
+
+    /**
+     * Sign cookies that are valid until an absolute time, as {@code Set-Cookie} header values. Time is accurate to
+     * seconds.
+     *
+     * @return one header value per cookie
+     * @throws IllegalArgumentException if expireAt is null
+     */
+    public List<String> setCookieHeaders(Date expireAt) {
+        InternalUtils.checkNotNull(expireAt, "expireAt");
+        return setCookieHeaders(Math.floorDiv(expireAt.getTime(), 1000L));
+    }
+
+    private Map<String, String> cookies(long expires) {
+        CloudfrontUrlBuilder.SignedPolicy signed = credentials.signPolicy(policy.toJson(expires));
+
+        Map<String, String> cookies = new LinkedHashMap<>(4);
+        cookies.put(POLICY, signed.policy);
+        cookies.put(SIGNATURE, signed.signature);
+        cookies.put(KEY_PAIR_ID, credentials.getAccessKeyId());
+        if (credentials.getAlgorithm().announcesHash()) {
+            cookies.put(HASH_ALGORITHM, credentials.getAlgorithm().getHashAlgorithm());
+        }
+        return cookies;
+    }
+
+    private List<String> setCookieHeaders(long expires) {
+        String attributes = scopeAttributes + "; Expires=" + COOKIE_DATE.format(Instant.ofEpochSecond(expires)) + flagAttributes;
+
+        List<String> headers = new ArrayList<>(4);
+        for (Map.Entry<String, String> cookie : cookies(expires).entrySet()) {
+            headers.add(cookie.getKey() + "=" + cookie.getValue() + attributes);
+        }
+        return headers;
+    }
+
+    public static final class Builder {
+
+        private final CloudfrontUrlBuilder.TrustedSignerCredentials credentials;
+
+        private final CloudfrontCustomPolicy policy;
+
+        private String domain;
+
+        private String path = "/";
+
+        private boolean secure = true;
+
+        private boolean httpOnly = true;
+
+        private String sameSite;
+
+        private Clock clock = Clock.systemUTC();
+
+        private ExpiryPolicy expiryPolicy = ExpiryPolicy.EXACT;
+
+        private Builder(CloudfrontUrlBuilder.TrustedSignerCredentials credentials, CloudfrontCustomPolicy policy) {
+            InternalUtils.checkNotNull(credentials, "credentials");
+            InternalUtils.checkNotNull(policy, "policy");
+            this.credentials = credentials;
+            this.policy = policy;
+        }
+
+        /**
+         * Send the cookies to a domain and its subdomains, typically the alternate domain name of the distribution.
+         * Without a domain, browsers only send them to the host that set them.
+         *
+         * @throws IllegalArgumentException if domain is blank
+         */
+        public Builder withDomain(String domain) {
+            InternalUtils.checkNotBlank(domain, "domain");
+            this.domain = domain;
+            return this;
+        }
+
+        /**
+         * Send the cookies only for requests under a path.
+         *
+         * @param path defaults to {@code /}
+         * @throws IllegalArgumentException if path is blank
+         */
+        public Builder withPath(String path) {
+            InternalUtils.checkNotBlank(path, "path");
+            this.path = path;
+            return this;
+        }
+
+        /**
+         * @param secure whether browsers send the cookies over HTTPS only; defaults to true
+         */
+        public Builder usingSecure(boolean secure) {
+            this.secure = secure;
+            return this;
+        }
+
+        /**
+         * @param httpOnly whether the cookies are hidden from scripts; defaults to true
+         */
+        public Builder usingHttpOnly(boolean httpOnly) {
+            this.httpOnly = httpOnly;
+            return this;
+        }
+
+        /**
+         * @param sameSite {@code Strict}, {@code Lax} or {@code None}; not sent by default
+         * @throws IllegalArgumentException if sameSite is blank
+         */
+        public Builder withSameSite(String sameSite) {
+            InternalUtils.checkNotBlank(sameSite, "sameSite");
+            this.sameSite = sameSite;
+            return this;
+        }
+
+        /**
+         * Round relative expiry times so that cookies signed within the same window are identical.
+         *
+         * @param policy defaults to {@link ExpiryPolicy#EXACT}
+         * @throws IllegalArgumentException if policy is null
+         */
+        public Builder withExpiryPolicy(ExpiryPolicy policy) {
+            InternalUtils.checkNotNull(policy, "policy");
+            this.expiryPolicy = policy;
+            return this;
+        }
+
+        /**
+         * @param clock source of the current time; defaults to {@link Clock#systemUTC()}
+         * @throws IllegalArgumentException if clock is null
+         */
+        public Builder usingClock(Clock clock) {
+            InternalUtils.checkNotNull(clock, "clock");
+            this.clock = clock;
+            return this;
+        }
+
+        public CloudfrontSignedCookies build() {
+            return new CloudfrontSignedCookies(this);
+        }
+    }
+}
@@ -1,19 +1,29 @@
 package com.widen.urlbuilder;
 
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
 import java.nio.charset.StandardCharsets;
 import java.security.PrivateKey;
 import java.security.Signature;
-import java.util.Base64;
-import java.util.Calendar;
+import java.security.SignatureException;
+import java.security.interfaces.ECKey;
+import java.time.Clock;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.TimeZone;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class CloudfrontUrlBuilder
 {
 
+    private static final char[] BASE64_ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-~".toCharArray();
+
     private String distributionHostname;
 
     private String key;
@@ -28,59 +38,92 @@ public class CloudfrontUrlBuilder
 
     private ExpireDateHolder expireDate = new ExpireDateHolder();
 
+    private Clock clock = Clock.systemUTC();
+
+    private ExpiryPolicy expiryPolicy = ExpiryPolicy.EXACT;
+
+    private CloudfrontCustomPolicy customPolicy;
+
     private Map<String, String> parameters = new LinkedHashMap<String, String>();
 
+    /** The URL without signature parameters, kept until the key, hostname or parameters change. */
+    private String resource;
+
     /**
-     * Construct a "canned policy" Cloudfront URL; you must set an expire date.
+     * Construct a "canned policy" Cloudfront URL; you must set an expire date. RSA keys sign with SHA1, EC keys with SHA256.
      */
     public CloudfrontUrlBuilder(String distributionHostname, String key, String keyPairId, PrivateKey privateKey)
     {
-        this(distributionHostname, key, keyPairId, privateKey, "SunRsaSign");
+        this(distributionHostname, key, keyPairId, privateKey, privateKey instanceof ECKey ? null : "SunRsaSign");
     }
 
     /**
-     * Construct a "canned policy" Cloudfront URL; you must set an expire date. Use "BC" to use Bouncy Castle as crypto provider when generating SHA1 signature.
+     * Construct a "canned policy" Cloudfront URL signed with a chosen algorithm, using the default crypto provider; you must set an expire date.
+     */
+    public CloudfrontUrlBuilder(String distributionHostname, String key, String keyPairId, PrivateKey privateKey, CloudfrontSignatureAlgorithm algorithm)
+    {
+        this(distributionHostname, key, new TrustedSignerCredentials(keyPairId, privateKey, null, algorithm));
+    }
+
+    /**
+     * Construct a "canned policy" Cloudfront URL; you must set an expire date. Use "BC" to use Bouncy Castle as crypto provider when generating SHA1 signature,
+     * or null for the default provider.
      */
     public CloudfrontUrlBuilder(String distributionHostname, String key, String keyPairId, PrivateKey privateKey, String cryptoProvider)
+    {
+        this(distributionHostname, key, new TrustedSignerCredentials(keyPairId, privateKey, cryptoProvider));
+    }
+
+    /**
+     * Construct a "canned policy" Cloudfront URL signed with shared credentials; you must set an expire date.
+     * Credentials are thread-safe, so one instance can back every builder for a key pair.
+     */
+    public CloudfrontUrlBuilder(String distributionHostname, String key, TrustedSignerCredentials trustedSignerCredentials)
     {
         this.distributionHostname = distributionHostname;
         this.key = key;
-        this.trustedSignerCredentials = new TrustedSignerCredentials(keyPairId, privateKey, cryptoProvider);
+        this.trustedSignerCredentials = trustedSignerCredentials;
     }
 
     public CloudfrontUrlBuilder withDistributionHostname(String hostname)
     {
         this.distributionHostname = hostname;
+        resource = null;
         return this;
     }
 
     public CloudfrontUrlBuilder withKey(String key)
     {
         this.key = key;
+        resource = null;
         return this;
     }
 
     public CloudfrontUrlBuilder withAttachmentFilename(String attachmentFilename)
     {
         this.attachmentFilename = attachmentFilename;
+        resource = null;
         return this;
     }
 
     public CloudfrontUrlBuilder withContentType(String contentType)
     {
         this.contentType = contentType;
+        resource = null;
         return this;
     }
 
     public CloudfrontUrlBuilder addParameter(String key, String value)
     {
         parameters.put(key, value);
+        resource = null;
         return this;
     }
 
     public CloudfrontUrlBuilder withSsl()
     {
         ssl = true;
+        resource = null;
         return this;
     }
 
@@ -113,10 +156,94 @@ public class CloudfrontUrlBuilder
         return this;
     }
 
+    /**
+     * Round relative expiry times so that URLs signed within the same window are identical.
+     *
+     * @param policy the policy for {@link #expireIn(long, TimeUnit)}; defaults to {@link ExpiryPolicy#EXACT}
+     */
+    public CloudfrontUrlBuilder withExpiryPolicy(ExpiryPolicy policy)
+    {
+        InternalUtils.checkNotNull(policy, "policy");
+        this.expiryPolicy = policy;
+        return this;
+    }
+
+    /**
+     * Set the source of the current time, used for relative expiry.
+     *
+     * @param clock defaults to {@link Clock#systemUTC()}
+     */
+    public CloudfrontUrlBuilder usingClock(Clock clock)
+    {
+        InternalUtils.checkNotNull(clock, "clock");
+        this.clock = clock;
+        return this;
+    }
+
+    /**
+     * Sign with a custom policy instead of a canned policy. The URL carries the encoded policy in place of its expiry
+     * time, and the policy and its signature are reused for every URL with the same policy and expiry time.
+     *
+     * @param policy a policy whose resource matches the URL; null to sign with a canned policy again
+     */
+    public CloudfrontUrlBuilder withCustomPolicy(CloudfrontCustomPolicy policy)
+    {
+        this.customPolicy = policy;
+        return this;
+    }
+
+    /**
+     * @throws IllegalArgumentException if no expire date is set
+     * @throws IllegalStateException if a custom policy is set and its resource does not match the URL
+     */
     @Override
     public String toString()
     {
-        InternalUtils.checkNotNull(expireDate.getExpireDate(), "Expire date");
+        if (!expireDate.isSet())
+        {
+            throw new IllegalArgumentException("Expire date cannot be null.");
+        }
+
+        return signUntil(expireDate.getExpiresEpochSeconds());
+    }
+
+    /**
+     * Sign with an expiry time that has already been computed.
+     *
+     * @param expires expiry time, in epoch seconds
+     */
+    String signUntil(long expires)
+    {
+        // The resource is rendered once: it is both the signed resource and the start of the URL
+        String resource = renderResource();
+        StringBuilder url = new StringBuilder(resource.length() + 512).append(resource).append(resource.indexOf('?') < 0 ? '?' : '&');
+
+        if (customPolicy != null)
+        {
+            if (!customPolicy.matches(resource))
+            {
+                throw new IllegalStateException("URL " + resource + " does not match custom policy resource " + customPolicy.getResource());
+            }
+
+            SignedPolicy signed = trustedSignerCredentials.signPolicy(customPolicy.toJson(expires));
+
+            url.append("Policy=").append(signed.policy).append("&Signature=").append(signed.signature);
+        }
+        else
+        {
+            url.append("Expires=").append(expires).append("&Signature=");
+            trustedSignerCredentials.appendCannedSignature(url, resource, expires);
+        }
+
+        return url.append(trustedSignerCredentials.urlSuffix).toString();
+    }
+
+    private String renderResource()
+    {
+        if (resource != null)
+        {
+            return resource;
+        }
 
         UrlBuilder builder = new UrlBuilder();
 
@@ -136,14 +263,41 @@ public class CloudfrontUrlBuilder
             builder.addParameter("response-content-type", contentType);
         }
 
-        String cannedPolicy = String.format("{\"Statement\":[{\"Resource\":\"%s\",\"Condition\":{\"DateLessThan\":{\"AWS:EpochTime\":%s}}}]}", builder.toString(), expireDate.getExpiresUtcSeconds());
-        String signature = trustedSignerCredentials.sign(cannedPolicy);
+        resource = builder.toString();
+        return resource;
+    }
 
-        builder.addParameter("Expires", expireDate.getExpiresUtcSeconds());
-        builder.addParameter("Signature", signature, new NoEncodingEncoder());
-        builder.addParameter("Key-Pair-Id", trustedSignerCredentials.accessKeyId);
+    ExpiryPolicy getExpiryPolicy()
+    {
+        return expiryPolicy;
+    }
 
-        return builder.toString();
+    /**
+     * @return the signing inputs other than the expiry, plus the expiry policy that decides it, for use as a cache
+     * key. The key pair is identified by its id and signature algorithm, so builders that create their own credentials
+     * for the same key still share entries.
+     */
+    Object signingInputs()
+    {
+        return Arrays.asList(distributionHostname, key, ssl, attachmentFilename, contentType, new LinkedHashMap<String, String>(parameters), customPolicy,
+            trustedSignerCredentials.accessKeyId, trustedSignerCredentials.algorithm, expiryPolicy);
+    }
+
+    /**
+     * @return a copy with the same signing inputs, unaffected by later changes to this builder
+     */
+    CloudfrontUrlBuilder copy()
+    {
+        CloudfrontUrlBuilder copy = new CloudfrontUrlBuilder(distributionHostname, key, trustedSignerCredentials);
+        copy.ssl = ssl;
+        copy.attachmentFilename = attachmentFilename;
+        copy.contentType = contentType;
+        copy.parameters.putAll(parameters);
+        copy.clock = clock;
+        copy.expiryPolicy = expiryPolicy;
+        copy.customPolicy = customPolicy;
+        copy.resource = resource;
+        return copy;
     }
 
     private class ExpireDateHolder
@@ -154,72 +308,335 @@ public class CloudfrontUrlBuilder
 
         Date instant;
 
-        Date getExpireDate()
+        /**
+         * @return the expiry time, in epoch seconds
+         */
+        long getExpiresEpochSeconds()
         {
             if (instant != null)
             {
-                return instant;
+                return Math.floorDiv(instant.getTime(), 1000L);
             }
 
-            if (duration == 0)
-            {
-                return null;
-            }
+            return expiryPolicy.expiresAt(clock.millis(), unit.toMillis(duration));
+        }
 
-            long futureMillis = unit.toMillis(duration) + System.currentTimeMillis();
+        boolean isSet()
+        {
+            return instant != null || duration != 0;
+        }
+    }
+
+    /**
+     * A custom policy, encoded for a URL, with its signature.
+     */
+    static final class SignedPolicy
+    {
+        final String policy;
+
+        final String signature;
 
-            return new Date(futureMillis);
+        SignedPolicy(String policy, String signature)
+        {
+            this.policy = policy;
+            this.signature = signature;
         }
+    }
 
-        long getExpiresUtcSeconds()
+    /**
+     * Encode bytes as Base64 with the characters that are invalid in a query string replaced, as CloudFront expects.
+     */
+    static String cloudfrontSafeBase64(byte[] bytes)
+    {
+        return appendCloudfrontSafeBase64(new StringBuilder((bytes.length + 2) / 3 * 4), bytes).toString();
+    }
+
+    /**
+     * Append bytes as Base64 in the CloudFront alphabet, which uses {@code - ~ _} in place of {@code + / =}.
+     */
+    static StringBuilder appendCloudfrontSafeBase64(StringBuilder out, byte[] bytes)
+    {
+        int i = 0;
+        for (; i + 2 < bytes.length; i += 3)
         {
-            Calendar gmt = Calendar.getInstance(TimeZone.getTimeZone("GMT"));
-            gmt.setTime(getExpireDate());
-            return gmt.getTimeInMillis() / 1000;
+            int triple = (bytes[i] & 0xFF) << 16 | (bytes[i + 1] & 0xFF) << 8 | (bytes[i + 2] & 0xFF);
+            out.append(BASE64_ALPHABET[triple >>> 18])
+                .append(BASE64_ALPHABET[(triple >>> 12) & 0x3F])
+                .append(BASE64_ALPHABET[(triple >>> 6) & 0x3F])
+                .append(BASE64_ALPHABET[triple & 0x3F]);
         }
 
-        boolean isSet()
+        int remaining = bytes.length - i;
+        if (remaining > 0)
         {
-            return getExpireDate() != null;
+            int triple = (bytes[i] & 0xFF) << 16 | (remaining == 2 ? (bytes[i + 1] & 0xFF) << 8 : 0);
+            out.append(BASE64_ALPHABET[triple >>> 18])
+                .append(BASE64_ALPHABET[(triple >>> 12) & 0x3F])
+                .append(remaining == 2 ? BASE64_ALPHABET[(triple >>> 6) & 0x3F] : '_')
+                .append('_');
         }
+
+        return out;
     }
 
+    /**
+     * The key pair a distribution trusts, shareable between any number of builders and threads.
+     * <p>
+     * A {@link Signature} holds per-signature state, so it cannot sign two policies at once. Initialized signatures
+     * are kept in a lock-free pool instead: a signing thread borrows one, creating it from the private key when the
+     * pool is empty, and returns it afterwards. The pool grows to the number of threads that sign at the same time
+     * and keeps at most {@link #MAX_IDLE_SIGNERS} idle signatures. Each pooled signature comes with buffers that
+     * policies are written into and UTF-8 encoded in, so signing a URL allocates little beyond the signature itself.
+     * <p>
+     * Signed custom policies are cached, so a policy shared by many URLs is signed once per expiry time, even when
+     * many threads ask for it at once.
+     */
     public static class TrustedSignerCredentials
     {
+        /** Maximum number of idle signatures kept for reuse. */
+        static final int MAX_IDLE_SIGNERS = Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+
+        private static final int POLICY_CACHE_LIMIT = 256;
+
         private final String accessKeyId;
 
-        private final Signature signer;
+        private final PrivateKey privateKey;
+
+        private final String cryptoProvider;
+
+        private final CloudfrontSignatureAlgorithm algorithm;
+
+        /** {@code &Key-Pair-Id=...}, and {@code &Hash-Algorithm=...} if needed, ending every signed URL. */
+        private final String urlSuffix;
 
+        private final Queue<Session> pool = new ConcurrentLinkedQueue<Session>();
+
+        private final AtomicInteger idle = new AtomicInteger();
+
+        private final BoundedCache<String, SignedPolicy> policies = new BoundedCache<String, SignedPolicy>(POLICY_CACHE_LIMIT);
+
+        /**
+         * Sign with the default algorithm for the key, see {@link CloudfrontSignatureAlgorithm#defaultFor(java.security.Key)}.
+         *
+         * @param cryptoProvider name of the JCA provider, or null for the default provider
+         * @throws RuntimeException if the key is not an RSA or EC key, or the provider is not available or does not accept it
+         */
         public TrustedSignerCredentials(String accessKeyId, PrivateKey privateKey, String cryptoProvider)
         {
+            this(accessKeyId, privateKey, cryptoProvider, privateKey != null ? CloudfrontSignatureAlgorithm.defaultFor(privateKey) : CloudfrontSignatureAlgorithm.RSA_SHA1);
+        }
+
+        /**
+         * @param cryptoProvider name of the JCA provider, or null for the default provider
+         * @param algorithm signature algorithm matching the key
+         * @throws RuntimeException if the provider is not available or does not accept the key for the algorithm
+         */
+        public TrustedSignerCredentials(String accessKeyId, PrivateKey privateKey, String cryptoProvider, CloudfrontSignatureAlgorithm algorithm)
+        {
+            InternalUtils.checkNotNull(algorithm, "algorithm");
             this.accessKeyId = accessKeyId;
+            this.privateKey = privateKey;
+            this.cryptoProvider = cryptoProvider;
+            this.algorithm = algorithm;
+
+            // Rendered as UrlBuilder renders parameters
+            Encoder encoder = new QueryParameterEncoder();
+            StringBuilder suffix = new StringBuilder("&Key-Pair-Id");
+            if (StringUtilsInternal.isNotBlank(accessKeyId))
+            {
+                suffix.append('=').append(encoder.encode(accessKeyId));
+            }
+            // SHA1 is implied; other hashes must be named for CloudFront to verify the signature
+            if (algorithm.announcesHash())
+            {
+                suffix.append("&Hash-Algorithm=").append(algorithm.getHashAlgorithm());
+            }
+            this.urlSuffix = suffix.toString();
 
+            // Fail fast on a bad provider or key; the first signature seeds the pool
+            release(new Session(newSigner()));
+        }
+
+        public String getAccessKeyId()
+        {
+            return accessKeyId;
+        }
+
+        public CloudfrontSignatureAlgorithm getAlgorithm()
+        {
+            return algorithm;
+        }
+
+        /**
+         * Sign a policy. Safe to call from any number of threads at once.
+         */
+        public String sign(String text)
+        {
+            Session session = acquire();
             try
             {
-                signer = Signature.getInstance("SHA1WithRSA", cryptoProvider);
-                signer.initSign(privateKey);
+                session.text.append(text);
+                return cloudfrontSafeBase64(session.sign());
             }
-            catch (Exception e)
+            catch (RuntimeException e)
             {
-                throw new RuntimeException(e);
+                // The signature may hold partial input; let it go rather than return it to the pool
+                session = null;
+                throw e;
+            }
+            finally
+            {
+                if (session != null)
+                {
+                    release(session);
+                }
             }
         }
 
-        public String sign(String text)
+        /**
+         * Sign the canned policy for a resource and append the encoded signature.
+         *
+         * @param resource the URL the policy grants access to
+         * @param expires expiry time, in epoch seconds
+         */
+        void appendCannedSignature(StringBuilder out, String resource, long expires)
         {
+            Session session = acquire();
             try
             {
-                signer.update(text.getBytes(StandardCharsets.UTF_8));
-                byte[] bytes = signer.sign();
+                session.text.append("{\"Statement\":[{\"Resource\":\"")
+                    .append(resource)
+                    .append("\",\"Condition\":{\"DateLessThan\":{\"AWS:EpochTime\":")
+                    .append(expires)
+                    .append("}}}]}");
+                appendCloudfrontSafeBase64(out, session.sign());
+            }
+            catch (RuntimeException e)
+            {
+                session = null;
+                throw e;
+            }
+            finally
+            {
+                if (session != null)
+                {
+                    release(session);
+                }
+            }
+        }
+
+        /**
+         * Encode and sign a custom policy, or return the result of a previous call for the same policy.
+         */
+        SignedPolicy signPolicy(String json)
+        {
+            // Entries of expired windows are never used again, so they are the least recently used ones to go
+            return policies.get(json, this::newSignedPolicy);
+        }
+
+        private SignedPolicy newSignedPolicy(String json)
+        {
+            return new SignedPolicy(cloudfrontSafeBase64(json.getBytes(StandardCharsets.UTF_8)), sign(json));
+        }
+
+        /**
+         * @return the number of idle signatures in the pool
+         */
+        int idleSigners()
+        {
+            return idle.get();
+        }
 
-                String encodedBytes = Base64.getEncoder().encodeToString(bytes);
-                return encodedBytes.replace("+", "-").replace("=", "_").replace("/", "~");
+        private Session acquire()
+        {
+            Session session = pool.poll();
+            if (session == null)
+            {
+                return new Session(newSigner());
+            }
+            idle.decrementAndGet();
+            return session;
+        }
+
+        private void release(Session session)
+        {
+            session.text.setLength(0);
+            if (idle.incrementAndGet() <= MAX_IDLE_SIGNERS)
+            {
+                pool.offer(session);
+            }
+            else
+            {
+                idle.decrementAndGet();
+            }
+        }
+
+        private Signature newSigner()
+        {
+            try
+            {
+                Signature signer = cryptoProvider != null
+                    ? Signature.getInstance(algorithm.getJcaName(), cryptoProvider)
+                    : Signature.getInstance(algorithm.getJcaName());
+                signer.initSign(privateKey);
+                return signer;
             }
             catch (Exception e)
             {
                 throw new RuntimeException(e);
             }
         }
+
+        /**
+         * A pooled {@link Signature} with a text buffer for the policy and a byte buffer it is encoded into.
+         */
+        private static final class Session
+        {
+            private final Signature signer;
+
+            private final StringBuilder text = new StringBuilder(512);
+
+            // Encodes like String.getBytes: unpaired surrogates become '?'
+            private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+            private ByteBuffer bytes = ByteBuffer.allocate(1024);
+
+            Session(Signature signer)
+            {
+                this.signer = signer;
+            }
+
+            /**
+             * Sign the text. Signature.sign() resets the signature, so the session is ready for the next policy.
+             */
+            byte[] sign()
+            {
+                CharBuffer chars = CharBuffer.wrap(text);
+                while (true)
+                {
+                    encoder.reset();
+                    bytes.clear();
+                    if (!encoder.encode(chars, bytes, true).isOverflow() && !encoder.flush(bytes).isOverflow())
+                    {
+                        break;
+                    }
+                    bytes = ByteBuffer.allocate(bytes.capacity() * 2);
+                    chars.rewind();
+                }
+
+                try
+                {
+                    signer.update(bytes.array(), 0, bytes.position());
+                    return signer.sign();
+                }
+                catch (SignatureException e)
+                {
+                    throw new RuntimeException(e);
+                }
+            }
+        }
     }
 
 }
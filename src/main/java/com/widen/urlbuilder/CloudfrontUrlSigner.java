@@ -0,0 +1,427 @@
+package com.widen.urlbuilder;
+
+import java.time.Clock;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Immutable, thread-safe factory for signed CloudFront URLs, built for signing whole batches at once.
+ * <p>
+ * {@link CloudfrontUrlBuilder} is configured per URL and caches state while rendering, so an instance cannot be
+ * shared. A {@code CloudfrontUrlSigner} is configured once per distribution and key pair and renders each URL with
+ * only per-call state. Batches such as every segment of an HLS rendition or every image of a gallery are split
+ * into chunks that a fixed number of workers take in turn, on the {@linkplain Builder#usingExecutor(Executor)
+ * configured executor}; each worker signs with its own {@link java.security.Signature} from the pool of the
+ * {@link CloudfrontUrlBuilder.TrustedSignerCredentials}. The executor can be the common fork-join pool, the default,
+ * or on newer JDKs a virtual-thread executor such as {@code Executors.newVirtualThreadPerTaskExecutor()}.
+ * <p>
+ * <b>Typical usage:</b>
+ * <pre>
+ * CloudfrontUrlSigner signer = CloudfrontUrlSigner.builder("d111111abcdef8.cloudfront.net", credentials)
+ *     .usingSsl()
+ *     .build();
+ *
+ * List&lt;String&gt; urls = signer.signAll(segmentKeys, expireAt);
+ * CompletableFuture&lt;List&lt;String&gt;&gt; later = signer.signAllAsync(imageKeys, expireAt,
+ *     key -&gt; CloudfrontUrlSigner.Options.NONE.withContentType("image/jpeg"));
+ * </pre>
+ * <p>
+ * URLs are identical to those produced by an equally configured {@link CloudfrontUrlBuilder}.
+ *
+ * @see CloudfrontUrlBuilder
+ * @since 3.0.0
+ */
+public final class CloudfrontUrlSigner {
+
+    /**
+     * Keys per unit of work in {@link #signAll}; batches this small are signed on the calling thread. Smaller than
+     * {@link S3UrlSigner}'s chunks, as each key costs an RSA signature rather than an HMAC.
+     */
+    static final int BATCH_CHUNK_SIZE = 32;
+
+    private final String distributionHostname;
+
+    private final boolean ssl;
+
+    private final CloudfrontUrlBuilder.TrustedSignerCredentials credentials;
+
+    private final CloudfrontCustomPolicy customPolicy;
+
+    private final Clock clock;
+
+    private final ExpiryPolicy expiryPolicy;
+
+    private final Executor executor;
+
+    private final int parallelism;
+
+    private CloudfrontUrlSigner(Builder builder) {
+        this.distributionHostname = builder.distributionHostname;
+        this.ssl = builder.ssl;
+        this.credentials = builder.credentials;
+        this.customPolicy = builder.customPolicy;
+        this.clock = builder.clock;
+        this.expiryPolicy = builder.expiryPolicy;
+        this.executor = builder.executor;
+        this.parallelism = builder.parallelism;
+    }
+
+    /**
+     * Start configuring a signer for a distribution.
+     *
+     * @param distributionHostname hostname of the distribution, e.g. {@code d111111abcdef8.cloudfront.net}
+     * @param credentials the key pair the distribution trusts
+     * @throws IllegalArgumentException if distributionHostname is blank or credentials is null
+     */
+    public static Builder builder(String distributionHostname, CloudfrontUrlBuilder.TrustedSignerCredentials credentials) {
+        return new Builder(distributionHostname, credentials);
+    }
+
+    /**
+     * Sign a URL that expires at an absolute time.
+     *
+     * @param key the object key
+     * @param expireAt time the URL will expire; accurate to seconds
+     * @param options parameters for this URL
+     * @return the signed URL
+     * @throws IllegalArgumentException if key, expireAt or options is null
+     */
+    public String sign(String key, Date expireAt, Options options) {
+        InternalUtils.checkNotNull(expireAt, "expireAt");
+        return render(key, options, Math.floorDiv(expireAt.getTime(), 1000L));
+    }
+
+    /**
+     * Sign a URL that is valid for a duration from now.
+     *
+     * @param key the object key
+     * @param duration how long the URL is valid for
+     * @param unit unit of duration
+     * @return the signed URL
+     * @throws IllegalArgumentException if key or unit is null
+     */
+    public String sign(String key, long duration, TimeUnit unit) {
+        return sign(key, duration, unit, Options.NONE);
+    }
+
+    /**
+     * Sign a URL that is valid for a duration from now.
+     *
+     * @param key the object key
+     * @param duration how long the URL is valid for
+     * @param unit unit of duration
+     * @param options parameters for this URL
+     * @return the signed URL
+     * @throws IllegalArgumentException if key, unit or options is null
+     */
+    public String sign(String key, long duration, TimeUnit unit, Options options) {
+        InternalUtils.checkNotNull(unit, "unit");
+        return render(key, options, expiryPolicy.expiresAt(clock.millis(), unit.toMillis(duration)));
+    }
+
+    /**
+     * Sign many keys that share an expiry.
+     *
+     * @param keys the object keys
+     * @param expireAt time the URLs will expire; accurate to seconds
+     * @return the signed URLs, in the iteration order of {@code keys}
+     * @throws IllegalArgumentException if any key is null, or keys or expireAt is null
+     * @see #signAll(Collection, Date, Function)
+     */
+    public List<String> signAll(Collection<String> keys, Date expireAt) {
+        return signAll(keys, expireAt, key -> Options.NONE);
+    }
+
+    /**
+     * Sign many keys that share an expiry, with per-key parameters.
+     * <p>
+     * Batches larger than one chunk are signed in parallel: the calling thread and up to
+     * {@linkplain Builder#withParallelism(int) parallelism - 1} tasks on the executor take chunks in turn until none
+     * are left. A failure stops the remaining chunks and is rethrown.
+     *
+     * @param keys the object keys
+     * @param expireAt time the URLs will expire; accurate to seconds
+     * @param options function returning the parameters of each key; may return {@link Options#NONE}
+     * @return the signed URLs, in the iteration order of {@code keys}
+     * @throws IllegalArgumentException if any key is null, or keys, expireAt or options is null
+     */
+    public List<String> signAll(Collection<String> keys, Date expireAt, Function<? super String, Options> options) {
+        Batch batch = new Batch(keys, expireAt, options);
+        batch.chunks.run(executor, parallelism);
+        return batch.result();
+    }
+
+    /**
+     * Sign a stream of keys that share an expiry, with per-key parameters.
+     *
+     * @param keys the object keys; the stream is consumed
+     * @param expireAt time the URLs will expire; accurate to seconds
+     * @param options function returning the parameters of each key; may return {@link Options#NONE}
+     * @return the signed URLs, in encounter order of {@code keys}
+     * @throws IllegalArgumentException if any key is null, or keys, expireAt or options is null
+     * @see #signAll(Collection, Date, Function)
+     */
+    public List<String> signAll(Stream<String> keys, Date expireAt, Function<? super String, Options> options) {
+        InternalUtils.checkNotNull(keys, "keys");
+        return signAll(keys.collect(Collectors.toList()), expireAt, options);
+    }
+
+    /**
+     * Sign many keys that share an expiry without blocking the calling thread. All work runs on the executor.
+     *
+     * @param keys the object keys
+     * @param expireAt time the URLs will expire; accurate to seconds
+     * @param options function returning the parameters of each key; may return {@link Options#NONE}
+     * @return a future of the signed URLs, in the iteration order of {@code keys}; it completes exceptionally if
+     * any URL cannot be signed
+     * @throws IllegalArgumentException if keys, expireAt or options is null
+     * @see #signAll(Collection, Date, Function)
+     */
+    public CompletableFuture<List<String>> signAllAsync(Collection<String> keys, Date expireAt, Function<? super String, Options> options) {
+        Batch batch = new Batch(keys, expireAt, options);
+        return batch.chunks.runAsync(executor, parallelism).thenApply(done -> batch.result());
+    }
+
+    private String render(String key, Options options, long expires) {
+        InternalUtils.checkNotNull(key, "key");
+        InternalUtils.checkNotNull(options, "options");
+
+        CloudfrontUrlBuilder builder = new CloudfrontUrlBuilder(distributionHostname, key, credentials)
+            .withAttachmentFilename(options.attachmentFilename)
+            .withContentType(options.contentType)
+            .withCustomPolicy(customPolicy);
+        if (ssl) {
+            builder.withSsl();
+        }
+        for (Map.Entry<String, String> parameter : options.parameters.entrySet()) {
+            builder.addParameter(parameter.getKey(), parameter.getValue());
+        }
+
+        return builder.signUntil(expires);
+    }
+
+    /**
+     * The keys and results of one batch.
+     */
+    private final class Batch {
+
+        private final String[] keys;
+
+        private final String[] urls;
+
+        private final ParallelBatch chunks;
+
+        Batch(Collection<String> keys, Date expireAt, Function<? super String, Options> options) {
+            InternalUtils.checkNotNull(keys, "keys");
+            InternalUtils.checkNotNull(expireAt, "expireAt");
+            InternalUtils.checkNotNull(options, "options");
+
+            long expires = Math.floorDiv(expireAt.getTime(), 1000L);
+            this.keys = keys.toArray(new String[0]);
+            this.urls = new String[this.keys.length];
+            this.chunks = new ParallelBatch(this.keys.length, BATCH_CHUNK_SIZE, (from, to) -> {
+                for (int i = from; i < to; i++) {
+                    urls[i] = render(this.keys[i], options.apply(this.keys[i]), expires);
+                }
+            });
+        }
+
+        List<String> result() {
+            return Collections.unmodifiableList(Arrays.asList(urls));
+        }
+    }
+
+    /**
+     * Per-URL parameters. Instances are immutable; every {@code with} method returns a copy.
+     */
+    public static final class Options {
+
+        /** No parameters. */
+        public static final Options NONE = new Options(null, null, Collections.<String, String>emptyMap());
+
+        private final String attachmentFilename;
+
+        private final String contentType;
+
+        private final Map<String, String> parameters;
+
+        private Options(String attachmentFilename, String contentType, Map<String, String> parameters) {
+            this.attachmentFilename = attachmentFilename;
+            this.contentType = contentType;
+            this.parameters = parameters;
+        }
+
+        /**
+         * Hint for "attachment" filename, sent to the origin as {@code response-content-disposition}.
+         *
+         * @param filename the filename for the attachment, or blank for none
+         * @return a copy of these options with the attachment filename set
+         */
+        public Options withAttachmentFilename(String filename) {
+            return new Options(StringUtilsInternal.isBlank(filename) ? null : filename, contentType, parameters);
+        }
+
+        /**
+         * Override the Content-Type, sent to the origin as {@code response-content-type}.
+         *
+         * @param contentType the media type, or blank for none
+         * @return a copy of these options with the content type set
+         */
+        public Options withContentType(String contentType) {
+            return new Options(attachmentFilename, StringUtilsInternal.isBlank(contentType) ? null : contentType, parameters);
+        }
+
+        /**
+         * Add a query parameter, which is covered by the signature.
+         *
+         * @return a copy of these options with the parameter added
+         * @throws IllegalArgumentException if name is blank
+         * @throws NullPointerException if value is null
+         */
+        public Options withParameter(String name, String value) {
+            InternalUtils.checkNotBlank(name, "name");
+            Objects.requireNonNull(value, "value");
+            Map<String, String> copy = new LinkedHashMap<>(parameters);
+            copy.put(name, value);
+            return new Options(attachmentFilename, contentType, Collections.unmodifiableMap(copy));
+        }
+
+        /**
+         * @return the attachment filename, or null
+         */
+        public String getAttachmentFilename() {
+            return attachmentFilename;
+        }
+
+        /**
+         * @return the content type override, or null
+         */
+        public String getContentType() {
+            return contentType;
+        }
+
+        /**
+         * @return the query parameters, in the order they were added
+         */
+        public Map<String, String> getParameters() {
+            return parameters;
+        }
+    }
+
+    /**
+     * Configuration for a {@link CloudfrontUrlSigner}. Defaults match {@link CloudfrontUrlBuilder}: plain HTTP and
+     * canned policies. Batches run on {@link ForkJoinPool#commonPool()} with one worker per core.
+     */
+    public static final class Builder {
+
+        private final String distributionHostname;
+
+        private final CloudfrontUrlBuilder.TrustedSignerCredentials credentials;
+
+        private boolean ssl;
+
+        private CloudfrontCustomPolicy customPolicy;
+
+        private Clock clock = Clock.systemUTC();
+
+        private ExpiryPolicy expiryPolicy = ExpiryPolicy.EXACT;
+
+        private Executor executor = ForkJoinPool.commonPool();
+
+        private int parallelism = Runtime.getRuntime().availableProcessors();
+
+        private Builder(String distributionHostname, CloudfrontUrlBuilder.TrustedSignerCredentials credentials) {
+            InternalUtils.checkNotBlank(distributionHostname, "distributionHostname");
+            InternalUtils.checkNotNull(credentials, "credentials");
+            this.distributionHostname = distributionHostname;
+            this.credentials = credentials;
+        }
+
+        /**
+         * @return this builder for method chaining
+         */
+        public Builder usingSsl() {
+            this.ssl = true;
+            return this;
+        }
+
+        /**
+         * Sign with a custom policy instead of canned policies.
+         *
+         * @param policy a policy whose resource matches every URL signed; null for canned policies
+         * @return this builder for method chaining
+         * @see CloudfrontUrlBuilder#withCustomPolicy(CloudfrontCustomPolicy)
+         */
+        public Builder withCustomPolicy(CloudfrontCustomPolicy policy) {
+            this.customPolicy = policy;
+            return this;
+        }
+
+        /**
+         * @param policy the policy for URLs signed for a duration from now; defaults to {@link ExpiryPolicy#EXACT}
+         * @return this builder for method chaining
+         * @throws IllegalArgumentException if policy is null
+         */
+        public Builder withExpiryPolicy(ExpiryPolicy policy) {
+            InternalUtils.checkNotNull(policy, "policy");
+            this.expiryPolicy = policy;
+            return this;
+        }
+
+        /**
+         * @param clock source of the current time; defaults to {@link Clock#systemUTC()}
+         * @return this builder for method chaining
+         * @throws IllegalArgumentException if clock is null
+         */
+        public Builder usingClock(Clock clock) {
+            InternalUtils.checkNotNull(clock, "clock");
+            this.clock = clock;
+            return this;
+        }
+
+        /**
+         * Set the executor that signs batches. Defaults to {@link ForkJoinPool#commonPool()}; a virtual-thread
+         * executor works as well, as each worker signs a sequence of chunks without blocking.
+         *
+         * @return this builder for method chaining
+         * @throws IllegalArgumentException if executor is null
+         */
+        public Builder usingExecutor(Executor executor) {
+            InternalUtils.checkNotNull(executor, "executor");
+            this.executor = executor;
+            return this;
+        }
+
+        /**
+         * Set how many workers sign a batch at once. Signing is CPU-bound, so more workers than cores only add
+         * {@link java.security.Signature} instances. Defaults to the number of available processors.
+         *
+         * @return this builder for method chaining
+         * @throws IllegalArgumentException if parallelism is less than 1
+         */
+        public Builder withParallelism(int parallelism) {
+            if (parallelism < 1) {
+                throw new IllegalArgumentException("parallelism must be at least 1.");
+            }
+            this.parallelism = parallelism;
+            return this;
+        }
+
+        public CloudfrontUrlSigner build() {
+            return new CloudfrontUrlSigner(this);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.widen.urlbuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides when a URL that is valid "for a duration from now" expires.
+ * <p>
+ * With {@link #EXACT} a URL expires exactly its duration after it is signed, so signing the same key a second later
+ * yields a different URL. An aligned policy rounds the expiry up to the next boundary of a fixed window instead;
+ * every signer, on every node, then issues the identical URL for the whole window, which lets browsers and CDNs
+ * cache it. A URL is always valid for at least the requested duration, and at most one window longer.
+ * <p>
+ * <b>Example:</b> expire at the next 15-minute boundary, at least one hour from now:
+ * <pre>
+ * ExpiryPolicy policy = ExpiryPolicy.alignedTo(15, TimeUnit.MINUTES).withMinimumTtl(1, TimeUnit.HOURS);
+ * </pre>
+ * For Signature Version 4, whose URLs carry their signing time, the signing time is aligned down to the start of the
+ * window as well.
+ * <p>
+ * Expiry times set as absolute dates are used as given. All computations are epoch-second arithmetic. Instances are
+ * immutable.
+ */
+public final class ExpiryPolicy {
+
+    /** Expire exactly the requested duration after signing. This is the default. */
+    public static final ExpiryPolicy EXACT = new ExpiryPolicy(1, 0);
+
+    private final long windowSeconds;
+
+    private final long minimumTtlSeconds;
+
+    private ExpiryPolicy(long windowSeconds, long minimumTtlSeconds) {
+        this.windowSeconds = windowSeconds;
+        this.minimumTtlSeconds = minimumTtlSeconds;
+    }
+
+    /**
+     * Round expiry times up to the next multiple of a window, counted from the epoch.
+     *
+     * @param window length of the window; at least one second
+     * @param unit unit of window
+     * @return a policy without a minimum TTL
+     * @throws IllegalArgumentException if unit is null or window is shorter than one second
+     */
+    public static ExpiryPolicy alignedTo(long window, TimeUnit unit) {
+        InternalUtils.checkNotNull(unit, "unit");
+        long seconds = unit.toSeconds(window);
+        if (seconds < 1) {
+            throw new IllegalArgumentException("window must be at least one second");
+        }
+        return new ExpiryPolicy(seconds, 0);
+    }
+
+    /**
+     * Keep URLs valid for at least {@code ttl}, even when signed for a shorter duration.
+     *
+     * @param ttl the minimum time a URL is valid for
+     * @param unit unit of ttl
+     * @return a copy of this policy with the minimum TTL
+     * @throws IllegalArgumentException if unit is null or ttl is negative
+     */
+    public ExpiryPolicy withMinimumTtl(long ttl, TimeUnit unit) {
+        InternalUtils.checkNotNull(unit, "unit");
+        if (ttl < 0) {
+            throw new IllegalArgumentException("ttl cannot be negative");
+        }
+        return new ExpiryPolicy(windowSeconds, unit.toSeconds(ttl));
+    }
+
+    /**
+     * @return the window expiry times are aligned to, in seconds; 1 when not aligned
+     */
+    public long getWindowSeconds() {
+        return windowSeconds;
+    }
+
+    /**
+     * @return the minimum time a URL is valid for, in seconds
+     */
+    public long getMinimumTtlSeconds() {
+        return minimumTtlSeconds;
+    }
+
+    /**
+     * @param now the signing time, in epoch milliseconds
+     * @param ttl the requested duration, in milliseconds
+     * @return the expiry time, in epoch seconds
+     */
+    public long expiresAt(long now, long ttl) {
+        long expires = Math.floorDiv(now + Math.max(ttl, minimumTtlSeconds * 1000), 1000L);
+        long remainder = Math.floorMod(expires, windowSeconds);
+        return remainder == 0 ? expires : expires - remainder + windowSeconds;
+    }
+
+    /**
+     * @param now the current time, in epoch milliseconds
+     * @return the start of the window containing {@code now}, in epoch seconds
+     */
+    public long signedAt(long now) {
+        long seconds = Math.floorDiv(now, 1000L);
+        return seconds - Math.floorMod(seconds, windowSeconds);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ExpiryPolicy)) {
+            return false;
+        }
+        ExpiryPolicy other = (ExpiryPolicy) o;
+        return windowSeconds == other.windowSeconds && minimumTtlSeconds == other.minimumTtlSeconds;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Long.hashCode(windowSeconds) + Long.hashCode(minimumTtlSeconds);
+    }
+
+    @Override
+    public String toString() {
+        return "ExpiryPolicy{windowSeconds=" + windowSeconds + ", minimumTtlSeconds=" + minimumTtlSeconds + "}";
+    }
+}
@@ -0,0 +1,247 @@
+package com.widen.urlbuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SignatureException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * An HMAC key that is set up once and reused for every signature made with it.
+ * <p>
+ * {@link Mac#getInstance(String)} is a synchronized provider lookup and {@link Mac#init(java.security.Key)} hashes
+ * the key into the inner and outer pad state; both cost more than signing a short string-to-sign. A {@code HmacKey}
+ * initializes one {@link Mac} and hands it out first, so a key that signs once, such as one per short-lived builder,
+ * pays for nothing more. Threads that sign while it is in use get {@linkplain Mac#clone() clones} of an idle template,
+ * which start with the pad state already computed. Sessions are recycled through a lock-free pool so concurrent
+ * signers never contend, and the pool only grows to the number of threads that sign at the same time.
+ * <p>
+ * Instances are thread-safe.
+ */
+final class HmacKey {
+
+    private final SecretKeySpec key;
+
+    private final Queue<Session> pool = new ConcurrentLinkedQueue<>();
+
+    /** Idle copy of the first session's {@link Mac}, cloned for further sessions; made when first needed. */
+    private volatile Mac template;
+
+    /**
+     * @param algorithm JCA name of the HMAC algorithm, e.g. {@code HmacSHA1}
+     * @param key raw key bytes
+     * @throws IllegalStateException if the algorithm is not available or the key is rejected
+     */
+    HmacKey(String algorithm, byte[] key) {
+        this.key = new SecretKeySpec(key, algorithm);
+        try {
+            Mac first = Mac.getInstance(algorithm);
+            first.init(this.key);
+            pool.offer(new Session(first));
+        }
+        catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Cannot initialize " + algorithm + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Initialize the HmacSHA1 key for an AWS secret access key. The secret is encoded as UTF-8.
+     * <p>
+     * Keys are not cached here: the owner of the secret, such as an {@link S3Credentials} snapshot, keeps the key
+     * for as long as it keeps the secret.
+     */
+    static HmacKey hmacSha1(String secret) {
+        return new HmacKey("HmacSHA1", secret.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Borrow a {@link Session} with an initialized {@link Mac}. It must be returned with {@link #release(Session)}
+     * once the signature has been finished.
+     */
+    Session acquire() {
+        Session session = pool.poll();
+        return session != null ? session : new Session(newMac());
+    }
+
+    /**
+     * Return a {@link Session} obtained from {@link #acquire()} to the pool, discarding any unfinished input.
+     */
+    void release(Session session) {
+        session.reset();
+        pool.offer(session);
+    }
+
+    /**
+     * Computes RFC 2104-compliant HMAC signature.
+     */
+    byte[] sign(byte[] data) {
+        Session session = acquire();
+        try {
+            return session.mac.doFinal(data);
+        }
+        finally {
+            release(session);
+        }
+    }
+
+    private Mac newMac() {
+        Mac idle = template;
+        if (idle == null) {
+            // Racing threads may each make a template; any of them will do
+            idle = newInstance();
+            template = idle;
+        }
+        try {
+            return (Mac) idle.clone();
+        }
+        catch (CloneNotSupportedException e) {
+            // Providers that cannot clone their state fall back to a fresh instance
+            return newInstance();
+        }
+    }
+
+    private Mac newInstance() {
+        try {
+            Mac mac = Mac.getInstance(key.getAlgorithm());
+            mac.init(key);
+            return mac;
+        }
+        catch (GeneralSecurityException e) {
+            throw new RuntimeException(new SignatureException("Failed to generate signature: " + e.getMessage(), e));
+        }
+    }
+
+    /**
+     * A pooled {@link Mac} with a reusable buffer that encodes text as UTF-8 on its way into the MAC, so a
+     * string-to-sign can be hashed piece by piece without being assembled into a {@code String} or {@code byte[]}.
+     */
+    static final class Session {
+
+        private final Mac mac;
+
+        private final byte[] buffer = new byte[256];
+
+        private final byte[] result;
+
+        private int count;
+
+        private Session(Mac mac) {
+            this.mac = mac;
+            this.result = new byte[mac.getMacLength()];
+        }
+
+        Session append(char c) {
+            if (count + 3 > buffer.length) {
+                flush();
+            }
+
+            if (c < 0x80) {
+                buffer[count++] = (byte) c;
+            }
+            else if (c < 0x800) {
+                buffer[count++] = (byte) (0xC0 | (c >> 6));
+                buffer[count++] = (byte) (0x80 | (c & 0x3F));
+            }
+            else if (Character.isSurrogate(c)) {
+                // Surrogate pairs are handled by append(CharSequence); an unpaired one encodes as '?'
+                buffer[count++] = '?';
+            }
+            else {
+                buffer[count++] = (byte) (0xE0 | (c >> 12));
+                buffer[count++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buffer[count++] = (byte) (0x80 | (c & 0x3F));
+            }
+
+            return this;
+        }
+
+        Session append(CharSequence text) {
+            int length = text.length();
+
+            for (int i = 0; i < length; i++) {
+                char c = text.charAt(i);
+
+                if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(text.charAt(i + 1))) {
+                    int codePoint = Character.toCodePoint(c, text.charAt(++i));
+                    if (count + 4 > buffer.length) {
+                        flush();
+                    }
+                    buffer[count++] = (byte) (0xF0 | (codePoint >> 18));
+                    buffer[count++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                    buffer[count++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                    buffer[count++] = (byte) (0x80 | (codePoint & 0x3F));
+                }
+                else {
+                    append(c);
+                }
+            }
+
+            return this;
+        }
+
+        /**
+         * Append the decimal digits of a non-negative number.
+         */
+        Session append(long value) {
+            if (count + 20 > buffer.length) {
+                flush();
+            }
+
+            int digits = 1;
+            for (long v = value / 10; v > 0; v /= 10) {
+                digits++;
+            }
+
+            for (int i = count + digits - 1; i >= count; i--) {
+                buffer[i] = (byte) ('0' + value % 10);
+                value /= 10;
+            }
+            count += digits;
+
+            return this;
+        }
+
+        /**
+         * Finish the signature. The returned array is owned by the session and overwritten by its next use.
+         */
+        byte[] finish() {
+            flush();
+            try {
+                mac.doFinal(result, 0);
+            }
+            catch (GeneralSecurityException e) {
+                throw new RuntimeException(new SignatureException("Failed to generate signature: " + e.getMessage(), e));
+            }
+            return result;
+        }
+
+        /**
+         * Flush the input so far and return a copy of the MAC state. The copy can be {@linkplain Mac#clone() cloned}
+         * and finished repeatedly to sign many strings that share this prefix.
+         *
+         * @throws IllegalStateException if the provider cannot copy MAC state
+         */
+        Mac snapshot() {
+            flush();
+            try {
+                return (Mac) mac.clone();
+            }
+            catch (CloneNotSupportedException e) {
+                throw new IllegalStateException("MAC state cannot be copied: " + e.getMessage(), e);
+            }
+        }
+
+        private void flush() {
+            mac.update(buffer, 0, count);
+            count = 0;
+        }
+
+        private void reset() {
+            count = 0;
+            mac.reset();
+        }
+    }
+}
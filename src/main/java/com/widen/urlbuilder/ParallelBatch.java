@@ -0,0 +1,124 @@
+package com.widen.urlbuilder;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs a task over the indices of a batch, split into fixed-size chunks that a bounded number of workers take in
+ * turn. Shared by the signers' batch methods.
+ * <p>
+ * Workers claim chunks from a cursor until none are left, so the number of tasks submitted to the executor is the
+ * parallelism, not the number of chunks. A failure stops the remaining chunks from being claimed and is rethrown;
+ * chunks already being signed by other workers still finish.
+ */
+final class ParallelBatch {
+
+    /**
+     * Work on the indices {@code [from, to)} of a batch.
+     */
+    interface Range {
+        void run(int from, int to);
+    }
+
+    private final int count;
+
+    private final int chunkSize;
+
+    private final int chunks;
+
+    private final Range task;
+
+    private final AtomicInteger next = new AtomicInteger();
+
+    /**
+     * @param count number of items in the batch
+     * @param chunkSize items per chunk
+     * @param task signs one chunk
+     */
+    ParallelBatch(int count, int chunkSize, Range task) {
+        this.count = count;
+        this.chunkSize = chunkSize;
+        this.chunks = (count + chunkSize - 1) / chunkSize;
+        this.task = task;
+    }
+
+    /**
+     * Run the batch and wait for it. The calling thread works too, so a batch completes even if the executor is
+     * saturated; a batch of at most one chunk runs on the calling thread only.
+     *
+     * @param parallelism maximum number of threads, including the calling thread
+     */
+    void run(Executor executor, int parallelism) {
+        if (chunks <= 1) {
+            work();
+            return;
+        }
+
+        CompletableFuture<Void> workers = start(executor, parallelism - 1);
+        try {
+            work();
+        }
+        catch (RuntimeException | Error e) {
+            // workers may still be writing results; wait for them before reporting the failure
+            try {
+                workers.join();
+            }
+            catch (CompletionException ignored) {
+                // the caller's failure was first
+            }
+            throw e;
+        }
+        try {
+            workers.join();
+        }
+        catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Run the batch on the executor only.
+     *
+     * @param parallelism maximum number of tasks
+     * @return a future that completes when every chunk is done, or exceptionally with the first failure
+     */
+    CompletableFuture<Void> runAsync(Executor executor, int parallelism) {
+        return start(executor, Math.max(1, parallelism));
+    }
+
+    /**
+     * Submit up to {@code workers} tasks, but no more than there are chunks, to the executor.
+     */
+    private CompletableFuture<Void> start(Executor executor, int workers) {
+        int size = Math.min(workers, chunks);
+        CompletableFuture<?>[] tasks = new CompletableFuture<?>[size];
+        for (int i = 0; i < size; i++) {
+            tasks[i] = CompletableFuture.runAsync(this::work, executor);
+        }
+        return CompletableFuture.allOf(tasks);
+    }
+
+    /**
+     * Run chunks until none are left.
+     */
+    private void work() {
+        for (int chunk = next.getAndIncrement(); chunk < chunks; chunk = next.getAndIncrement()) {
+            try {
+                task.run(chunk * chunkSize, Math.min(count, (chunk + 1) * chunkSize));
+            }
+            catch (RuntimeException | Error e) {
+                // The batch has failed; stop the other workers from claiming more chunks
+                next.set(chunks);
+                throw e;
+            }
+        }
+    }
+}
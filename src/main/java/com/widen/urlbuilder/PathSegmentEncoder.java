@@ -1,6 +1,5 @@
 package com.widen.urlbuilder;
 
-import java.io.ByteArrayOutputStream;
 import java.nio.charset.StandardCharsets;
 
 /**
@@ -37,6 +36,9 @@ public class PathSegmentEncoder implements Encoder {
     private static final String SAFE_CHARS = 
         "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-._~!$&'()*+,;=:@";
 
+    /** Lookup table of {@link #SAFE_CHARS}, indexed by ASCII code. */
+    static final boolean[] SAFE = PercentCodec.asciiTable(SAFE_CHARS);
+
     private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
 
     /**
@@ -57,7 +59,7 @@ public class PathSegmentEncoder implements Encoder {
         for (byte b : bytes) {
             int unsignedByte = b & 0xFF;
             
-            if (unsignedByte < 128 && SAFE_CHARS.indexOf((char) unsignedByte) >= 0) {
+            if (unsignedByte < 128 && SAFE[unsignedByte]) {
                 // Safe ASCII character - no encoding needed
                 encoded.append((char) unsignedByte);
             } else {
@@ -83,33 +85,6 @@ public class PathSegmentEncoder implements Encoder {
             return "";
         }
 
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        int i = 0;
-
-        while (i < text.length()) {
-            char c = text.charAt(i);
-            
-            if (c == '%' && i + 2 < text.length()) {
-                int high = Character.digit(text.charAt(i + 1), 16);
-                int low = Character.digit(text.charAt(i + 2), 16);
-                
-                if (high >= 0 && low >= 0) {
-                    baos.write((high << 4) | low);
-                    i += 3;
-                    continue;
-                }
-            }
-            
-            // Write character as UTF-8 bytes
-            if (c < 128) {
-                baos.write(c);
-            } else {
-                byte[] charBytes = String.valueOf(c).getBytes(StandardCharsets.UTF_8);
-                baos.write(charBytes, 0, charBytes.length);
-            }
-            i++;
-        }
-
-        return new String(baos.toByteArray(), StandardCharsets.UTF_8);
+        return PercentCodec.decode(text, 0, text.length());
     }
 }
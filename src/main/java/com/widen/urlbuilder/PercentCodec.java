@@ -0,0 +1,321 @@
+package com.widen.urlbuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Percent-decoding engine shared by the RFC 3986 encoders and the parsing views.
+ * <p>
+ * All methods operate on a {@code [start, end)} range of their input so callers can decode
+ * a single component of a larger string without first copying it out with {@code substring}.
+ */
+final class PercentCodec {
+
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+    private static final char[] BASE64_DIGITS =
+        "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+
+    private PercentCodec() {
+    }
+
+    /**
+     * Build a lookup table from a set of ASCII characters.
+     *
+     * @return a 128-entry table where {@code table[c]} is true if {@code c} is in {@code chars}
+     */
+    static boolean[] asciiTable(String chars) {
+        boolean[] table = new boolean[128];
+        for (int i = 0; i < chars.length(); i++) {
+            table[chars.charAt(i)] = true;
+        }
+        return table;
+    }
+
+    /**
+     * Append the percent-encoded form ({@code %XX}) of a single byte.
+     */
+    static void appendEscaped(StringBuilder out, int b) {
+        out.append('%');
+        out.append(HEX_DIGITS[(b >> 4) & 0x0F]);
+        out.append(HEX_DIGITS[b & 0x0F]);
+    }
+
+    /**
+     * Append the standard (padded) Base64 encoding of {@code bytes[0, length)}, percent-encoding {@code +},
+     * {@code /} and {@code =} as it goes so the result can be used directly as a query parameter value.
+     */
+    static void appendBase64Escaped(StringBuilder out, byte[] bytes, int length) {
+        int i = 0;
+
+        for (; i + 3 <= length; i += 3) {
+            int bits = (bytes[i] & 0xFF) << 16 | (bytes[i + 1] & 0xFF) << 8 | (bytes[i + 2] & 0xFF);
+            appendBase64Digit(out, bits >> 18);
+            appendBase64Digit(out, bits >> 12);
+            appendBase64Digit(out, bits >> 6);
+            appendBase64Digit(out, bits);
+        }
+
+        int remaining = length - i;
+        if (remaining > 0) {
+            int bits = (bytes[i] & 0xFF) << 16 | (remaining == 2 ? (bytes[i + 1] & 0xFF) << 8 : 0);
+            appendBase64Digit(out, bits >> 18);
+            appendBase64Digit(out, bits >> 12);
+            if (remaining == 2) {
+                appendBase64Digit(out, bits >> 6);
+            }
+            else {
+                appendEscaped(out, '=');
+            }
+            appendEscaped(out, '=');
+        }
+    }
+
+    private static void appendBase64Digit(StringBuilder out, int sextet) {
+        char c = BASE64_DIGITS[sextet & 0x3F];
+        if (c == '+' || c == '/') {
+            appendEscaped(out, c);
+        }
+        else {
+            out.append(c);
+        }
+    }
+
+    /**
+     * Append the percent-encoded UTF-8 bytes of {@code text.charAt(i)}, consuming a following low surrogate if
+     * {@code text.charAt(i)} is a high surrogate. Unpaired surrogates are encoded as {@code ?}, like
+     * {@link String#getBytes(java.nio.charset.Charset)} does.
+     *
+     * @return the number of chars consumed (1 or 2)
+     */
+    static int appendEscapedUtf8(StringBuilder out, CharSequence text, int i, int end) {
+        char c = text.charAt(i);
+        int codePoint = c;
+        int consumed = 1;
+
+        if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(text.charAt(i + 1))) {
+            codePoint = Character.toCodePoint(c, text.charAt(i + 1));
+            consumed = 2;
+        }
+        else if (Character.isSurrogate(c)) {
+            codePoint = '?';
+        }
+
+        byte[] buf = new byte[4];
+        int n = putUtf8(buf, 0, codePoint);
+        for (int k = 0; k < n; k++) {
+            appendEscaped(out, buf[k] & 0xFF);
+        }
+        return consumed;
+    }
+
+    /**
+     * Decode percent-encoded sequences in {@code text[start, end)} into a UTF-8 string.
+     * <p>
+     * Invalid percent sequences (e.g., {@code %GG}) are passed through unchanged. When the range
+     * contains no {@code %} at all the characters are returned as-is without an intermediate buffer.
+     */
+    static String decode(CharSequence text, int start, int end) {
+        if (indexOf(text, '%', start, end) < 0) {
+            return text.subSequence(start, end).toString();
+        }
+
+        // Escapes and ASCII shrink or keep their size; only raw non-ASCII input can outgrow the buffer.
+        byte[] buf = new byte[Math.max(end - start, 4)];
+        int n = 0;
+        int i = start;
+
+        while (i < end) {
+            if (n + 4 > buf.length) {
+                buf = Arrays.copyOf(buf, buf.length * 2);
+            }
+
+            char c = text.charAt(i);
+
+            if (c == '%' && i + 2 < end) {
+                int high = hexValue(text.charAt(i + 1));
+                int low = hexValue(text.charAt(i + 2));
+
+                if (high >= 0 && low >= 0) {
+                    buf[n++] = (byte) ((high << 4) | low);
+                    i += 3;
+                    continue;
+                }
+            }
+
+            if (c < 0x80) {
+                buf[n++] = (byte) c;
+                i++;
+                continue;
+            }
+
+            if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(text.charAt(i + 1))) {
+                n = putUtf8(buf, n, Character.toCodePoint(c, text.charAt(i + 1)));
+                i += 2;
+            }
+            else {
+                n = putUtf8(buf, n, Character.isSurrogate(c) ? '?' : c);
+                i++;
+            }
+        }
+
+        return new String(buf, 0, n, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Decode percent-encoded sequences in the US-ASCII (or UTF-8) bytes {@code bytes[start, end)} into a string.
+     * <p>
+     * Decoded output is never longer than its input, so a single buffer of the input length suffices.
+     * Invalid percent sequences are passed through unchanged.
+     */
+    static String decode(byte[] bytes, int start, int end) {
+        int i = start;
+        while (i < end && bytes[i] != '%') {
+            i++;
+        }
+        if (i == end) {
+            return new String(bytes, start, end - start, StandardCharsets.UTF_8);
+        }
+
+        byte[] buf = new byte[end - start];
+        int n = i - start;
+        System.arraycopy(bytes, start, buf, 0, n);
+
+        while (i < end) {
+            byte b = bytes[i];
+
+            if (b == '%' && i + 2 < end) {
+                int high = hexValue((char) bytes[i + 1]);
+                int low = hexValue((char) bytes[i + 2]);
+
+                if (high >= 0 && low >= 0) {
+                    buf[n++] = (byte) ((high << 4) | low);
+                    i += 3;
+                    continue;
+                }
+            }
+
+            buf[n++] = b;
+            i++;
+        }
+
+        return new String(buf, 0, n, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Check whether {@code text[start, end)}, once percent-decoded, is byte-for-byte equal to {@code expected}.
+     * <p>
+     * The comparison is streamed; no decoded string is built, so non-matching ranges cost nothing
+     * beyond the characters inspected before the first difference.
+     *
+     * @param expected the UTF-8 bytes of the decoded value being searched for
+     */
+    static boolean decodedEquals(CharSequence text, int start, int end, byte[] expected) {
+        int n = 0;
+        int i = start;
+        byte[] scratch = null;
+
+        while (i < end) {
+            if (n >= expected.length) {
+                return false;
+            }
+
+            char c = text.charAt(i);
+
+            if (c == '%' && i + 2 < end) {
+                int high = hexValue(text.charAt(i + 1));
+                int low = hexValue(text.charAt(i + 2));
+
+                if (high >= 0 && low >= 0) {
+                    if (expected[n++] != (byte) ((high << 4) | low)) {
+                        return false;
+                    }
+                    i += 3;
+                    continue;
+                }
+            }
+
+            if (c < 0x80) {
+                if (expected[n++] != (byte) c) {
+                    return false;
+                }
+                i++;
+                continue;
+            }
+
+            if (scratch == null) {
+                scratch = new byte[4];
+            }
+
+            int len;
+            if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(text.charAt(i + 1))) {
+                len = putUtf8(scratch, 0, Character.toCodePoint(c, text.charAt(i + 1)));
+                i += 2;
+            }
+            else {
+                len = putUtf8(scratch, 0, Character.isSurrogate(c) ? '?' : c);
+                i++;
+            }
+
+            for (int k = 0; k < len; k++) {
+                if (n >= expected.length || expected[n++] != scratch[k]) {
+                    return false;
+                }
+            }
+        }
+
+        return n == expected.length;
+    }
+
+    /**
+     * @return the value of an ASCII hex digit, or -1 if {@code c} is not one
+     */
+    static int hexValue(char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        }
+        if (c >= 'A' && c <= 'F') {
+            return c - 'A' + 10;
+        }
+        if (c >= 'a' && c <= 'f') {
+            return c - 'a' + 10;
+        }
+        return -1;
+    }
+
+    static int indexOf(CharSequence text, char c, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (text.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Write {@code codePoint} as UTF-8 into {@code buf} at {@code pos}; the caller guarantees 4 bytes of room.
+     *
+     * @return the position after the last byte written
+     */
+    private static int putUtf8(byte[] buf, int pos, int codePoint) {
+        if (codePoint < 0x80) {
+            buf[pos++] = (byte) codePoint;
+        }
+        else if (codePoint < 0x800) {
+            buf[pos++] = (byte) (0xC0 | (codePoint >> 6));
+            buf[pos++] = (byte) (0x80 | (codePoint & 0x3F));
+        }
+        else if (codePoint < 0x10000) {
+            buf[pos++] = (byte) (0xE0 | (codePoint >> 12));
+            buf[pos++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+            buf[pos++] = (byte) (0x80 | (codePoint & 0x3F));
+        }
+        else {
+            buf[pos++] = (byte) (0xF0 | (codePoint >> 18));
+            buf[pos++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+            buf[pos++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+            buf[pos++] = (byte) (0x80 | (codePoint & 0x3F));
+        }
+        return pos;
+    }
+}
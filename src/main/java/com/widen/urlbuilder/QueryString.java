@@ -0,0 +1,329 @@
+package com.widen.urlbuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Read-only, lazily decoded view over a raw (still percent-encoded) query string.
+ * <p>
+ * Parsing makes a single pass over the input recording the offsets of every {@code &} and {@code =};
+ * no key or value is decoded until it is asked for. This makes it cheap to pull a handful of
+ * parameters out of an incoming request URL without materializing every pair.
+ * <p>
+ * <b>Typical usage:</b>
+ * <pre>
+ * QueryString query = QueryString.parse("a=1&amp;b=two%20words&amp;c");
+ * query.get("b");       // "two words"
+ * query.get("c");       // ""
+ * query.get("missing"); // null
+ * </pre>
+ * <p>
+ * Parameters may also be walked by index, or with a {@link Visitor}, decoding only what is needed:
+ * <pre>
+ * for (int i = 0; i &lt; query.size(); i++) {
+ *     if (query.keyEquals(i, "b")) {
+ *         return query.getValue(i);
+ *     }
+ * }
+ * </pre>
+ * <p>
+ * Decoding follows {@link QueryParameterEncoder#decode(String)}: percent-escapes are decoded as UTF-8
+ * and invalid escapes are passed through unchanged. Empty pairs (e.g. {@code a=1&&b=2}) are skipped;
+ * a pair without {@code =} has an empty value.
+ *
+ * @see QueryParameterEncoder
+ * @see UrlBuilder#getQueryParameters()
+ * @since 3.0.0
+ */
+public final class QueryString {
+
+    private static final int[] NO_OFFSETS = new int[0];
+
+    private static final QueryString EMPTY = new QueryString("", NO_OFFSETS, 0);
+
+    /** Offsets per parameter are stored as {@code [keyStart, keyEnd, valueEnd]}; the value starts at {@code keyEnd + 1}. */
+    private static final int STRIDE = 3;
+
+    private final String source;
+
+    private final int[] offsets;
+
+    private final int size;
+
+    private QueryString(String source, int[] offsets, int size) {
+        this.source = source;
+        this.offsets = offsets;
+        this.size = size;
+    }
+
+    /**
+     * Index a raw query string.
+     *
+     * @param query the encoded query string, with or without a leading {@code ?}; may be null
+     * @return a view over the parameters of {@code query}
+     */
+    public static QueryString parse(String query) {
+        if (query == null || query.isEmpty() || query.equals("?")) {
+            return EMPTY;
+        }
+
+        int start = query.charAt(0) == '?' ? 1 : 0;
+        int length = query.length();
+
+        int[] offsets = new int[STRIDE * 8];
+        int size = 0;
+
+        int pairStart = start;
+        int equals = -1;
+
+        for (int i = start; i <= length; i++) {
+            char c = i < length ? query.charAt(i) : '&';
+
+            if (c == '=' && equals < 0) {
+                equals = i;
+            }
+            else if (c == '&') {
+                if (i > pairStart) {
+                    if ((size + 1) * STRIDE > offsets.length) {
+                        offsets = Arrays.copyOf(offsets, offsets.length * 2);
+                    }
+
+                    int base = size * STRIDE;
+                    offsets[base] = pairStart;
+                    offsets[base + 1] = equals < 0 ? i : equals;
+                    offsets[base + 2] = i;
+                    size++;
+                }
+
+                pairStart = i + 1;
+                equals = -1;
+            }
+        }
+
+        return new QueryString(query, offsets, size);
+    }
+
+    /**
+     * @return the number of parameters, counting repeated keys individually
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return true if there are no parameters
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Get the decoded key of a parameter.
+     *
+     * @param index parameter position, from {@code 0} to {@code size() - 1}
+     * @return the decoded key
+     * @throws IndexOutOfBoundsException if index is out of range
+     */
+    public String getKey(int index) {
+        int base = base(index);
+        return PercentCodec.decode(source, offsets[base], offsets[base + 1]);
+    }
+
+    /**
+     * Get the decoded value of a parameter.
+     *
+     * @param index parameter position, from {@code 0} to {@code size() - 1}
+     * @return the decoded value, or empty string if the parameter has no {@code =}
+     * @throws IndexOutOfBoundsException if index is out of range
+     */
+    public String getValue(int index) {
+        int base = base(index);
+        if (offsets[base + 1] == offsets[base + 2]) {
+            return "";
+        }
+        return PercentCodec.decode(source, offsets[base + 1] + 1, offsets[base + 2]);
+    }
+
+    /**
+     * Get the key of a parameter exactly as it appears in the source.
+     *
+     * @param index parameter position, from {@code 0} to {@code size() - 1}
+     * @return the still-encoded key
+     * @throws IndexOutOfBoundsException if index is out of range
+     */
+    public String getRawKey(int index) {
+        int base = base(index);
+        return source.substring(offsets[base], offsets[base + 1]);
+    }
+
+    /**
+     * Get the value of a parameter exactly as it appears in the source.
+     *
+     * @param index parameter position, from {@code 0} to {@code size() - 1}
+     * @return the still-encoded value, or empty string if the parameter has no {@code =}
+     * @throws IndexOutOfBoundsException if index is out of range
+     */
+    public String getRawValue(int index) {
+        int base = base(index);
+        if (offsets[base + 1] == offsets[base + 2]) {
+            return "";
+        }
+        return source.substring(offsets[base + 1] + 1, offsets[base + 2]);
+    }
+
+    /**
+     * Append a parameter exactly as it appears in the source: its key, and {@code =} and its value only if it has
+     * them.
+     */
+    void appendRaw(StringBuilder out, int index) {
+        int base = base(index);
+        out.append(source, offsets[base], offsets[base + 2]);
+    }
+
+    /**
+     * Compare the decoded key of a parameter with {@code key} without decoding it.
+     *
+     * @param index parameter position, from {@code 0} to {@code size() - 1}
+     * @param key the decoded key to compare against
+     * @return true if the parameter's key decodes to {@code key}
+     * @throws IndexOutOfBoundsException if index is out of range
+     */
+    public boolean keyEquals(int index, String key) {
+        return key != null && keyMatches(base(index), key.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private boolean keyMatches(int base, byte[] key) {
+        return PercentCodec.decodedEquals(source, offsets[base], offsets[base + 1], key);
+    }
+
+    /**
+     * Find the position of the first parameter with the given key.
+     * <p>
+     * Keys are compared in their encoded form; only the value of the match (if any) needs decoding afterwards.
+     *
+     * @param key the decoded key to search for
+     * @return the index of the first match, or -1 if no parameter has that key
+     */
+    public int indexOf(String key) {
+        if (key == null || size == 0) {
+            return -1;
+        }
+
+        byte[] expected = key.getBytes(StandardCharsets.UTF_8);
+
+        for (int i = 0; i < size; i++) {
+            if (keyMatches(i * STRIDE, expected)) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * @param key the decoded key to search for
+     * @return true if at least one parameter has that key
+     */
+    public boolean contains(String key) {
+        return indexOf(key) >= 0;
+    }
+
+    /**
+     * Get the decoded value of the first parameter with the given key.
+     *
+     * @param key the decoded key to search for
+     * @return the decoded value, empty string if the parameter has no value, or null if the key is not present
+     */
+    public String get(String key) {
+        int index = indexOf(key);
+        return index < 0 ? null : getValue(index);
+    }
+
+    /**
+     * Get the decoded values of every parameter with the given key, in source order.
+     *
+     * @param key the decoded key to search for
+     * @return the decoded values; empty if the key is not present
+     */
+    public List<String> getAll(String key) {
+        if (key == null || size == 0) {
+            return Collections.emptyList();
+        }
+
+        byte[] expected = key.getBytes(StandardCharsets.UTF_8);
+        List<String> values = null;
+
+        for (int i = 0; i < size; i++) {
+            if (keyMatches(i * STRIDE, expected)) {
+                if (values == null) {
+                    values = new ArrayList<>(2);
+                }
+                values.add(getValue(i));
+            }
+        }
+
+        return values == null ? Collections.<String>emptyList() : values;
+    }
+
+    /**
+     * Visit each parameter in source order. Nothing is decoded unless the visitor asks for it.
+     *
+     * @param visitor callback invoked once per parameter; return false from it to stop early
+     */
+    public void forEach(Visitor visitor) {
+        for (int i = 0; i < size; i++) {
+            if (!visitor.visit(this, i)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Decode every parameter into a map of multiple values, in the same shape as {@link UrlBuilder#getQueryParameters()}.
+     *
+     * @return a new map of decoded keys to decoded values
+     */
+    public Map<String, List<String>> toMap() {
+        Map<String, List<String>> map = new LinkedHashMap<>();
+
+        for (int i = 0; i < size; i++) {
+            map.computeIfAbsent(getKey(i), k -> new ArrayList<>()).add(getValue(i));
+        }
+
+        return map;
+    }
+
+    /**
+     * @return the source query string, as given to {@link #parse(String)}
+     */
+    @Override
+    public String toString() {
+        return source;
+    }
+
+    private int base(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        return index * STRIDE;
+    }
+
+    /**
+     * Callback for {@link #forEach(Visitor)}.
+     */
+    public interface Visitor {
+        /**
+         * Called once per parameter.
+         *
+         * @param query the query string being visited
+         * @param index position of the current parameter; pass to {@link QueryString#getKey(int)} and friends
+         * @return true to continue visiting, false to stop
+         */
+        boolean visit(QueryString query, int index);
+    }
+}
@@ -0,0 +1,398 @@
+package com.widen.urlbuilder;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Lightweight view over a URL held as raw bytes, such as the request target read off a socket.
+ * <p>
+ * Parsing tokenizes the US-ASCII bytes directly, recording only the offsets of the scheme, host, port, path,
+ * query and fragment. Nothing is copied into a {@link String} until a component is accessed, and
+ * percent-decoding (as UTF-8) happens only for the components that are asked for in decoded form.
+ * <p>
+ * Accepted forms are absolute URLs ({@code http://host:8080/path?query#fragment}), protocol relative URLs
+ * ({@code //host/path}), origin-form request targets ({@code /path?query}) and the asterisk form ({@code *}).
+ * <p>
+ * <b>Typical usage:</b>
+ * <pre>
+ * RawUrl url = RawUrl.parse(buffer, offset, length);
+ * url.getPathSegments();           // decoded segments
+ * url.getQueryString().get("id");  // only "id" is decoded
+ * url.toUrlBuilder();              // full UrlBuilder when the URL needs rewriting
+ * </pre>
+ * <p>
+ * The view does not copy its input when given a {@code byte[]} or a heap {@link ByteBuffer}; the caller must not
+ * modify those bytes while the view is in use.
+ *
+ * @see UrlBuilder#UrlBuilder(String)
+ * @see QueryString
+ * @since 3.0.0
+ */
+public final class RawUrl {
+
+    private byte[] bytes;
+
+    private int start;
+
+    private int end;
+
+    private int schemeEnd;
+
+    private int hostStart;
+
+    private int hostEnd;
+
+    private int port;
+
+    private int pathStart;
+
+    private int queryStart;
+
+    private int fragmentStart;
+
+    private QueryString queryString;
+
+    /**
+     * Create an empty holder to be filled by {@link #reset(byte[], int, int)}.
+     */
+    RawUrl() {
+    }
+
+    /**
+     * Re-point this view at a new URL, replacing every component. Used by {@link UrlLogParser} to reuse
+     * one view per worker instead of allocating one per line.
+     *
+     * @return this view
+     */
+    RawUrl reset(byte[] bytes, int start, int end) {
+        this.bytes = bytes;
+        this.start = start;
+        this.end = end;
+        this.queryString = null;
+
+        if (start == end) {
+            throw new UrlBuilder.NonParsableUrl("URL cannot be empty.");
+        }
+
+        int i = start;
+
+        int schemeEnd = -1;
+        if (isAlpha(bytes[i])) {
+            int j = i + 1;
+            while (j < end && isSchemeChar(bytes[j])) {
+                j++;
+            }
+            if (j + 2 < end && bytes[j] == ':' && bytes[j + 1] == '/' && bytes[j + 2] == '/') {
+                schemeEnd = j;
+                i = j + 1;
+            }
+        }
+        this.schemeEnd = schemeEnd;
+
+        int hostStart = -1;
+        int hostEnd = -1;
+        int port = -1;
+
+        if (i + 1 < end && bytes[i] == '/' && bytes[i + 1] == '/') {
+            i += 2;
+
+            int authorityEnd = i;
+            while (authorityEnd < end && bytes[authorityEnd] != '/' && bytes[authorityEnd] != '?' && bytes[authorityEnd] != '#') {
+                authorityEnd++;
+            }
+
+            // Skip any userinfo; the host starts after the last '@'
+            hostStart = i;
+            for (int j = i; j < authorityEnd; j++) {
+                if (bytes[j] == '@') {
+                    hostStart = j + 1;
+                }
+            }
+
+            hostEnd = authorityEnd;
+            int portStart = -1;
+
+            if (hostStart < authorityEnd && bytes[hostStart] == '[') {
+                int close = hostStart;
+                while (close < authorityEnd && bytes[close] != ']') {
+                    close++;
+                }
+                if (close == authorityEnd) {
+                    throw new UrlBuilder.NonParsableUrl("Unterminated IPv6 address in URL.");
+                }
+                hostEnd = close + 1;
+                if (hostEnd < authorityEnd) {
+                    if (bytes[hostEnd] != ':') {
+                        throw new UrlBuilder.NonParsableUrl("Unexpected character after IPv6 address in URL.");
+                    }
+                    portStart = hostEnd + 1;
+                }
+            }
+            else {
+                for (int j = hostStart; j < authorityEnd; j++) {
+                    if (bytes[j] == ':') {
+                        hostEnd = j;
+                        portStart = j + 1;
+                        break;
+                    }
+                }
+            }
+
+            if (portStart >= 0 && portStart < authorityEnd) {
+                port = 0;
+                for (int j = portStart; j < authorityEnd; j++) {
+                    int digit = bytes[j] - '0';
+                    if (digit < 0 || digit > 9 || port > 6553) {
+                        throw new UrlBuilder.NonParsableUrl("Invalid port in URL.");
+                    }
+                    port = port * 10 + digit;
+                }
+                if (port > 65535) {
+                    throw new UrlBuilder.NonParsableUrl("Invalid port in URL.");
+                }
+            }
+
+            i = authorityEnd;
+        }
+        else if (schemeEnd >= 0) {
+            throw new UrlBuilder.NonParsableUrl("Missing authority in URL.");
+        }
+        else if (bytes[i] != '/' && !(bytes[i] == '*' && end - i == 1)) {
+            throw new UrlBuilder.NonParsableUrl("URL must be absolute or start with '/'.");
+        }
+
+        this.hostStart = hostStart;
+        this.hostEnd = hostEnd;
+        this.port = port;
+        this.pathStart = i;
+
+        int queryStart = -1;
+        int fragmentStart = -1;
+
+        for (int j = start; j < end; j++) {
+            byte b = bytes[j];
+
+            if ((b >= 0 && b <= ' ') || b == 0x7F) {
+                throw new UrlBuilder.NonParsableUrl("Illegal character in URL at index " + (j - start) + ".");
+            }
+
+            if (j < pathStart) {
+                continue;
+            }
+
+            if (b == '?' && queryStart < 0 && fragmentStart < 0) {
+                queryStart = j;
+            }
+            else if (b == '#' && fragmentStart < 0) {
+                fragmentStart = j;
+            }
+        }
+
+        this.queryStart = queryStart;
+        this.fragmentStart = fragmentStart;
+
+        return this;
+    }
+
+    /**
+     * Parse a URL from a range of bytes. The array is not copied.
+     *
+     * @param bytes the buffer holding the URL
+     * @param offset position of the first byte of the URL
+     * @param length number of bytes in the URL
+     * @return a view over the URL
+     * @throws UrlBuilder.NonParsableUrl if the bytes are not a URL or request target
+     * @throws IndexOutOfBoundsException if the range is outside of {@code bytes}
+     */
+    public static RawUrl parse(byte[] bytes, int offset, int length) {
+        InternalUtils.checkNotNull(bytes, "bytes");
+        if (offset < 0 || length < 0 || offset + length > bytes.length || offset + length < 0) {
+            throw new IndexOutOfBoundsException("offset " + offset + ", length " + length + ", size " + bytes.length);
+        }
+        return new RawUrl().reset(bytes, offset, offset + length);
+    }
+
+    /**
+     * Parse a URL from the remaining bytes of a buffer.
+     * <p>
+     * The buffer's position is not changed. Heap buffers are read in place; direct buffers are copied once.
+     *
+     * @param buffer the buffer holding the URL between its position and limit
+     * @return a view over the URL
+     * @throws UrlBuilder.NonParsableUrl if the bytes are not a URL or request target
+     */
+    public static RawUrl parse(ByteBuffer buffer) {
+        InternalUtils.checkNotNull(buffer, "buffer");
+        if (buffer.hasArray()) {
+            return parse(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        }
+
+        byte[] copy = new byte[buffer.remaining()];
+        buffer.duplicate().get(copy);
+        return new RawUrl().reset(copy, 0, copy.length);
+    }
+
+    /**
+     * @return the scheme, e.g. {@code "https"}, or null for relative URLs
+     */
+    public String getScheme() {
+        return schemeEnd < 0 ? null : ascii(start, schemeEnd);
+    }
+
+    /**
+     * @return true if the scheme is {@code https}
+     */
+    public boolean isSsl() {
+        return schemeEnd - start == 5
+            && (bytes[start] | 0x20) == 'h'
+            && (bytes[start + 1] | 0x20) == 't'
+            && (bytes[start + 2] | 0x20) == 't'
+            && (bytes[start + 3] | 0x20) == 'p'
+            && (bytes[start + 4] | 0x20) == 's';
+    }
+
+    /**
+     * @return the hostname (IPv6 addresses keep their brackets), or null if the URL has no authority
+     */
+    public String getHostname() {
+        return hostStart < 0 ? null : ascii(hostStart, hostEnd);
+    }
+
+    /**
+     * @return the explicit port, or -1 if none was given
+     */
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * @return the path exactly as it appears in the input, or empty string if there is none
+     */
+    public String getRawPath() {
+        return ascii(pathStart, pathEnd());
+    }
+
+    /**
+     * Get the decoded, non-empty path segments; consecutive slashes are collapsed as in {@link UrlBuilder#getPathSegments()}.
+     * <p>
+     * Segments are split before decoding, so an encoded slash ({@code %2F}) stays inside its segment.
+     *
+     * @return a read-only list of decoded segments
+     */
+    public List<String> getPathSegments() {
+        int pathEnd = pathEnd();
+        List<String> segments = null;
+        int segmentStart = pathStart;
+
+        for (int i = pathStart; i <= pathEnd; i++) {
+            if (i == pathEnd || bytes[i] == '/') {
+                if (i > segmentStart) {
+                    if (segments == null) {
+                        segments = new ArrayList<>();
+                    }
+                    segments.add(PercentCodec.decode(bytes, segmentStart, i));
+                }
+                segmentStart = i + 1;
+            }
+        }
+
+        return segments == null ? Collections.<String>emptyList() : Collections.unmodifiableList(segments);
+    }
+
+    /**
+     * @return the query string without the leading {@code ?} exactly as it appears in the input, or null if there is none
+     */
+    public String getRawQuery() {
+        return queryStart < 0 ? null : ascii(queryStart + 1, fragmentStart < 0 ? end : fragmentStart);
+    }
+
+    /**
+     * Get a lazily decoded view of the query parameters. The view is created on first access and reused.
+     *
+     * @return the query parameters; empty if the URL has no query string
+     */
+    public QueryString getQueryString() {
+        QueryString result = queryString;
+        if (result == null) {
+            result = QueryString.parse(getRawQuery());
+            queryString = result;
+        }
+        return result;
+    }
+
+    /**
+     * @return the fragment without the leading {@code #}, not decoded, or null if there is none
+     */
+    public String getFragment() {
+        return fragmentStart < 0 ? null : ascii(fragmentStart + 1, end);
+    }
+
+    /**
+     * Convert this view into a mutable {@link UrlBuilder}.
+     * <p>
+     * Path segments and query parameters are decoded so that the builder re-encodes them with its own encoders.
+     * URLs with a hostname produce a {@link UrlBuilder.GenerationMode#FULLY_QUALIFIED} builder
+     * (or {@link UrlBuilder.GenerationMode#PROTOCOL_RELATIVE} if there is no scheme); request targets without one
+     * produce a {@link UrlBuilder.GenerationMode#HOSTNAME_RELATIVE} builder.
+     *
+     * @return a new builder holding every component of this URL
+     */
+    public UrlBuilder toUrlBuilder() {
+        UrlBuilder builder = new UrlBuilder();
+
+        builder.usingSsl(isSsl());
+        builder.withPathEncoded(getRawPath());
+
+        QueryString query = getQueryString();
+        for (int i = 0; i < query.size(); i++) {
+            builder.addParameter(query.getKey(i), query.getValue(i));
+        }
+
+        builder.withFragment(getFragment());
+
+        if (hostStart >= 0) {
+            builder.withHostname(getHostname());
+            builder.setPort(port);
+
+            if (schemeEnd >= 0) {
+                builder.modeFullyQualified();
+            }
+            else {
+                builder.modeProtocolRelative();
+            }
+        }
+
+        return builder;
+    }
+
+    /**
+     * @return the URL exactly as it appears in the input
+     */
+    @Override
+    public String toString() {
+        return ascii(start, end);
+    }
+
+    private int pathEnd() {
+        if (queryStart >= 0) {
+            return queryStart;
+        }
+        return fragmentStart >= 0 ? fragmentStart : end;
+    }
+
+    private String ascii(int from, int to) {
+        // UTF-8 is a superset of US-ASCII, so stray raw non-ASCII bytes survive rather than becoming '?'
+        return new String(bytes, from, to - from, StandardCharsets.UTF_8);
+    }
+
+    private static boolean isAlpha(byte b) {
+        return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z');
+    }
+
+    private static boolean isSchemeChar(byte b) {
+        return isAlpha(b) || (b >= '0' && b <= '9') || b == '+' || b == '-' || b == '.';
+    }
+}
@@ -0,0 +1,259 @@
+package com.widen.urlbuilder;
+
+import java.time.Clock;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A {@link S3CredentialsProvider} that reloads rotating credentials, such as hourly STS session credentials, in the
+ * background.
+ * <p>
+ * The current {@link S3Credentials} snapshot is published through an {@link AtomicReference}: signers read it
+ * without locking and never wait for a reload, and a rotation swaps in a new snapshot (with its signing keys
+ * already derived) in one step. URLs being signed during a rotation finish with the snapshot they started with.
+ * <p>
+ * Credentials are loaded from a source provider, which may block (e.g. read a file or call STS). They are
+ * reloaded a margin ahead of their {@linkplain S3Credentials#getExpiration() expiration}, or at a fixed interval
+ * if they do not expire. A failed reload keeps the current snapshot and is retried after a short delay.
+ * <p>
+ * <b>Typical usage:</b>
+ * <pre>
+ * RefreshingS3CredentialsProvider credentials = RefreshingS3CredentialsProvider
+ *     .builder(() -&gt; S3Credentials.fromProfileFile(path, "default"))
+ *     .refreshEvery(15, TimeUnit.MINUTES)
+ *     .build();
+ *
+ * S3UrlSigner signer = S3UrlSigner.builder("my-bucket").usingCredentials(credentials).build();
+ * </pre>
+ * Call {@link #close()} to stop reloading.
+ *
+ * @since 3.0.0
+ */
+public final class RefreshingS3CredentialsProvider implements S3CredentialsProvider, AutoCloseable {
+
+    private final S3CredentialsProvider source;
+
+    private final AtomicReference<S3Credentials> current = new AtomicReference<>();
+
+    private final ScheduledExecutorService scheduler;
+
+    private final boolean ownsScheduler;
+
+    private final long refreshAheadMillis;
+
+    private final long refreshIntervalMillis;
+
+    private final long retryMillis;
+
+    private final Clock clock;
+
+    /** Guards {@link #next} and {@link #closed}, so a reload cannot be scheduled after {@link #close()}. */
+    private final Object scheduleLock = new Object();
+
+    private ScheduledFuture<?> next;
+
+    private boolean closed;
+
+    private RefreshingS3CredentialsProvider(Builder builder) {
+        source = builder.source;
+        ownsScheduler = builder.scheduler == null;
+        scheduler = ownsScheduler ? newScheduler() : builder.scheduler;
+        refreshAheadMillis = builder.refreshAheadMillis;
+        refreshIntervalMillis = builder.refreshIntervalMillis;
+        retryMillis = builder.retryMillis;
+        clock = builder.clock;
+    }
+
+    /**
+     * Start configuring a provider that loads credentials from {@code source}.
+     *
+     * @param source loads a fresh snapshot each time it is called; may block
+     * @throws IllegalArgumentException if source is null
+     */
+    public static Builder builder(S3CredentialsProvider source) {
+        return new Builder(source);
+    }
+
+    /**
+     * @return the current snapshot, without blocking
+     */
+    @Override
+    public S3Credentials getCredentials() {
+        return current.get();
+    }
+
+    /**
+     * Load and publish credentials from the source now, on the calling thread. The SigV2 signing key, and the SigV4
+     * keys of the regions the previous snapshot signed for, are derived before the snapshot is published.
+     *
+     * @return the new snapshot
+     * @throws IllegalStateException if the source returns null
+     */
+    public S3Credentials refresh() {
+        S3Credentials credentials = source.getCredentials();
+        if (credentials == null) {
+            throw new IllegalStateException("Credentials source returned null.");
+        }
+        credentials.deriveSigningKeys(current.get(), Math.floorDiv(clock.millis(), 1000L));
+        current.set(credentials);
+        return credentials;
+    }
+
+    /**
+     * Stop reloading. The last snapshot stays available from {@link #getCredentials()}. A scheduler passed to
+     * {@link Builder#usingScheduler(ScheduledExecutorService)} is not shut down.
+     */
+    @Override
+    public void close() {
+        synchronized (scheduleLock) {
+            closed = true;
+            if (next != null) {
+                next.cancel(false);
+            }
+        }
+        if (ownsScheduler) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * @return milliseconds until the snapshot should be reloaded
+     */
+    long delayFor(S3Credentials credentials) {
+        long untilRefresh = credentials.expirationMillis() - refreshAheadMillis - clock.millis();
+        return Math.max(retryMillis, Math.min(refreshIntervalMillis, untilRefresh));
+    }
+
+    private void scheduleRefresh(long delayMillis) {
+        synchronized (scheduleLock) {
+            if (closed) {
+                return;
+            }
+            try {
+                next = scheduler.schedule(this::refreshAndReschedule, delayMillis, TimeUnit.MILLISECONDS);
+            }
+            catch (RejectedExecutionException e) {
+                // the scheduler was shut down; nothing left to reload on
+            }
+        }
+    }
+
+    private void refreshAndReschedule() {
+        long delayMillis;
+        try {
+            delayMillis = delayFor(refresh());
+        }
+        catch (RuntimeException e) {
+            // keep signing with the current snapshot and try again shortly
+            delayMillis = retryMillis;
+        }
+        scheduleRefresh(delayMillis);
+    }
+
+    private static ScheduledExecutorService newScheduler() {
+        return Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "s3-credentials-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Configuration for a {@link RefreshingS3CredentialsProvider}.
+     */
+    public static final class Builder {
+
+        private final S3CredentialsProvider source;
+
+        private ScheduledExecutorService scheduler;
+
+        private long refreshAheadMillis = TimeUnit.MINUTES.toMillis(5);
+
+        private long refreshIntervalMillis = TimeUnit.HOURS.toMillis(1);
+
+        private long retryMillis = TimeUnit.SECONDS.toMillis(30);
+
+        private Clock clock = Clock.systemUTC();
+
+        private Builder(S3CredentialsProvider source) {
+            InternalUtils.checkNotNull(source, "source");
+            this.source = source;
+        }
+
+        /**
+         * How long before expiration credentials are reloaded. Defaults to 5 minutes.
+         *
+         * @return this builder for method chaining
+         * @throws IllegalArgumentException if unit is null
+         */
+        public Builder refreshAhead(long duration, TimeUnit unit) {
+            InternalUtils.checkNotNull(unit, "unit");
+            refreshAheadMillis = unit.toMillis(duration);
+            return this;
+        }
+
+        /**
+         * Longest time between reloads, and the reload interval of credentials without an expiration.
+         * Defaults to 1 hour.
+         *
+         * @return this builder for method chaining
+         * @throws IllegalArgumentException if unit is null
+         */
+        public Builder refreshEvery(long duration, TimeUnit unit) {
+            InternalUtils.checkNotNull(unit, "unit");
+            refreshIntervalMillis = unit.toMillis(duration);
+            return this;
+        }
+
+        /**
+         * Delay before retrying a failed reload, and the shortest time between reloads. Defaults to 30 seconds.
+         *
+         * @return this builder for method chaining
+         * @throws IllegalArgumentException if unit is null
+         */
+        public Builder retryAfter(long duration, TimeUnit unit) {
+            InternalUtils.checkNotNull(unit, "unit");
+            retryMillis = Math.max(1, unit.toMillis(duration));
+            return this;
+        }
+
+        /**
+         * Reload on a shared scheduler instead of a dedicated daemon thread.
+         *
+         * @return this builder for method chaining
+         * @throws IllegalArgumentException if scheduler is null
+         */
+        public Builder usingScheduler(ScheduledExecutorService scheduler) {
+            InternalUtils.checkNotNull(scheduler, "scheduler");
+            this.scheduler = scheduler;
+            return this;
+        }
+
+        Builder usingClock(Clock clock) {
+            this.clock = clock;
+            return this;
+        }
+
+        /**
+         * Load the first snapshot on the calling thread and start reloading in the background.
+         *
+         * @return a new provider
+         * @throws RuntimeException whatever the source throws if the first load fails
+         */
+        public RefreshingS3CredentialsProvider build() {
+            RefreshingS3CredentialsProvider provider = new RefreshingS3CredentialsProvider(this);
+            try {
+                provider.scheduleRefresh(provider.delayFor(provider.refresh()));
+            }
+            catch (RuntimeException e) {
+                provider.close();
+                throw e;
+            }
+            return provider;
+        }
+    }
+}
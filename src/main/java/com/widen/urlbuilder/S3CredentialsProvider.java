@@ -0,0 +1,21 @@
+package com.widen.urlbuilder;
+
+/**
+ * Source of the AWS credentials S3 URLs are signed with.
+ * <p>
+ * Signers call {@link #getCredentials()} once per URL (or once per batch), so implementations must return quickly
+ * and must not block; credentials that rotate should be loaded ahead of time and published as a new
+ * {@link S3Credentials} snapshot, as {@link RefreshingS3CredentialsProvider} does. Fixed credentials are their own
+ * provider.
+ *
+ * @see S3UrlBuilder#usingCredentials(S3CredentialsProvider)
+ * @see S3UrlSigner.Builder#usingCredentials(S3CredentialsProvider)
+ * @since 3.0.0
+ */
+public interface S3CredentialsProvider {
+
+    /**
+     * @return the credentials to sign with now; never null
+     */
+    S3Credentials getCredentials();
+}
@@ -0,0 +1,159 @@
+package com.widen.urlbuilder;
+
+/**
+ * Resolves the hostname of S3 URLs from the bucket, region, bucket encoding, dual-stack and transfer acceleration
+ * settings.
+ * <p>
+ * Each combination is resolved once and kept in a cache of the most recently used combinations, so the builders
+ * share a single hostname string per combination and only look it up again when their configuration changes.
+ *
+ * @see <a href="https://docs.aws.amazon.com/general/latest/gr/s3.html">Amazon S3 endpoints</a>
+ * @see <a href="https://docs.aws.amazon.com/AmazonS3/latest/userguide/dual-stack-endpoints.html">Dual-stack endpoints</a>
+ * @see <a href="https://docs.aws.amazon.com/AmazonS3/latest/userguide/transfer-acceleration.html">Transfer Acceleration</a>
+ */
+final class S3Endpoints {
+
+    /** The global endpoint, used when neither a region nor a custom endpoint is set. */
+    static final String DEFAULT_ENDPOINT = "s3.amazonaws.com";
+
+    /** Dual-stack endpoints are always regional. */
+    private static final String DEFAULT_DUALSTACK_REGION = "us-east-1";
+
+    private static final int CACHE_LIMIT = 256;
+
+    private static final BoundedCache<Key, Endpoint> RESOLVED = new BoundedCache<>(CACHE_LIMIT);
+
+    private S3Endpoints() {
+    }
+
+    /**
+     * @param bucket name of the bucket
+     * @param endpoint custom endpoint of an S3 API compatible service, or null for Amazon S3
+     * @param region AWS region of the bucket, or null for the global endpoint; ignored if {@code endpoint} is set
+     * @param encoding where the bucket is encoded into the URL; non DNS-compatible buckets always go in the path
+     * @param dualStack use the IPv4/IPv6 endpoint; ignored if {@code endpoint} is set
+     * @param accelerate use the Transfer Acceleration endpoint
+     * @throws IllegalStateException if transfer acceleration is combined with a custom endpoint, the bucket in the
+     *                               path, or a bucket name that is not DNS-compatible or contains periods
+     */
+    static Endpoint resolve(String bucket, String endpoint, String region, S3UrlBuilder.BucketEncoding encoding,
+                            boolean dualStack, boolean accelerate) {
+        return RESOLVED.get(new Key(bucket, endpoint, region, encoding, dualStack, accelerate), S3Endpoints::compute);
+    }
+
+    /**
+     * @return the hostname of the S3 service in a region, without any bucket
+     */
+    static String serviceEndpoint(String region, boolean dualStack, boolean accelerate) {
+        if (accelerate) {
+            return dualStack ? "s3-accelerate.dualstack.amazonaws.com" : "s3-accelerate.amazonaws.com";
+        }
+        if (dualStack) {
+            String dualStackRegion = region != null ? region : DEFAULT_DUALSTACK_REGION;
+            return "s3.dualstack." + dualStackRegion + "." + domain(dualStackRegion);
+        }
+        return region != null ? "s3." + region + "." + domain(region) : DEFAULT_ENDPOINT;
+    }
+
+    private static Endpoint compute(Key key) {
+        boolean dnsBucket = S3UrlBuilder.AmazonAWSJavaSDKInternal.isValidV2BucketName(key.bucket);
+
+        if (key.accelerate) {
+            if (key.endpoint != null) {
+                throw new IllegalStateException("Transfer acceleration cannot be used with a custom endpoint.");
+            }
+            if (key.encoding == S3UrlBuilder.BucketEncoding.PATH) {
+                throw new IllegalStateException("Transfer acceleration requires the bucket in the hostname.");
+            }
+            if (key.encoding == S3UrlBuilder.BucketEncoding.VIRTUAL_DNS) {
+                throw new IllegalStateException("Transfer acceleration cannot be used with a virtual DNS bucket hostname.");
+            }
+            if (!dnsBucket || key.bucket.indexOf('.') >= 0) {
+                throw new IllegalStateException("Transfer acceleration requires a DNS-compatible bucket name without periods.");
+            }
+        }
+
+        String service = key.endpoint != null ? key.endpoint : serviceEndpoint(key.region, key.dualStack, key.accelerate);
+
+        if (!dnsBucket || key.encoding == S3UrlBuilder.BucketEncoding.PATH) {
+            return new Endpoint(service, true);
+        }
+        if (key.encoding == S3UrlBuilder.BucketEncoding.VIRTUAL_DNS) {
+            return new Endpoint(key.bucket, false);
+        }
+        return new Endpoint(key.bucket + "." + service, false);
+    }
+
+    private static String domain(String region) {
+        return region.startsWith("cn-") ? "amazonaws.com.cn" : "amazonaws.com";
+    }
+
+    /**
+     * A resolved S3 hostname.
+     */
+    static final class Endpoint {
+
+        final String hostname;
+
+        /** True if the bucket is the first path segment. */
+        final boolean bucketInPath;
+
+        Endpoint(String hostname, boolean bucketInPath) {
+            this.hostname = hostname;
+            this.bucketInPath = bucketInPath;
+        }
+    }
+
+    private static final class Key {
+
+        private final String bucket;
+
+        private final String endpoint;
+
+        private final String region;
+
+        private final S3UrlBuilder.BucketEncoding encoding;
+
+        private final boolean dualStack;
+
+        private final boolean accelerate;
+
+        Key(String bucket, String endpoint, String region, S3UrlBuilder.BucketEncoding encoding, boolean dualStack,
+            boolean accelerate) {
+            this.bucket = bucket;
+            this.endpoint = endpoint;
+            this.region = endpoint != null ? null : region;
+            this.encoding = encoding;
+            this.dualStack = endpoint == null && dualStack;
+            this.accelerate = accelerate;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return bucket.equals(other.bucket)
+                && (endpoint == null ? other.endpoint == null : endpoint.equals(other.endpoint))
+                && (region == null ? other.region == null : region.equals(other.region))
+                && encoding == other.encoding
+                && dualStack == other.dualStack
+                && accelerate == other.accelerate;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = bucket.hashCode();
+            result = 31 * result + (endpoint != null ? endpoint.hashCode() : 0);
+            result = 31 * result + (region != null ? region.hashCode() : 0);
+            result = 31 * result + encoding.hashCode();
+            result = 31 * result + (dualStack ? 1 : 0);
+            result = 31 * result + (accelerate ? 1 : 0);
+            return result;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.widen.urlbuilder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An S3 object key split into path segments, with every form the builders need rendered once up front.
+ * <p>
+ * A URL needs the key three ways: unencoded in the SigV2 canonical resource, percent-encoded in the URL path, and
+ * {@code UriEncode()}-ed in the SigV4 canonical URI. Computing them together when the key is set means rendering a
+ * URL only concatenates strings, however many times it is rendered.
+ * <p>
+ * Instances are immutable.
+ */
+final class S3Key {
+
+    private static final Encoder PATH_ENCODER = new PathSegmentEncoder();
+
+    /** Unencoded, non-blank segments. */
+    final List<String> segments;
+
+    /** Unencoded segments separated by '/', without a leading slash. */
+    final String path;
+
+    /** {@link PathSegmentEncoder}-encoded segments separated by '/', without a leading slash. */
+    final String encodedPath;
+
+    /** SigV4 canonical URI of the key, with a leading slash. */
+    final String canonicalUri;
+
+    private S3Key(List<String> segments) {
+        this.segments = Collections.unmodifiableList(segments);
+
+        StringBuilder path = new StringBuilder(64);
+        StringBuilder encodedPath = new StringBuilder(64);
+        StringBuilder canonicalUri = new StringBuilder(64);
+
+        for (int i = 0; i < segments.size(); i++) {
+            String segment = segments.get(i);
+            if (i > 0) {
+                path.append('/');
+                encodedPath.append('/');
+            }
+            path.append(segment);
+            encodedPath.append(PATH_ENCODER.encode(segment));
+            SigV4.appendCanonicalSegment(canonicalUri, segment);
+        }
+
+        this.path = path.toString();
+        this.encodedPath = encodedPath.toString();
+        this.canonicalUri = segments.isEmpty() ? "/" : canonicalUri.toString();
+    }
+
+    /**
+     * Split a key on '/', dropping blank segments. Segments are taken as-is; a literal {@code %} in a key is part of
+     * its name and is encoded like any other character.
+     */
+    static S3Key of(String key) {
+        List<String> segments = new ArrayList<>();
+
+        int start = 0;
+        int length = key.length();
+        while (start <= length) {
+            int end = key.indexOf('/', start);
+            if (end < 0) {
+                end = length;
+            }
+            String segment = key.substring(start, end);
+            if (StringUtilsInternal.isNotBlank(segment)) {
+                segments.add(segment);
+            }
+            start = end + 1;
+        }
+
+        return new S3Key(segments);
+    }
+
+    /**
+     * @return the URL path of this key with {@code bucket} as its first segment, without a leading slash
+     */
+    String encodedPathInBucket(String bucket) {
+        String encodedBucket = PATH_ENCODER.encode(bucket);
+        return segments.isEmpty() ? encodedBucket : encodedBucket + "/" + encodedPath;
+    }
+
+    /**
+     * @return the SigV4 canonical URI of this key with {@code bucket} as its first segment
+     */
+    String canonicalUriInBucket(String bucket) {
+        StringBuilder uri = new StringBuilder(bucket.length() + canonicalUri.length() + 1);
+        SigV4.appendCanonicalSegment(uri, bucket);
+        return segments.isEmpty() ? uri.toString() : uri.append(canonicalUri).toString();
+    }
+}
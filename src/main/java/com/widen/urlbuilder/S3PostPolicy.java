@@ -0,0 +1,648 @@
+package com.widen.urlbuilder;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Signs S3 POST policies for browser-based uploads straight to a bucket.
+ * <p>
+ * A POST policy is a JSON document of conditions that the upload form must satisfy, sent Base64-encoded along with
+ * its signature as form fields. Everything except the key prefix, the expiry and the signing credentials is the same
+ * for every form, so the conditions are rendered to JSON once when the policy is built. Signing an upload appends
+ * the per-upload parts and streams the encoded document through the pooled, pre-initialized MAC of the credentials,
+ * as {@link S3UrlSigner} does. The SigV4 credential scope and timestamps are kept between calls and only rebuilt
+ * when the signing second or the credentials change.
+ * <p>
+ * Instances are immutable and thread-safe.
+ * <p>
+ * <b>Typical usage:</b>
+ * <pre>
+ * S3PostPolicy policy = S3PostPolicy.builder("my-bucket")
+ *     .usingCredentials(awsKey, awsSecret)
+ *     .usingSignatureV4()
+ *     .withContentLengthRange(1, 10 * 1024 * 1024)
+ *     .withContentTypePrefix("image/")
+ *     .usingSsl()
+ *     .build();
+ *
+ * // &lt;form action="${policy.getActionUrl()}" method="post" enctype="multipart/form-data"&gt;
+ * policy.writeHiddenInputs("uploads/user-42/", 15, TimeUnit.MINUTES, writer);
+ * </pre>
+ *
+ * @see <a href="https://docs.aws.amazon.com/AmazonS3/latest/API/sigv4-HTTPPOSTConstructPolicy.html">Creating a POST Policy</a>
+ * @see <a href="https://docs.aws.amazon.com/AmazonS3/latest/userguide/HTTPPOSTForms.html">HTML forms (Signature Version 2)</a>
+ * @since 3.0.0
+ */
+public final class S3PostPolicy {
+
+    private static final String DEFAULT_REGION = "us-east-1";
+
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+    private final String actionUrl;
+
+    private final S3CredentialsProvider credentials;
+
+    private final boolean signatureV4;
+
+    private final String region;
+
+    private final Clock clock;
+
+    private final ExpiryPolicy expiryPolicy;
+
+    /** {@code ,"conditions":[{"bucket":...},} followed by every static condition, each with a trailing comma. */
+    private final String staticConditions;
+
+    /** Names and values of the form fields fixed by the static conditions. */
+    private final String[] staticFields;
+
+    /** The last expiration timestamp rendered, reused while the expiry stays in the same second. */
+    private volatile Stamp expiration = new Stamp(Long.MIN_VALUE, null);
+
+    private volatile SigningState signingState;
+
+    private S3PostPolicy(Builder builder) {
+        S3Endpoints.Endpoint endpoint = S3Endpoints.resolve(builder.bucket, builder.endpoint, builder.endpointRegion,
+            builder.bucketEncoding, false, false);
+        actionUrl = (builder.ssl ? "https://" : "http://") + endpoint.hostname + "/" + (endpoint.bucketInPath ? builder.bucket + "/" : "");
+
+        credentials = builder.credentials;
+        signatureV4 = builder.signatureV4;
+        region = builder.region != null ? builder.region : DEFAULT_REGION;
+        clock = builder.clock;
+        expiryPolicy = builder.expiryPolicy;
+
+        StringBuilder json = new StringBuilder(256).append(",\"conditions\":[");
+        appendCondition(json, "bucket", builder.bucket);
+        json.append(',').append(builder.conditions);
+        staticConditions = json.toString();
+        staticFields = builder.fields.toArray(new String[0]);
+    }
+
+    /**
+     * Start configuring a policy for uploads to a bucket.
+     *
+     * @param bucket name of the bucket
+     * @throws IllegalArgumentException if bucket is blank
+     */
+    public static Builder builder(String bucket) {
+        return new Builder(bucket);
+    }
+
+    /**
+     * @return the URL the upload form posts to
+     */
+    public String getActionUrl() {
+        return actionUrl;
+    }
+
+    /**
+     * Sign a policy for uploads under a key prefix that is valid for a duration from now.
+     *
+     * @param keyPrefix prefix of the uploaded keys; the {@code key} field is the prefix followed by {@code ${filename}}
+     * @param duration how long the form can be submitted
+     * @param unit unit of duration
+     * @return the form fields, in order
+     * @throws IllegalArgumentException if keyPrefix or unit is null
+     */
+    public Map<String, String> sign(String keyPrefix, long duration, TimeUnit unit) {
+        Map<String, String> fields = new LinkedHashMap<>();
+        sign(keyPrefix, duration, unit, fields);
+        return fields;
+    }
+
+    /**
+     * Sign a policy for uploads under a key prefix that is valid for a duration from now, adding the form fields to a
+     * caller-supplied map.
+     *
+     * @throws IllegalArgumentException if keyPrefix, unit or fields is null
+     * @see #sign(String, long, TimeUnit)
+     */
+    public void sign(String keyPrefix, long duration, TimeUnit unit, Map<String, String> fields) {
+        InternalUtils.checkNotNull(unit, "unit");
+        InternalUtils.checkNotNull(fields, "fields");
+        long now = clock.millis();
+        try {
+            render(keyPrefix, expiryPolicy.expiresAt(now, unit.toMillis(duration)), now, fields::put);
+        }
+        catch (IOException e) {
+            // maps do not throw
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Sign a policy for uploads under a key prefix that expires at an absolute time, adding the form fields to a
+     * caller-supplied map.
+     *
+     * @param expireAt time the form expires; accurate to seconds
+     * @throws IllegalArgumentException if keyPrefix, expireAt or fields is null
+     * @see #sign(String, long, TimeUnit)
+     */
+    public void sign(String keyPrefix, Date expireAt, Map<String, String> fields) {
+        InternalUtils.checkNotNull(expireAt, "expireAt");
+        InternalUtils.checkNotNull(fields, "fields");
+        try {
+            render(keyPrefix, Math.floorDiv(expireAt.getTime(), 1000L), clock.millis(), fields::put);
+        }
+        catch (IOException e) {
+            // maps do not throw
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Sign a policy for uploads under a key prefix that is valid for a duration from now, writing the form fields as
+     * HTML hidden inputs, one per line.
+     *
+     * @param out where to write the inputs, e.g. the response writer of the page that renders the form
+     * @throws IOException if out throws
+     * @throws IllegalArgumentException if keyPrefix, unit or out is null
+     * @see #sign(String, long, TimeUnit)
+     */
+    public void writeHiddenInputs(String keyPrefix, long duration, TimeUnit unit, Appendable out) throws IOException {
+        InternalUtils.checkNotNull(unit, "unit");
+        InternalUtils.checkNotNull(out, "out");
+        long now = clock.millis();
+        render(keyPrefix, expiryPolicy.expiresAt(now, unit.toMillis(duration)), now, (name, value) -> {
+            out.append("<input type=\"hidden\" name=\"");
+            appendHtml(out, name);
+            out.append("\" value=\"");
+            appendHtml(out, value);
+            out.append("\">\n");
+        });
+    }
+
+    private void render(String keyPrefix, long expiresAt, long now, FieldSink fields) throws IOException {
+        InternalUtils.checkNotNull(keyPrefix, "keyPrefix");
+
+        SigningState state = signingState(now);
+        S3Credentials snapshot = state.credentials;
+
+        StringBuilder json = new StringBuilder(staticConditions.length() + keyPrefix.length() + 256);
+        json.append("{\"expiration\":\"").append(expiration(expiresAt)).append('"');
+        json.append(staticConditions);
+        json.append("[\"starts-with\",\"$key\",");
+        appendJson(json, keyPrefix);
+        json.append(']');
+        if (signatureV4) {
+            json.append(',');
+            appendCondition(json, "x-amz-algorithm", SigV4.ALGORITHM);
+            json.append(',');
+            appendCondition(json, "x-amz-credential", state.credential);
+            json.append(',');
+            appendCondition(json, "x-amz-date", state.amzDate);
+        }
+        if (snapshot.getSessionToken() != null) {
+            json.append(',');
+            appendCondition(json, "x-amz-security-token", snapshot.getSessionToken());
+        }
+        json.append("]}");
+
+        String policy = Base64.getEncoder().encodeToString(json.toString().getBytes(StandardCharsets.UTF_8));
+
+        fields.field("key", keyPrefix + "${filename}");
+        for (int i = 0; i < staticFields.length; i += 2) {
+            fields.field(staticFields[i], staticFields[i + 1]);
+        }
+
+        HmacKey key = signatureV4 ? state.v4Key : snapshot.signingKey();
+        HmacKey.Session session = key.acquire();
+        try {
+            byte[] mac = session.append(policy).finish();
+
+            if (signatureV4) {
+                fields.field("x-amz-algorithm", SigV4.ALGORITHM);
+                fields.field("x-amz-credential", state.credential);
+                fields.field("x-amz-date", state.amzDate);
+                if (snapshot.getSessionToken() != null) {
+                    fields.field("x-amz-security-token", snapshot.getSessionToken());
+                }
+                fields.field("policy", policy);
+
+                StringBuilder signature = new StringBuilder(64);
+                SigV4.appendHex(signature, mac);
+                fields.field("x-amz-signature", signature.toString());
+            }
+            else {
+                fields.field("AWSAccessKeyId", snapshot.getAccessKeyId());
+                if (snapshot.getSessionToken() != null) {
+                    fields.field("x-amz-security-token", snapshot.getSessionToken());
+                }
+                fields.field("policy", policy);
+                fields.field("signature", Base64.getEncoder().encodeToString(mac));
+            }
+        }
+        finally {
+            key.release(session);
+        }
+    }
+
+    /**
+     * @return the credentials and, for SigV4, the scope and key to sign at {@code now} with
+     */
+    private SigningState signingState(long now) {
+        S3Credentials snapshot = credentials.getCredentials();
+        if (snapshot == null || !snapshot.isComplete()) {
+            throw new IllegalStateException("AWS Account and AWS Private Key must be specified when generating POST policies.");
+        }
+
+        long signedAt = signatureV4 ? expiryPolicy.signedAt(now) : 0;
+        SigningState state = signingState;
+
+        if (state == null || state.credentials != snapshot || state.signedAt != signedAt) {
+            state = new SigningState(snapshot, signedAt);
+            signingState = state;
+        }
+
+        return state;
+    }
+
+    private String expiration(long expiresAt) {
+        Stamp stamp = expiration;
+
+        if (stamp.seconds != expiresAt) {
+            LocalDateTime time = LocalDateTime.ofEpochSecond(expiresAt, 0, ZoneOffset.UTC);
+            StringBuilder text = new StringBuilder(24);
+            appendDigits(text, time.getYear(), 4).append('-');
+            appendDigits(text, time.getMonthValue(), 2).append('-');
+            appendDigits(text, time.getDayOfMonth(), 2).append('T');
+            appendDigits(text, time.getHour(), 2).append(':');
+            appendDigits(text, time.getMinute(), 2).append(':');
+            appendDigits(text, time.getSecond(), 2).append(".000Z");
+
+            stamp = new Stamp(expiresAt, text.toString());
+            expiration = stamp;
+        }
+
+        return stamp.text;
+    }
+
+    private static StringBuilder appendDigits(StringBuilder out, int value, int width) {
+        for (int divisor = width == 4 ? 1000 : 10; divisor > 0; divisor /= 10) {
+            out.append((char) ('0' + value / divisor % 10));
+        }
+        return out;
+    }
+
+    private static void appendCondition(StringBuilder json, String field, String value) {
+        json.append('{');
+        appendJson(json, field);
+        json.append(':');
+        appendJson(json, value);
+        json.append('}');
+    }
+
+    private static void appendJson(StringBuilder json, String value) {
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            }
+            else if (c < 0x20) {
+                json.append("\\u00").append(HEX_DIGITS[c >> 4]).append(HEX_DIGITS[c & 0x0F]);
+            }
+            else {
+                json.append(c);
+            }
+        }
+        json.append('"');
+    }
+
+    private static void appendHtml(Appendable out, String value) throws IOException {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '&':
+                    out.append("&amp;");
+                    break;
+                case '<':
+                    out.append("&lt;");
+                    break;
+                case '>':
+                    out.append("&gt;");
+                    break;
+                case '"':
+                    out.append("&quot;");
+                    break;
+                case '\'':
+                    out.append("&#39;");
+                    break;
+                default:
+                    out.append(c);
+            }
+        }
+    }
+
+    private interface FieldSink {
+        void field(String name, String value) throws IOException;
+    }
+
+    private static final class Stamp {
+
+        final long seconds;
+
+        final String text;
+
+        Stamp(long seconds, String text) {
+            this.seconds = seconds;
+            this.text = text;
+        }
+    }
+
+    /**
+     * A credentials snapshot with, for SigV4, its credential scope and signing key at one signing second.
+     */
+    private final class SigningState {
+
+        final S3Credentials credentials;
+
+        final long signedAt;
+
+        final String amzDate;
+
+        final String credential;
+
+        final HmacKey v4Key;
+
+        SigningState(S3Credentials credentials, long signedAt) {
+            this.credentials = credentials;
+            this.signedAt = signedAt;
+
+            if (signatureV4) {
+                amzDate = SigV4.amzDate(signedAt);
+                credential = credentials.getAccessKeyId() + "/" + SigV4.scope(amzDate, region, "s3");
+                v4Key = SigV4.signingKey(credentials, signedAt, region, "s3");
+            }
+            else {
+                amzDate = null;
+                credential = null;
+                v4Key = null;
+            }
+        }
+    }
+
+    /**
+     * Configuration for an {@link S3PostPolicy}. Defaults match {@link S3UrlSigner}: bucket in hostname,
+     * {@code s3.amazonaws.com}, plain HTTP and Signature Version 2.
+     */
+    public static final class Builder {
+
+        private final String bucket;
+
+        private String endpoint;
+
+        private String endpointRegion;
+
+        private S3UrlBuilder.BucketEncoding bucketEncoding = S3UrlBuilder.BucketEncoding.DNS;
+
+        private boolean ssl;
+
+        private S3CredentialsProvider credentials;
+
+        private boolean signatureV4;
+
+        private String region;
+
+        private Clock clock = Clock.systemUTC();
+
+        private ExpiryPolicy expiryPolicy = ExpiryPolicy.EXACT;
+
+        private final StringBuilder conditions = new StringBuilder();
+
+        private final List<String> fields = new ArrayList<>();
+
+        private Builder(String bucket) {
+            InternalUtils.checkNotBlank(bucket, "bucket");
+            this.bucket = bucket;
+        }
+
+        /**
+         * Set a custom endpoint for S3 API compatible services.
+         *
+         * @return this builder for method chaining
+         * @throws IllegalArgumentException if endpoint is blank
+         * @see S3UrlSigner.Builder#withEndpoint(String)
+         */
+        public Builder withEndpoint(String endpoint) {
+            InternalUtils.checkNotBlank(endpoint, "endpoint");
+            this.endpoint = endpoint;
+            return this;
+        }
+
+        /**
+         * Set endpoint and signing region based on the AWS Region of the bucket.
+         *
+         * @return this builder for method chaining
+         * @throws IllegalArgumentException if region is blank
+         * @see S3UrlSigner.Builder#inRegion(String)
+         */
+        public Builder inRegion(String region) {
+            InternalUtils.checkNotBlank(region, "region");
+            this.endpoint = null;
+            this.endpointRegion = region;
+            this.region = region;
+            return this;
+        }
+
+        /**
+         * Post to the endpoint with the bucket in the path.
+         *
+         * @return this builder for method chaining
+         */
+        public Builder usingBucketInPath() {
+            bucketEncoding = S3UrlBuilder.BucketEncoding.PATH;
+            return this;
+        }
+
+        /**
+         * Post to the "https" action URL.
+         *
+         * @return this builder for method chaining
+         */
+        public Builder usingSsl() {
+            ssl = true;
+            return this;
+        }
+
+        /**
+         * @return this builder for method chaining
+         * @throws IllegalArgumentException if awsKey or awsPrivateKey is null
+         */
+        public Builder usingCredentials(String awsKey, String awsPrivateKey) {
+            InternalUtils.checkNotNull(awsKey, "awsKey");
+            InternalUtils.checkNotNull(awsPrivateKey, "awsPrivateKey");
+            this.credentials = new S3Credentials(awsKey, awsPrivateKey);
+            return this;
+        }
+
+        /**
+         * Sign with credentials that may change over the policy's lifetime. Each form is signed with the provider's
+         * snapshot at the time of the call.
+         *
+         * @return this builder for method chaining
+         * @throws IllegalArgumentException if credentials is null
+         */
+        public Builder usingCredentials(S3CredentialsProvider credentials) {
+            InternalUtils.checkNotNull(credentials, "credentials");
+            this.credentials = credentials;
+            return this;
+        }
+
+        /**
+         * Sign with AWS Signature Version 4, in the region set by {@link #inRegion(String)} or {@code us-east-1}.
+         *
+         * @return this builder for method chaining
+         */
+        public Builder usingSignatureV4() {
+            signatureV4 = true;
+            return this;
+        }
+
+        /**
+         * Sign with AWS Signature Version 4 in an explicit signing region.
+         *
+         * @return this builder for method chaining
+         * @throws IllegalArgumentException if region is blank
+         */
+        public Builder usingSignatureV4(String region) {
+            InternalUtils.checkNotBlank(region, "region");
+            this.region = region;
+            signatureV4 = true;
+            return this;
+        }
+
+        /**
+         * Limit the size of uploaded files.
+         *
+         * @param min smallest size in bytes
+         * @param max largest size in bytes
+         * @return this builder for method chaining
+         * @throws IllegalArgumentException if min is negative or greater than max
+         */
+        public Builder withContentLengthRange(long min, long max) {
+            if (min < 0 || min > max) {
+                throw new IllegalArgumentException("content length range must satisfy 0 <= min <= max");
+            }
+            conditions.append("[\"content-length-range\",").append(min).append(',').append(max).append("],");
+            return this;
+        }
+
+        /**
+         * Require the form to set the canned ACL of uploaded objects, e.g. {@code private} or {@code public-read}.
+         *
+         * @return this builder for method chaining
+         * @throws IllegalArgumentException if acl is blank
+         */
+        public Builder withAcl(String acl) {
+            InternalUtils.checkNotBlank(acl, "acl");
+            return withField("acl", acl);
+        }
+
+        /**
+         * Require the {@code Content-Type} chosen by the page to start with a prefix, e.g. {@code image/}. The page
+         * adds the {@code Content-Type} field itself.
+         *
+         * @return this builder for method chaining
+         * @throws IllegalArgumentException if prefix is null
+         */
+        public Builder withContentTypePrefix(String prefix) {
+            return withFieldPrefix("Content-Type", prefix);
+        }
+
+        /**
+         * Have S3 answer successful uploads with this status instead of redirecting; 200, 201 or 204.
+         *
+         * @return this builder for method chaining
+         * @throws IllegalArgumentException if status is not 200, 201 or 204
+         */
+        public Builder withSuccessActionStatus(int status) {
+            if (status != 200 && status != 201 && status != 204) {
+                throw new IllegalArgumentException("success_action_status must be 200, 201 or 204");
+            }
+            return withField("success_action_status", String.valueOf(status));
+        }
+
+        /**
+         * Add a form field with a fixed value, such as {@code Cache-Control} or {@code x-amz-meta-*}, and require it
+         * in the policy.
+         *
+         * @return this builder for method chaining
+         * @throws IllegalArgumentException if name is blank or value is null
+         */
+        public Builder withField(String name, String value) {
+            InternalUtils.checkNotBlank(name, "name");
+            InternalUtils.checkNotNull(value, "value");
+            appendCondition(conditions, name, value);
+            conditions.append(',');
+            fields.add(name);
+            fields.add(value);
+            return this;
+        }
+
+        /**
+         * Allow a form field chosen by the page, as long as its value starts with a prefix. An empty prefix allows
+         * any value.
+         *
+         * @return this builder for method chaining
+         * @throws IllegalArgumentException if name is blank or prefix is null
+         */
+        public Builder withFieldPrefix(String name, String prefix) {
+            InternalUtils.checkNotBlank(name, "name");
+            InternalUtils.checkNotNull(prefix, "prefix");
+            conditions.append("[\"starts-with\",");
+            appendJson(conditions, "$" + name);
+            conditions.append(',');
+            appendJson(conditions, prefix);
+            conditions.append("],");
+            return this;
+        }
+
+        /**
+         * @param policy the policy for forms signed for a duration from now; defaults to {@link ExpiryPolicy#EXACT}
+         * @return this builder for method chaining
+         * @throws IllegalArgumentException if policy is null
+         */
+        public Builder withExpiryPolicy(ExpiryPolicy policy) {
+            InternalUtils.checkNotNull(policy, "policy");
+            this.expiryPolicy = policy;
+            return this;
+        }
+
+        /**
+         * @param clock source of the current time; defaults to {@link Clock#systemUTC()}
+         * @return this builder for method chaining
+         * @throws IllegalArgumentException if clock is null
+         */
+        public Builder usingClock(Clock clock) {
+            InternalUtils.checkNotNull(clock, "clock");
+            this.clock = clock;
+            return this;
+        }
+
+        /**
+         * @return a new immutable policy
+         * @throws IllegalStateException if credentials have not been set
+         */
+        public S3PostPolicy build() {
+            S3Credentials snapshot = credentials != null ? credentials.getCredentials() : null;
+            if (snapshot == null || !snapshot.isComplete()) {
+                throw new IllegalStateException("AWS Account and AWS Private Key must be specified when generating POST policies.");
+            }
+            return new S3PostPolicy(this);
+        }
+    }
+}
@@ -0,0 +1,974 @@
+package com.widen.urlbuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Clock;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.crypto.Mac;
+
+/**
+ * Immutable, thread-safe factory for presigned S3 URLs.
+ * <p>
+ * {@link S3UrlBuilder} is configured per URL and mutates itself while rendering, so an instance cannot be shared.
+ * An {@code S3UrlSigner} is configured once (bucket, endpoint, bucket encoding, SSL, generation mode, credentials
+ * and signature version), resolves everything that does not depend on the key up front, and renders each URL with
+ * only per-call local state. A single instance can be shared by every thread of an application.
+ * <p>
+ * <b>Typical usage:</b>
+ * <pre>
+ * S3UrlSigner signer = S3UrlSigner.builder("my-bucket")
+ *     .inRegion("eu-west-1")
+ *     .usingSsl()
+ *     .usingCredentials(awsKey, awsSecret)
+ *     .build();
+ *
+ * signer.sign("photos/cat.jpg", 1, TimeUnit.HOURS);
+ * signer.sign("report.pdf", expireAt, S3UrlSigner.Options.NONE.withAttachmentFilename("Q1 Report.pdf"));
+ * </pre>
+ * <p>
+ * URLs are identical to those produced by an equally configured {@link S3UrlBuilder}.
+ *
+ * @see S3UrlBuilder
+ * @since 3.0.0
+ */
+public final class S3UrlSigner {
+
+    private static final Encoder QUERY_ENCODER = new QueryParameterEncoder();
+
+    private static final String DEFAULT_REGION = "us-east-1";
+
+    /** S3 allows at most 10,000 parts per multipart upload. */
+    private static final int MAX_UPLOAD_PARTS = 10_000;
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    /** Keys per parallel task in {@link #signAll}; smaller batches are signed on the calling thread. */
+    private static final int BATCH_CHUNK_SIZE = 256;
+
+    private final String bucket;
+
+    private final String hostname;
+
+    /** Scheme and authority, e.g. {@code https://bucket.s3.amazonaws.com}. */
+    private final String origin;
+
+    /** True if the bucket is the first path segment. */
+    private final boolean bucketInPath;
+
+    private final S3CredentialsProvider credentials;
+
+    private final boolean signatureV4;
+
+    private final String region;
+
+    private final Clock clock;
+
+    private final ExpiryPolicy expiryPolicy;
+
+    private final ForkJoinPool pool;
+
+    private S3UrlSigner(Builder builder) {
+        bucket = builder.bucket;
+        S3Endpoints.Endpoint endpoint = S3Endpoints.resolve(bucket, builder.endpoint, builder.endpointRegion,
+            builder.bucketEncoding, builder.dualStack, builder.accelerate);
+        hostname = endpoint.hostname;
+        bucketInPath = endpoint.bucketInPath;
+
+        origin = (builder.protocolRelative ? "//" : builder.ssl ? "https://" : "http://") + hostname;
+
+        credentials = builder.credentials;
+        signatureV4 = builder.signatureV4;
+        region = builder.region != null ? builder.region : DEFAULT_REGION;
+        clock = builder.clock;
+        expiryPolicy = builder.expiryPolicy;
+        pool = builder.pool;
+    }
+
+    /**
+     * Start configuring a signer for a bucket.
+     *
+     * @param bucket name of the bucket
+     * @return a builder with the same defaults as {@link S3UrlBuilder}
+     * @throws IllegalArgumentException if bucket is blank
+     */
+    public static Builder builder(String bucket) {
+        return new Builder(bucket);
+    }
+
+    /**
+     * @return the bucket URLs are signed for
+     */
+    public String getBucket() {
+        return bucket;
+    }
+
+    /**
+     * Presign a URL that expires at an absolute time.
+     *
+     * @param key the object key
+     * @param expireAt time the URL will expire; accurate to seconds
+     * @return the presigned URL
+     * @throws IllegalArgumentException if key is blank or expireAt is null
+     */
+    public String sign(String key, Date expireAt) {
+        return sign(key, expireAt, Options.NONE);
+    }
+
+    /**
+     * Presign a URL that expires at an absolute time, with per-URL response overrides.
+     *
+     * @param key the object key
+     * @param expireAt time the URL will expire; accurate to seconds
+     * @param options response overrides for this URL
+     * @return the presigned URL
+     * @throws IllegalArgumentException if key is blank, or expireAt or options is null
+     * @throws IllegalStateException if the credentials are incomplete, or a Signature V4 URL would expire less than
+     * 1 second or more than 7 days from now
+     */
+    public String sign(String key, Date expireAt, Options options) {
+        InternalUtils.checkNotNull(expireAt, "expireAt");
+        return render(key, options, new Expiry(Math.floorDiv(expireAt.getTime(), 1000L), clock.millis()));
+    }
+
+    /**
+     * Presign a URL that is valid for a duration from now.
+     *
+     * @param key the object key
+     * @param duration how long the URL is valid for
+     * @param unit unit of duration
+     * @return the presigned URL
+     * @throws IllegalArgumentException if key is blank or unit is null
+     */
+    public String sign(String key, long duration, TimeUnit unit) {
+        return sign(key, duration, unit, Options.NONE);
+    }
+
+    /**
+     * Presign a URL that is valid for a duration from now, with per-URL response overrides.
+     *
+     * @param key the object key
+     * @param duration how long the URL is valid for
+     * @param unit unit of duration
+     * @param options response overrides for this URL
+     * @return the presigned URL
+     * @throws IllegalArgumentException if key is blank, or unit or options is null
+     * @throws IllegalStateException if the credentials are incomplete, or a Signature V4 URL would expire less than
+     * 1 second or more than 7 days from now
+     */
+    public String sign(String key, long duration, TimeUnit unit, Options options) {
+        InternalUtils.checkNotNull(unit, "unit");
+        long now = clock.millis();
+        return render(key, options, new Expiry(expiryPolicy.expiresAt(now, unit.toMillis(duration)), now));
+    }
+
+    /**
+     * @param now signing time, in epoch milliseconds
+     * @param ttl requested duration, in milliseconds
+     * @return the expiry time under this signer's {@link ExpiryPolicy}, in epoch seconds
+     */
+    long expiresAt(long now, long ttl) {
+        return expiryPolicy.expiresAt(now, ttl);
+    }
+
+    /**
+     * Presign a URL with an expiry time that has already been computed.
+     *
+     * @param expiresAt expiry time, in epoch seconds
+     * @param now signing time, in epoch milliseconds
+     */
+    String signAt(String key, long expiresAt, long now, Options options) {
+        return render(key, options, new Expiry(expiresAt, now));
+    }
+
+    /**
+     * @return the access key ID of the credentials this signer currently signs with, or null
+     */
+    String credentialsIdentity() {
+        S3Credentials snapshot = credentials.getCredentials();
+        return snapshot != null ? snapshot.getAccessKeyId() : null;
+    }
+
+    /**
+     * Presign many keys that share an expiry, such as every image of a gallery page or every entry of a ZIP manifest.
+     *
+     * @param keys the object keys
+     * @param expireAt time the URLs will expire; accurate to seconds
+     * @return the presigned URLs, in the iteration order of {@code keys}
+     * @throws IllegalArgumentException if any key is blank, or keys or expireAt is null
+     * @see #signAll(Collection, Date, Function)
+     */
+    public List<String> signAll(Collection<String> keys, Date expireAt) {
+        return signAll(keys, expireAt, key -> Options.NONE);
+    }
+
+    /**
+     * Presign many keys that share an expiry, with per-key response overrides.
+     * <p>
+     * Everything that does not depend on the key (expiry, timestamps, credential scope, signing key) is computed
+     * once for the whole batch. Large batches are split into chunks that are signed in parallel on the
+     * {@linkplain Builder#usingPool(ForkJoinPool) configured pool}; each worker borrows its own MAC state.
+     *
+     * @param keys the object keys
+     * @param expireAt time the URLs will expire; accurate to seconds
+     * @param options function returning the response overrides of each key; may return {@link Options#NONE}
+     * @return the presigned URLs, in the iteration order of {@code keys}
+     * @throws IllegalArgumentException if any key is blank, or keys, expireAt or options is null
+     */
+    public List<String> signAll(Collection<String> keys, Date expireAt, Function<? super String, Options> options) {
+        InternalUtils.checkNotNull(keys, "keys");
+        InternalUtils.checkNotNull(expireAt, "expireAt");
+        InternalUtils.checkNotNull(options, "options");
+
+        String[] input = keys.toArray(new String[0]);
+        String[] output = new String[input.length];
+        Expiry expiry = new Expiry(Math.floorDiv(expireAt.getTime(), 1000L), clock.millis());
+
+        forEachChunk(input.length, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                output[i] = render(input[i], options.apply(input[i]), expiry);
+            }
+        });
+
+        return Collections.unmodifiableList(Arrays.asList(output));
+    }
+
+    /**
+     * Presign a stream of keys that share an expiry, with per-key response overrides.
+     *
+     * @param keys the object keys; the stream is consumed
+     * @param expireAt time the URLs will expire; accurate to seconds
+     * @param options function returning the response overrides of each key; may return {@link Options#NONE}
+     * @return the presigned URLs, in encounter order of {@code keys}
+     * @throws IllegalArgumentException if any key is blank, or keys, expireAt or options is null
+     * @see #signAll(Collection, Date, Function)
+     */
+    public List<String> signAll(Stream<String> keys, Date expireAt, Function<? super String, Options> options) {
+        InternalUtils.checkNotNull(keys, "keys");
+        return signAll(keys.collect(Collectors.toList()), expireAt, options);
+    }
+
+    /**
+     * Presign the {@code PUT} URL of every part of a multipart upload.
+     * <p>
+     * All parts share the path, {@code uploadId}, expiry and credentials, so the MAC (and, for SigV4, the canonical
+     * request hash) is computed once over the shared prefix and copied for each part, which then only hashes its
+     * part number. Large uploads are signed in parallel on the {@linkplain Builder#usingPool(ForkJoinPool) configured
+     * pool}.
+     *
+     * @param key the object key of the upload
+     * @param uploadId the id returned by {@code CreateMultipartUpload}
+     * @param partCount number of parts, from 1 to 10,000
+     * @param expireAt time the URLs will expire; accurate to seconds
+     * @return the presigned URLs; element {@code i} is for part number {@code i + 1}
+     * @throws IllegalArgumentException if key or uploadId is blank, expireAt is null, or partCount is out of range
+     * @see <a href="https://docs.aws.amazon.com/AmazonS3/latest/API/API_UploadPart.html">UploadPart</a>
+     */
+    public List<String> signUploadParts(String key, String uploadId, int partCount, Date expireAt) {
+        InternalUtils.checkNotBlank(key, "key");
+        InternalUtils.checkNotBlank(uploadId, "uploadId");
+        InternalUtils.checkNotNull(expireAt, "expireAt");
+        if (partCount < 1 || partCount > MAX_UPLOAD_PARTS) {
+            throw new IllegalArgumentException("partCount must be between 1 and " + MAX_UPLOAD_PARTS + ".");
+        }
+
+        Expiry expiry = new Expiry(Math.floorDiv(expireAt.getTime(), 1000L), clock.millis());
+        S3Key s3Key = S3Key.of(key);
+        String[] urls = new String[partCount];
+
+        StringBuilder base = new StringBuilder(origin.length() + 2 * key.length() + 64);
+        base.append(origin).append('/').append(encodedPath(s3Key)).append('?');
+
+        if (signatureV4) {
+            signUploadPartsV4(urls, base, canonicalUri(s3Key), uploadId, expiry);
+        }
+        else {
+            signUploadPartsV2(urls, base, canonicalResource(s3Key), uploadId, expiry);
+        }
+
+        return Collections.unmodifiableList(Arrays.asList(urls));
+    }
+
+    private void signUploadPartsV2(String[] urls, StringBuilder base, String canonicalResource, String uploadId, Expiry expiry) {
+        S3Credentials credentials = expiry.credentials;
+        HmacKey signingKey = credentials.signingKey();
+
+        Mac prefix;
+        HmacKey.Session session = signingKey.acquire();
+        try {
+            SigV2.appendPrefix(session, "PUT", expiry.expires, credentials.getSessionToken(), canonicalResource);
+            session.append("?partNumber=");
+            prefix = session.snapshot();
+        }
+        finally {
+            signingKey.release(session);
+        }
+
+        byte[] stringToSignSuffix = ("&uploadId=" + uploadId).getBytes(StandardCharsets.UTF_8);
+        String urlPrefix = base.append("partNumber=").toString();
+        String urlInfix = "&uploadId=" + QUERY_ENCODER.encode(uploadId) + "&Signature=";
+        StringBuilder suffix = new StringBuilder("&AWSAccessKeyId=").append(QUERY_ENCODER.encode(credentials.getAccessKeyId())).append("&Expires=").append(expiry.expires);
+        if (credentials.getSessionToken() != null) {
+            suffix.append("&x-amz-security-token=").append(QUERY_ENCODER.encode(credentials.getSessionToken()));
+        }
+        String urlSuffix = suffix.toString();
+
+        forEachChunk(urls.length, (from, to) -> {
+            byte[] digits = new byte[5];
+            for (int i = from; i < to; i++) {
+                int partNumber = i + 1;
+                int length = putDigits(digits, partNumber);
+
+                Mac mac = copy(prefix);
+                mac.update(digits, 0, length);
+                byte[] signature = mac.doFinal(stringToSignSuffix);
+
+                StringBuilder url = new StringBuilder(urlPrefix.length() + urlInfix.length() + urlSuffix.length() + 48);
+                url.append(urlPrefix).append(partNumber).append(urlInfix);
+                PercentCodec.appendBase64Escaped(url, signature, signature.length);
+                urls[i] = url.append(urlSuffix).toString();
+            }
+        });
+    }
+
+    private void signUploadPartsV4(String[] urls, StringBuilder base, String canonicalUri, String uploadId, Expiry expiry) {
+        // X-Amz-* sorts before partNumber, which sorts before uploadId
+        StringBuilder authQuery = new StringBuilder(256);
+        for (int i = 0; i < expiry.authPairs.length; i += 2) {
+            authQuery.append(expiry.authPairs[i]).append('=').append(expiry.authPairs[i + 1]).append('&');
+        }
+        authQuery.append("partNumber=");
+
+        StringBuilder canonicalRequest = new StringBuilder(512);
+        SigV4.appendCanonicalPrefix(canonicalRequest, "PUT", canonicalUri);
+        canonicalRequest.append(authQuery);
+        MessageDigest canonicalPrefix = SigV4.sha256();
+        canonicalPrefix.update(canonicalRequest.toString().getBytes(StandardCharsets.UTF_8));
+
+        String encodedUploadId = QUERY_ENCODER.encode(uploadId);
+        canonicalRequest.setLength(0);
+        canonicalRequest.append("&uploadId=").append(encodedUploadId);
+        SigV4.appendCanonicalSuffix(canonicalRequest, hostname);
+        byte[] canonicalSuffix = canonicalRequest.toString().getBytes(StandardCharsets.UTF_8);
+
+        Mac prefix;
+        HmacKey.Session session = expiry.v4Key.acquire();
+        try {
+            SigV4.appendStringToSignPrefix(session, expiry.amzDate, expiry.scope);
+            prefix = session.snapshot();
+        }
+        finally {
+            expiry.v4Key.release(session);
+        }
+
+        String urlPrefix = base.append(authQuery).toString();
+        String urlSuffix = "&uploadId=" + encodedUploadId + "&X-Amz-Signature=";
+
+        forEachChunk(urls.length, (from, to) -> {
+            byte[] digits = new byte[5];
+            byte[] hex = new byte[64];
+            for (int i = from; i < to; i++) {
+                int partNumber = i + 1;
+                int length = putDigits(digits, partNumber);
+
+                MessageDigest digest = copy(canonicalPrefix);
+                digest.update(digits, 0, length);
+                putHex(hex, digest.digest(canonicalSuffix));
+
+                Mac mac = copy(prefix);
+                byte[] signature = mac.doFinal(hex);
+
+                StringBuilder url = new StringBuilder(urlPrefix.length() + urlSuffix.length() + 72);
+                url.append(urlPrefix).append(partNumber).append(urlSuffix);
+                SigV4.appendHex(url, signature);
+                urls[i] = url.toString();
+            }
+        });
+    }
+
+    /**
+     * Run {@code task} over {@code [0, count)}, split into chunks that the calling thread and the pool sign in
+     * parallel if there is more than one chunk of work. Waits for every chunk and rethrows the first failure.
+     */
+    private void forEachChunk(int count, ParallelBatch.Range task) {
+        new ParallelBatch(count, BATCH_CHUNK_SIZE, task).run(pool, pool.getParallelism());
+    }
+
+    private static int putDigits(byte[] buffer, int value) {
+        int length = value < 10 ? 1 : value < 100 ? 2 : value < 1000 ? 3 : value < 10000 ? 4 : 5;
+        for (int i = length - 1; i >= 0; i--) {
+            buffer[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        return length;
+    }
+
+    private static void putHex(byte[] buffer, byte[] bytes) {
+        for (int i = 0; i < bytes.length; i++) {
+            buffer[2 * i] = (byte) HEX_DIGITS[(bytes[i] >> 4) & 0x0F];
+            buffer[2 * i + 1] = (byte) HEX_DIGITS[bytes[i] & 0x0F];
+        }
+    }
+
+    private static Mac copy(Mac mac) {
+        try {
+            return (Mac) mac.clone();
+        }
+        catch (CloneNotSupportedException e) {
+            throw new IllegalStateException("MAC state cannot be copied: " + e.getMessage(), e);
+        }
+    }
+
+    private static MessageDigest copy(MessageDigest digest) {
+        try {
+            return (MessageDigest) digest.clone();
+        }
+        catch (CloneNotSupportedException e) {
+            throw new IllegalStateException("Digest state cannot be copied: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @return the URL path of a key, without a leading slash
+     */
+    private String encodedPath(S3Key key) {
+        return bucketInPath ? key.encodedPathInBucket(bucket) : key.encodedPath;
+    }
+
+    private String canonicalUri(S3Key key) {
+        return bucketInPath ? key.canonicalUriInBucket(bucket) : key.canonicalUri;
+    }
+
+    /**
+     * @return the SigV2 canonical resource, which names the bucket whether or not it is in the path
+     */
+    private String canonicalResource(S3Key key) {
+        return "/" + bucket + "/" + key.path;
+    }
+
+    private String render(String key, Options options, Expiry expiry) {
+        InternalUtils.checkNotBlank(key, "key");
+        InternalUtils.checkNotNull(options, "options");
+
+        S3Key s3Key = S3Key.of(key);
+
+        // Unencoded response override pairs
+        String[] overrides = new String[4];
+        int overrideSize = 0;
+        if (options.contentDisposition != null) {
+            overrides[overrideSize++] = "response-content-disposition";
+            overrides[overrideSize++] = options.contentDisposition;
+        }
+        if (options.contentType != null) {
+            overrides[overrideSize++] = "response-content-type";
+            overrides[overrideSize++] = options.contentType;
+        }
+
+        StringBuilder url = new StringBuilder(origin.length() + 2 * key.length() + 256);
+        url.append(origin).append('/').append(encodedPath(s3Key)).append('?');
+
+        if (signatureV4) {
+            appendV4Query(url, options.httpMethod, canonicalUri(s3Key), overrides, overrideSize, expiry);
+        }
+        else {
+            appendV2Query(url, options.httpMethod, canonicalResource(s3Key), overrides, overrideSize, expiry);
+        }
+
+        return url.toString();
+    }
+
+    private void appendV2Query(StringBuilder url, String method, String canonicalResource, String[] overrides, int size, Expiry expiry) {
+        for (int i = 0; i < size; i += 2) {
+            url.append(QUERY_ENCODER.encode(overrides[i])).append('=').append(QUERY_ENCODER.encode(overrides[i + 1])).append('&');
+        }
+
+        S3Credentials credentials = expiry.credentials;
+
+        url.append("Signature=");
+        SigV2.appendSignature(url, credentials.signingKey(), method, expiry.expires, credentials.getSessionToken(), canonicalResource, overrides, size);
+        url.append("&AWSAccessKeyId=").append(QUERY_ENCODER.encode(credentials.getAccessKeyId()));
+        url.append("&Expires=").append(expiry.expires);
+        if (credentials.getSessionToken() != null) {
+            url.append("&x-amz-security-token=").append(QUERY_ENCODER.encode(credentials.getSessionToken()));
+        }
+    }
+
+    private void appendV4Query(StringBuilder url, String method, String canonicalUri, String[] overrides, int overrideSize, Expiry expiry) {
+        String[] query = Arrays.copyOf(expiry.authPairs, overrideSize + expiry.authPairs.length);
+        int size = expiry.authPairs.length;
+        for (int i = 0; i < overrideSize; i += 2) {
+            size = SigV4.addEncoded(query, size, overrides[i], overrides[i + 1]);
+        }
+        SigV4.sortPairs(query, size);
+
+        for (int i = 0; i < size; i += 2) {
+            url.append(query[i]).append('=').append(query[i + 1]).append('&');
+        }
+
+        url.append("X-Amz-Signature=");
+        SigV4.appendSignature(url, expiry.v4Key, method, expiry.amzDate, expiry.scope, canonicalUri, query, size, hostname);
+    }
+
+    /**
+     * The parts of a signature that depend only on the expiry, the signing time and the credentials, shared by a
+     * whole batch. The credentials snapshot is taken once, so a batch is signed consistently across a rotation.
+     */
+    private final class Expiry {
+
+        final S3Credentials credentials;
+
+        /** V2 {@code Expires}: absolute epoch seconds. V4 {@code X-Amz-Expires}: seconds from signing. */
+        final long expires;
+
+        final String amzDate;
+
+        final String scope;
+
+        final HmacKey v4Key;
+
+        /** Encoded {@code X-Amz-*} pairs, except the signature. */
+        final String[] authPairs;
+
+        /**
+         * @param expiresAt expiry time, in epoch seconds
+         * @param now signing time, in epoch milliseconds
+         */
+        Expiry(long expiresAt, long now) {
+            credentials = S3UrlSigner.this.credentials.getCredentials();
+            if (credentials == null || !credentials.isComplete()) {
+                throw new IllegalStateException("AWS Account and AWS Private Key must be specified when generating signed URLs.");
+            }
+
+            if (!signatureV4) {
+                expires = expiresAt;
+                amzDate = null;
+                scope = null;
+                v4Key = null;
+                authPairs = null;
+                return;
+            }
+
+            long signedAt = expiryPolicy.signedAt(now);
+            expires = expiresAt - signedAt;
+
+            if (expires < 1 || expires > SigV4.MAX_EXPIRES_SECONDS) {
+                throw new IllegalStateException("Signature V4 URLs must expire between 1 second and 7 days from now.");
+            }
+
+            amzDate = SigV4.amzDate(signedAt);
+            scope = SigV4.scope(amzDate, region, "s3");
+            v4Key = SigV4.signingKey(credentials, signedAt, region, "s3");
+
+            String[] pairs = new String[12];
+            int size = SigV4.addAuthParameters(pairs, 0, credentials.getAccessKeyId(), scope, amzDate, expires, credentials.getSessionToken());
+            authPairs = Arrays.copyOf(pairs, size);
+        }
+    }
+
+    /**
+     * Immutable per-URL response overrides. Start from {@link #NONE} and derive copies with the {@code with} methods;
+     * instances can be shared and reused across threads.
+     */
+    public static final class Options {
+
+        /** No response overrides. */
+        public static final Options NONE = new Options("GET", null, null, null);
+
+        private final String httpMethod;
+
+        private final String attachmentFilename;
+
+        private final String contentDisposition;
+
+        private final String contentType;
+
+        private Options(String httpMethod, String attachmentFilename, String contentDisposition, String contentType) {
+            this.httpMethod = httpMethod;
+            this.attachmentFilename = attachmentFilename;
+            this.contentDisposition = contentDisposition;
+            this.contentType = contentType;
+        }
+
+        /**
+         * Set the HTTP verb the URL is for. Defaults to {@code GET}.
+         *
+         * @param method HTTP verb, e.g. {@code GET}, {@code PUT}, {@code HEAD} or {@code DELETE}
+         * @return a copy of these options with the verb set
+         * @throws IllegalArgumentException if method is blank
+         */
+        public Options withHttpMethod(String method) {
+            InternalUtils.checkNotBlank(method, "method");
+            return new Options(method.toUpperCase(Locale.ROOT), attachmentFilename, contentDisposition, contentType);
+        }
+
+        /**
+         * Hint for "attachment" filename. Informs S3 to add "Content-Disposition; attachment" HTTP header.
+         *
+         * @param filename the filename for the attachment, or blank for none
+         * @return a copy of these options with the attachment filename set
+         */
+        public Options withAttachmentFilename(String filename) {
+            if (StringUtilsInternal.isBlank(filename)) {
+                return new Options(httpMethod, null, null, contentType);
+            }
+            return new Options(httpMethod, filename, HttpUtils.createContentDispositionHeader("attachment", filename), contentType);
+        }
+
+        /**
+         * Override the Content-Type S3 responds with.
+         *
+         * @param contentType the media type, or blank for none
+         * @return a copy of these options with the content type set
+         */
+        public Options withContentType(String contentType) {
+            return new Options(httpMethod, attachmentFilename, contentDisposition, StringUtilsInternal.isBlank(contentType) ? null : contentType);
+        }
+
+        /**
+         * @return the HTTP verb the URL is for
+         */
+        public String getHttpMethod() {
+            return httpMethod;
+        }
+
+        /**
+         * @return the attachment filename, or null
+         */
+        public String getAttachmentFilename() {
+            return attachmentFilename;
+        }
+
+        /**
+         * @return the content type override, or null
+         */
+        public String getContentType() {
+            return contentType;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Options)) {
+                return false;
+            }
+            Options other = (Options) o;
+            return httpMethod.equals(other.httpMethod)
+                && (attachmentFilename == null ? other.attachmentFilename == null : attachmentFilename.equals(other.attachmentFilename))
+                && (contentType == null ? other.contentType == null : contentType.equals(other.contentType));
+        }
+
+        @Override
+        public int hashCode() {
+            int result = httpMethod.hashCode();
+            result = 31 * result + (attachmentFilename != null ? attachmentFilename.hashCode() : 0);
+            result = 31 * result + (contentType != null ? contentType.hashCode() : 0);
+            return result;
+        }
+    }
+
+    /**
+     * Configuration for an {@link S3UrlSigner}. Defaults match {@link S3UrlBuilder}: bucket in hostname,
+     * {@code s3.amazonaws.com}, plain HTTP, fully qualified URLs and Signature Version 2.
+     */
+    public static final class Builder {
+
+        private String bucket;
+
+        private String endpoint;
+
+        private String endpointRegion;
+
+        private boolean dualStack;
+
+        private boolean accelerate;
+
+        private S3UrlBuilder.BucketEncoding bucketEncoding = S3UrlBuilder.BucketEncoding.DNS;
+
+        private boolean ssl;
+
+        private boolean protocolRelative;
+
+        private S3CredentialsProvider credentials;
+
+        private boolean signatureV4;
+
+        private String region;
+
+        private Clock clock = Clock.systemUTC();
+
+        private ExpiryPolicy expiryPolicy = ExpiryPolicy.EXACT;
+
+        private ForkJoinPool pool = ForkJoinPool.commonPool();
+
+        private Builder(String bucket) {
+            withBucket(bucket);
+        }
+
+        /**
+         * @param bucket name of the bucket
+         * @return this builder for method chaining
+         * @throws IllegalArgumentException if bucket is blank
+         */
+        public Builder withBucket(String bucket) {
+            InternalUtils.checkNotBlank(bucket, "bucket");
+            this.bucket = bucket;
+            return this;
+        }
+
+        /**
+         * Set a custom endpoint for S3 API compatible services.
+         *
+         * @param endpoint fully-qualified DNS hostname of the S3 service
+         * @return this builder for method chaining
+         * @throws IllegalArgumentException if endpoint is blank
+         * @see S3UrlBuilder#withEndpoint(String)
+         */
+        public Builder withEndpoint(String endpoint) {
+            InternalUtils.checkNotBlank(endpoint, "endpoint");
+            this.endpoint = endpoint;
+            return this;
+        }
+
+        /**
+         * Set endpoint and signing region based on the AWS Region of the bucket.
+         *
+         * @param region the AWS region, e.g. {@code eu-west-1}
+         * @return this builder for method chaining
+         * @throws IllegalArgumentException if region is blank
+         * @see S3UrlBuilder#inRegion(String)
+         */
+        public Builder inRegion(String region) {
+            InternalUtils.checkNotBlank(region, "region");
+            this.endpoint = null;
+            this.endpointRegion = region;
+            this.region = region;
+            return this;
+        }
+
+        /**
+         * Use the dual-stack (IPv4 and IPv6) endpoint of the region.
+         *
+         * @return this builder for method chaining
+         * @see S3UrlBuilder#usingDualStack()
+         */
+        public Builder usingDualStack() {
+            dualStack = true;
+            return this;
+        }
+
+        /**
+         * Use the Transfer Acceleration endpoint.
+         *
+         * @return this builder for method chaining
+         * @see S3UrlBuilder#usingTransferAcceleration()
+         */
+        public Builder usingTransferAcceleration() {
+            accelerate = true;
+            return this;
+        }
+
+        /**
+         * Use the bucket name as hostname.
+         *
+         * @return this builder for method chaining
+         * @see S3UrlBuilder#usingBucketVirtualHost()
+         */
+        public Builder usingBucketVirtualHost() {
+            bucketEncoding = S3UrlBuilder.BucketEncoding.VIRTUAL_DNS;
+            return this;
+        }
+
+        /**
+         * Encode the bucket into the path.
+         *
+         * @return this builder for method chaining
+         * @see S3UrlBuilder#usingBucketInPath()
+         */
+        public Builder usingBucketInPath() {
+            bucketEncoding = S3UrlBuilder.BucketEncoding.PATH;
+            return this;
+        }
+
+        /**
+         * Prefix the bucket to the endpoint hostname. This is the default.
+         *
+         * @return this builder for method chaining
+         * @see S3UrlBuilder#usingBucketInHostname()
+         */
+        public Builder usingBucketInHostname() {
+            bucketEncoding = S3UrlBuilder.BucketEncoding.DNS;
+            return this;
+        }
+
+        /**
+         * Use the "https" scheme.
+         *
+         * @return this builder for method chaining
+         */
+        public Builder usingSsl() {
+            return usingSsl(true);
+        }
+
+        /**
+         * @param useSsl true to use "https" or false to use "http"
+         * @return this builder for method chaining
+         */
+        public Builder usingSsl(boolean useSsl) {
+            ssl = useSsl;
+            return this;
+        }
+
+        /**
+         * Generate protocol relative URLs; e.g. <code>"//bucket.s3.amazonaws.com/key"</code>
+         *
+         * @return this builder for method chaining
+         */
+        public Builder modeProtocolRelative() {
+            protocolRelative = true;
+            return this;
+        }
+
+        /**
+         * Generate fully qualified URLs. This is the default.
+         *
+         * @return this builder for method chaining
+         */
+        public Builder modeFullyQualified() {
+            protocolRelative = false;
+            return this;
+        }
+
+        /**
+         * @param awsKey AWS access key id
+         * @param awsPrivateKey AWS secret access key
+         * @return this builder for method chaining
+         * @throws IllegalArgumentException if awsKey or awsPrivateKey is null
+         */
+        public Builder usingCredentials(String awsKey, String awsPrivateKey) {
+            InternalUtils.checkNotNull(awsKey, "awsKey");
+            InternalUtils.checkNotNull(awsPrivateKey, "awsPrivateKey");
+            this.credentials = new S3Credentials(awsKey, awsPrivateKey);
+            return this;
+        }
+
+        /**
+         * @param awsKey AWS access key id
+         * @param awsPrivateKey AWS secret access key
+         * @param awsSessionToken STS session token
+         * @return this builder for method chaining
+         * @throws IllegalArgumentException if any argument is null
+         */
+        public Builder usingCredentials(String awsKey, String awsPrivateKey, String awsSessionToken) {
+            InternalUtils.checkNotNull(awsKey, "awsKey");
+            InternalUtils.checkNotNull(awsPrivateKey, "awsPrivateKey");
+            InternalUtils.checkNotNull(awsSessionToken, "awsSessionToken");
+            this.credentials = new S3Credentials(awsKey, awsPrivateKey, awsSessionToken);
+            return this;
+        }
+
+        /**
+         * Sign with credentials that may change over the signer's lifetime, such as rotating STS session
+         * credentials. Each URL, or each batch of {@link S3UrlSigner#signAll}, is signed with the provider's
+         * snapshot at the time of the call.
+         *
+         * @param credentials the source of credentials
+         * @return this builder for method chaining
+         * @throws IllegalArgumentException if credentials is null
+         * @see RefreshingS3CredentialsProvider
+         */
+        public Builder usingCredentials(S3CredentialsProvider credentials) {
+            InternalUtils.checkNotNull(credentials, "credentials");
+            this.credentials = credentials;
+            return this;
+        }
+
+        /**
+         * Sign with AWS Signature Version 4, in the region set by {@link #inRegion(String)} or {@code us-east-1}.
+         *
+         * @return this builder for method chaining
+         * @see S3UrlBuilder#usingSignatureV4()
+         */
+        public Builder usingSignatureV4() {
+            signatureV4 = true;
+            return this;
+        }
+
+        /**
+         * Sign with AWS Signature Version 4 in an explicit signing region.
+         *
+         * @param region the region in the credential scope
+         * @return this builder for method chaining
+         * @throws IllegalArgumentException if region is blank
+         * @see S3UrlBuilder#usingSignatureV4(String)
+         */
+        public Builder usingSignatureV4(String region) {
+            InternalUtils.checkNotBlank(region, "region");
+            this.region = region;
+            signatureV4 = true;
+            return this;
+        }
+
+        /**
+         * Set the pool that signs large batches in {@link S3UrlSigner#signAll}. Defaults to
+         * {@link ForkJoinPool#commonPool()}. A batch runs on at most as many threads as the pool's parallelism,
+         * including the calling thread.
+         *
+         * @param pool the pool to submit batch workers to
+         * @return this builder for method chaining
+         * @throws IllegalArgumentException if pool is null
+         */
+        public Builder usingPool(ForkJoinPool pool) {
+            InternalUtils.checkNotNull(pool, "pool");
+            this.pool = pool;
+            return this;
+        }
+
+        /**
+         * @param policy the policy for URLs signed for a duration from now; defaults to {@link ExpiryPolicy#EXACT}
+         * @return this builder for method chaining
+         * @throws IllegalArgumentException if policy is null
+         * @see S3UrlBuilder#withExpiryPolicy(ExpiryPolicy)
+         */
+        public Builder withExpiryPolicy(ExpiryPolicy policy) {
+            InternalUtils.checkNotNull(policy, "policy");
+            this.expiryPolicy = policy;
+            return this;
+        }
+
+        /**
+         * @param clock source of the current time; defaults to {@link Clock#systemUTC()}
+         * @return this builder for method chaining
+         * @throws IllegalArgumentException if clock is null
+         * @see S3UrlBuilder#usingClock(Clock)
+         */
+        public Builder usingClock(Clock clock) {
+            InternalUtils.checkNotNull(clock, "clock");
+            this.clock = clock;
+            return this;
+        }
+
+        /**
+         * @return a new immutable signer
+         * @throws IllegalStateException if credentials have not been set
+         */
+        public S3UrlSigner build() {
+            S3Credentials snapshot = credentials != null ? credentials.getCredentials() : null;
+            if (snapshot == null || !snapshot.isComplete()) {
+                throw new IllegalStateException("AWS Account and AWS Private Key must be specified when generating signed URLs.");
+            }
+            return new S3UrlSigner(this);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.widen.urlbuilder;
+
+import java.security.MessageDigest;
+
+/**
+ * AWS Signature Version 2 query string authentication for S3, shared by the S3 URL builders.
+ *
+ * @see <a href="https://docs.aws.amazon.com/AmazonS3/latest/userguide/RESTAuthentication.html">Signing and authenticating REST requests</a>
+ */
+final class SigV2 {
+
+    /** Room for an HmacSHA1 signature: 28 Base64 characters, a few of them percent-escaped. */
+    static final int SIGNATURE_LENGTH = 36;
+
+    private SigV2() {
+    }
+
+    /**
+     * Stream the string-to-sign of a presigned request into a pooled MAC and append the Base64 signature to
+     * {@code out}, already percent-escaped for use as a query parameter value.
+     *
+     * @param method the HTTP verb the URL is for, e.g. {@code GET} or {@code PUT}
+     * @param canonicalResource {@code /bucket/key}, unencoded
+     * @param pairs unencoded sub-resource key/value pairs, in the order they appear in the URL
+     * @param size number of used entries in {@code pairs} (twice the number of pairs)
+     */
+    static void appendSignature(StringBuilder out, HmacKey key, String method, long expires, String sessionToken,
+                                String canonicalResource, String[] pairs, int size) {
+        HmacKey.Session session = key.acquire();
+        try {
+            byte[] mac = sign(session, method, expires, sessionToken, canonicalResource, pairs, size);
+            PercentCodec.appendBase64Escaped(out, mac, mac.length);
+        }
+        finally {
+            key.release(session);
+        }
+    }
+
+    /**
+     * Recompute the signature of a presigned request and compare it to {@code signature} in constant time.
+     *
+     * @param signature the decoded signature taken from the URL
+     * @see #appendSignature(StringBuilder, HmacKey, String, long, String, String, String[], int)
+     */
+    static boolean verify(byte[] signature, HmacKey key, String method, long expires, String sessionToken,
+                          String canonicalResource, String[] pairs, int size) {
+        HmacKey.Session session = key.acquire();
+        try {
+            return MessageDigest.isEqual(signature, sign(session, method, expires, sessionToken, canonicalResource, pairs, size));
+        }
+        finally {
+            key.release(session);
+        }
+    }
+
+    private static byte[] sign(HmacKey.Session session, String method, long expires, String sessionToken,
+                               String canonicalResource, String[] pairs, int size) {
+        appendPrefix(session, method, expires, sessionToken, canonicalResource);
+
+        for (int i = 0; i < size; i += 2) {
+            session.append(i == 0 ? '?' : '&').append(pairs[i]).append('=').append(pairs[i + 1]);
+        }
+
+        return session.finish();
+    }
+
+    /**
+     * Append the string-to-sign up to and including the canonical resource, before any sub-resources.
+     */
+    static void appendPrefix(HmacKey.Session session, String method, long expires, String sessionToken,
+                             String canonicalResource) {
+        session.append(method).append('\n'); //http verb
+        session.append('\n'); //content md5
+        session.append('\n'); //content type
+        session.append(expires).append('\n');
+        if (sessionToken != null) {
+            session.append("x-amz-security-token:").append(sessionToken).append('\n');
+        }
+        session.append(canonicalResource);
+    }
+}
@@ -0,0 +1,304 @@
+package com.widen.urlbuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * AWS Signature Version 4 primitives shared by the S3 presigners.
+ * <p>
+ * Deriving a SigV4 signing key takes four chained HMACs over the secret, date, region and service. The derived key
+ * only changes when one of those does, so it is cached per region on the {@link S3Credentials} snapshot that owns
+ * the secret and re-derived when the UTC date rolls over at midnight. The cached key is an {@link HmacKey}, so signing with it reuses pre-initialized MAC state.
+ *
+ * @see <a href="https://docs.aws.amazon.com/AmazonS3/latest/API/sigv4-query-string-auth.html">Authenticating Requests: Using Query Parameters</a>
+ */
+final class SigV4 {
+
+    static final String ALGORITHM = "AWS4-HMAC-SHA256";
+
+    static final String UNSIGNED_PAYLOAD = "UNSIGNED-PAYLOAD";
+
+    static final String SCOPE_TERMINATOR = "aws4_request";
+
+    /** SigV4 presigned URLs are valid for at most seven days. */
+    static final long MAX_EXPIRES_SECONDS = 7 * 24 * 60 * 60;
+
+    private static final long SECONDS_PER_DAY = 24 * 60 * 60;
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private static final DateTimeFormatter AMZ_DATE = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss'Z'").withZone(ZoneOffset.UTC);
+
+    /** Unreserved characters only, which is exactly the AWS {@code UriEncode()} rule. */
+    private static final Encoder URI_ENCODER = new QueryParameterEncoder();
+
+    private static final MessageDigest SHA256 = newSha256();
+
+    private SigV4() {
+    }
+
+    /**
+     * Get the signing key for a credentials snapshot on the UTC day containing {@code epochSecond}.
+     */
+    static HmacKey signingKey(S3Credentials credentials, long epochSecond, String region, String service) {
+        return credentials.sigV4Keys().get(epochDay(epochSecond), region, service);
+    }
+
+    static long epochDay(long epochSecond) {
+        return Math.floorDiv(epochSecond, SECONDS_PER_DAY);
+    }
+
+    /**
+     * @return the ISO 8601 basic timestamp used by {@code X-Amz-Date}, e.g. {@code 20130524T000000Z}
+     */
+    static String amzDate(long epochSecond) {
+        return AMZ_DATE.format(Instant.ofEpochSecond(epochSecond));
+    }
+
+    /**
+     * @return a fresh SHA-256 digest, cloned from a prototype to skip the provider lookup
+     */
+    static MessageDigest sha256() {
+        try {
+            return (MessageDigest) SHA256.clone();
+        }
+        catch (CloneNotSupportedException e) {
+            return newSha256();
+        }
+    }
+
+    /**
+     * @return the credential scope, e.g. {@code 20130524/us-east-1/s3/aws4_request}
+     */
+    static String scope(String amzDate, String region, String service) {
+        return amzDate.substring(0, 8) + "/" + region + "/" + service + "/" + SCOPE_TERMINATOR;
+    }
+
+    /**
+     * Add the {@code X-Amz-*} query parameters of a presigned URL, except the signature itself.
+     *
+     * @return the new size of {@code pairs}
+     */
+    static int addAuthParameters(String[] pairs, int size, String accessKey, String scope, String amzDate,
+                                 long expires, String sessionToken) {
+        size = addEncoded(pairs, size, "X-Amz-Algorithm", ALGORITHM);
+        size = addEncoded(pairs, size, "X-Amz-Credential", accessKey + "/" + scope);
+        size = addEncoded(pairs, size, "X-Amz-Date", amzDate);
+        size = addEncoded(pairs, size, "X-Amz-Expires", String.valueOf(expires));
+        if (sessionToken != null) {
+            size = addEncoded(pairs, size, "X-Amz-Security-Token", sessionToken);
+        }
+        return addEncoded(pairs, size, "X-Amz-SignedHeaders", "host");
+    }
+
+    /**
+     * Add a key/value pair, encoded with the AWS {@code UriEncode()} rule.
+     *
+     * @return the new size of {@code pairs}
+     */
+    static int addEncoded(String[] pairs, int size, String key, String value) {
+        pairs[size] = URI_ENCODER.encode(key);
+        pairs[size + 1] = URI_ENCODER.encode(value);
+        return size + 2;
+    }
+
+    /**
+     * Insertion sort of key/value pairs by key, then value. The handful of signed parameters makes this faster
+     * than allocating a comparator and a list.
+     */
+    static void sortPairs(String[] pairs, int size) {
+        for (int i = 2; i < size; i += 2) {
+            String key = pairs[i];
+            String value = pairs[i + 1];
+            int j = i - 2;
+
+            while (j >= 0) {
+                int cmp = pairs[j].compareTo(key);
+                if (cmp < 0 || (cmp == 0 && pairs[j + 1].compareTo(value) <= 0)) {
+                    break;
+                }
+                pairs[j + 2] = pairs[j];
+                pairs[j + 3] = pairs[j + 1];
+                j -= 2;
+            }
+
+            pairs[j + 2] = key;
+            pairs[j + 3] = value;
+        }
+    }
+
+    /**
+     * Build the canonical request of a presigned request, hash it, and append the hex signature to {@code out}.
+     *
+     * @param key the signing key from {@link #signingKey(S3Credentials, long, String, String)}
+     * @param method the HTTP verb the URL is for, e.g. {@code GET} or {@code PUT}
+     * @param canonicalUri the encoded canonical URI, including the bucket for path-style URLs, e.g.
+     *                     {@link S3Key#canonicalUri} or {@link S3Key#canonicalUriInBucket(String)}
+     * @param pairs encoded query pairs sorted with {@link #sortPairs(String[], int)}
+     */
+    static void appendSignature(StringBuilder out, HmacKey key, String method, String amzDate, String scope,
+                                String canonicalUri, String[] pairs, int size, String host) {
+        StringBuilder canonicalRequest = new StringBuilder(256);
+        appendCanonicalPrefix(canonicalRequest, method, canonicalUri);
+        appendSignature(out, key, amzDate, scope, canonicalRequest, pairs, size, host);
+    }
+
+    private static void appendSignature(StringBuilder out, HmacKey key, String amzDate, String scope,
+                                        StringBuilder canonicalRequest, String[] pairs, int size, String host) {
+        for (int i = 0; i < size; i += 2) {
+            if (i > 0) {
+                canonicalRequest.append('&');
+            }
+            canonicalRequest.append(pairs[i]).append('=').append(pairs[i + 1]);
+        }
+        appendCanonicalSuffix(canonicalRequest, host);
+
+        byte[] canonicalHash = sha256().digest(canonicalRequest.toString().getBytes(StandardCharsets.UTF_8));
+
+        HmacKey.Session session = key.acquire();
+        try {
+            appendStringToSignPrefix(session, amzDate, scope);
+
+            canonicalRequest.setLength(0);
+            appendHex(canonicalRequest, canonicalHash);
+            session.append(canonicalRequest);
+
+            appendHex(out, session.finish());
+        }
+        finally {
+            key.release(session);
+        }
+    }
+
+    /**
+     * Append the HTTP verb and canonical URI lines of a canonical request, up to the canonical query.
+     */
+    static void appendCanonicalPrefix(StringBuilder canonicalRequest, String method, String canonicalUri) {
+        canonicalRequest.append(method).append('\n').append(canonicalUri).append('\n');
+    }
+
+    /**
+     * Append one '/'-prefixed segment of a canonical URI.
+     */
+    static void appendCanonicalSegment(StringBuilder canonicalUri, String segment) {
+        canonicalUri.append('/').append(URI_ENCODER.encode(segment));
+    }
+
+    /**
+     * Append the canonical headers, signed headers and payload lines that follow the canonical query.
+     */
+    static void appendCanonicalSuffix(StringBuilder canonicalRequest, String host) {
+        canonicalRequest.append("\nhost:").append(host).append("\n\nhost\n").append(UNSIGNED_PAYLOAD);
+    }
+
+    /**
+     * Append the first three lines of the string-to-sign, which precede the canonical request hash.
+     */
+    static void appendStringToSignPrefix(HmacKey.Session session, String amzDate, String scope) {
+        session.append(ALGORITHM).append('\n');
+        session.append(amzDate).append('\n');
+        session.append(scope).append('\n');
+    }
+
+    static void appendHex(StringBuilder out, byte[] bytes) {
+        for (byte b : bytes) {
+            out.append(HEX_DIGITS[(b >> 4) & 0x0F]);
+            out.append(HEX_DIGITS[b & 0x0F]);
+        }
+    }
+
+    private static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * The derived keys of one secret, one per region. A region's key is replaced when the day or service changes.
+     */
+    static final class SigningKeys {
+
+        private final byte[] secret;
+
+        private final ConcurrentMap<String, Scoped> byRegion = new ConcurrentHashMap<>();
+
+        SigningKeys(String secret) {
+            this.secret = ("AWS4" + secret).getBytes(StandardCharsets.UTF_8);
+        }
+
+        HmacKey get(long epochDay, String region, String service) {
+            Scoped scoped = byRegion.get(region);
+
+            if (scoped == null || scoped.epochDay != epochDay || !scoped.service.equals(service)) {
+                String dateStamp = amzDate(epochDay * SECONDS_PER_DAY).substring(0, 8);
+
+                byte[] key = hmac(secret, dateStamp);
+                key = hmac(key, region);
+                key = hmac(key, service);
+                key = hmac(key, SCOPE_TERMINATOR);
+
+                scoped = new Scoped(epochDay, service, new HmacKey("HmacSHA256", key));
+                byRegion.put(region, scoped);
+            }
+
+            return scoped.key;
+        }
+
+        /**
+         * Derive the keys of every region and service {@code used} holds a key for, for another day.
+         */
+        void deriveLike(SigningKeys used, long epochDay) {
+            for (Map.Entry<String, Scoped> region : used.byRegion.entrySet()) {
+                get(epochDay, region.getKey(), region.getValue().service);
+            }
+        }
+
+        /**
+         * @return true if the key of a region has been derived for a day and service
+         */
+        boolean has(long epochDay, String region, String service) {
+            Scoped scoped = byRegion.get(region);
+            return scoped != null && scoped.epochDay == epochDay && scoped.service.equals(service);
+        }
+
+        private static byte[] hmac(byte[] key, String data) {
+            try {
+                Mac mac = Mac.getInstance("HmacSHA256");
+                mac.init(new SecretKeySpec(key, "HmacSHA256"));
+                return mac.doFinal(data.getBytes(StandardCharsets.UTF_8));
+            }
+            catch (GeneralSecurityException e) {
+                throw new IllegalStateException("Cannot derive signing key: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    private static final class Scoped {
+
+        final long epochDay;
+
+        final String service;
+
+        final HmacKey key;
+
+        Scoped(long epochDay, String service, HmacKey key) {
+            this.epochDay = epochDay;
+            this.service = service;
+            this.key = key;
+        }
+    }
+}
@@ -0,0 +1,530 @@
+package com.widen.urlbuilder;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Reuses signed URLs until they get close to their expiry.
+ * <p>
+ * Entries are keyed by every input that affects the signature: the signer (bucket, endpoint and signature settings)
+ * or CloudFront distribution, the object key, the response overrides, the identity of the signing credentials and
+ * the requested lifetime. Credential rotations and configuration changes therefore never serve a stale URL. The
+ * expiry of each URL is decided by the signer's {@link ExpiryPolicy}, so an aligned policy lets the cache, and the
+ * browsers and CDNs behind it, share one URL per window.
+ * <p>
+ * Once an entry has used {@linkplain Builder#refreshAfter(double) a fraction} of its requested lifetime it is still
+ * served, and re-signed once in the background on the configured executor. Past {@linkplain Builder#evictAfter(double)
+ * a larger fraction} it is no longer served and is re-signed on the calling thread. When the cache grows beyond its
+ * {@linkplain Builder#maximumSize(int) maximum size}, entries that are no longer served are evicted first, then those
+ * closest to being evicted anyway.
+ * <p>
+ * Lookups take no locks, so the cache is safe and cheap under heavy concurrent reads. Concurrent misses for the same
+ * URL sign it once, and the other threads wait for that signature. Hits, misses, background refreshes and evictions
+ * are counted.
+ * <p>
+ * <b>Typical usage:</b>
+ * <pre>
+ * SignedUrlCache cache = SignedUrlCache.builder().maximumSize(50_000).build();
+ * S3UrlSigner signer = S3UrlSigner.builder("my-bucket")
+ *     .usingCredentials(awsKey, awsSecret)
+ *     .withExpiryPolicy(ExpiryPolicy.alignedTo(15, TimeUnit.MINUTES))
+ *     .build();
+ *
+ * String url = cache.sign(signer, "photos/cat.jpg", 1, TimeUnit.HOURS);
+ * </pre>
+ *
+ * @since 3.0.0
+ */
+public final class SignedUrlCache {
+
+    /** Signed and in-flight URLs. */
+    private final ConcurrentMap<Key, CompletableFuture<Entry>> entries = new ConcurrentHashMap<>();
+
+    private final AtomicBoolean evicting = new AtomicBoolean();
+
+    private final int maximumSize;
+
+    private final double refreshAfter;
+
+    private final double evictAfter;
+
+    private final Executor executor;
+
+    private final Clock clock;
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder refreshes = new LongAdder();
+
+    private final LongAdder evictions = new LongAdder();
+
+    private SignedUrlCache(Builder builder) {
+        maximumSize = builder.maximumSize;
+        refreshAfter = builder.refreshAfter;
+        evictAfter = builder.evictAfter;
+        executor = builder.executor;
+        clock = builder.clock;
+    }
+
+    /**
+     * Start configuring a cache.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Get a URL presigned by {@code signer} that is valid for a duration from when it was signed.
+     *
+     * @see S3UrlSigner#sign(String, long, TimeUnit)
+     */
+    public String sign(S3UrlSigner signer, String key, long duration, TimeUnit unit) {
+        return sign(signer, key, duration, unit, S3UrlSigner.Options.NONE);
+    }
+
+    /**
+     * Get a URL presigned by {@code signer}, with per-URL response overrides, that is valid for a duration from when
+     * it was signed.
+     *
+     * @param signer the signer to sign misses and refreshes with
+     * @param key the object key
+     * @param duration how long the URL is valid for
+     * @param unit unit of duration
+     * @param options response overrides for this URL
+     * @return a cached or newly presigned URL
+     * @throws IllegalArgumentException if signer, unit or options is null, key is blank, or duration is shorter than one second
+     * @see S3UrlSigner#sign(String, long, TimeUnit, S3UrlSigner.Options)
+     */
+    public String sign(S3UrlSigner signer, String key, long duration, TimeUnit unit, S3UrlSigner.Options options) {
+        InternalUtils.checkNotNull(signer, "signer");
+        InternalUtils.checkNotBlank(key, "key");
+        InternalUtils.checkNotNull(options, "options");
+        long ttl = ttl(duration, unit);
+
+        Key cacheKey = new Key(signer, key, options, signer.credentialsIdentity(), ttl);
+
+        return lookup(cacheKey, clock.millis(), now -> {
+            long expiresAt = signer.expiresAt(now, ttl);
+            return newEntry(signer.signAt(key, expiresAt, now, options), expiresAt, ttl);
+        });
+    }
+
+    /**
+     * Get a CloudFront URL that is valid for a duration from when it was signed. The builder's current settings are
+     * used; its own expiry is ignored. Later changes to the builder do not affect cached or refreshed URLs.
+     *
+     * @param builder the distribution, key and parameters of the URL
+     * @param duration how long the URL is valid for
+     * @param unit unit of duration
+     * @return a cached or newly signed URL
+     * @throws IllegalArgumentException if builder or unit is null, or duration is shorter than one second
+     */
+    public String sign(CloudfrontUrlBuilder builder, long duration, TimeUnit unit) {
+        InternalUtils.checkNotNull(builder, "builder");
+        long ttl = ttl(duration, unit);
+
+        Key key = new Key(builder.signingInputs(), null, null, null, ttl);
+
+        return lookup(key, clock.millis(), new Signer() {
+            @Override
+            public Entry sign(long now) {
+                return signCloudfront(builder, now, ttl);
+            }
+
+            @Override
+            public Signer detach() {
+                // the builder is not thread-safe, so background refreshes sign a copy taken on the calling thread
+                CloudfrontUrlBuilder copy = builder.copy();
+                return now -> signCloudfront(copy, now, ttl);
+            }
+        });
+    }
+
+    /**
+     * @return number of lookups served from the cache
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * @return number of lookups that were signed on the calling thread
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * @return number of entries re-signed in the background
+     */
+    public long getRefreshCount() {
+        return refreshes.sum();
+    }
+
+    /**
+     * @return number of entries evicted to stay within the maximum size
+     */
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return approximate number of cached URLs
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Discard all cached URLs. Counters are kept.
+     */
+    public void clear() {
+        entries.clear();
+    }
+
+    private static long ttl(long duration, TimeUnit unit) {
+        InternalUtils.checkNotNull(unit, "unit");
+        long ttl = unit.toMillis(duration);
+        if (ttl < 1000) {
+            throw new IllegalArgumentException("duration must be at least one second");
+        }
+        return ttl;
+    }
+
+    private Entry signCloudfront(CloudfrontUrlBuilder builder, long now, long ttl) {
+        long expiresAt = builder.getExpiryPolicy().expiresAt(now, ttl);
+        return newEntry(builder.signUntil(expiresAt), expiresAt, ttl);
+    }
+
+    private Entry newEntry(String url, long expiresAt, long ttl) {
+        long expiresAtMillis = expiresAt * 1000;
+        return new Entry(url,
+            expiresAtMillis - (long) (ttl * (1 - refreshAfter)),
+            expiresAtMillis - (long) (ttl * (1 - evictAfter)));
+    }
+
+    private String lookup(Key key, long now, Signer signer) {
+        CompletableFuture<Entry> slot = entries.get(key);
+        while (true) {
+            if (slot == null) {
+                CompletableFuture<Entry> signing = new CompletableFuture<>();
+                slot = entries.computeIfAbsent(key, k -> signing);
+                if (slot == signing) {
+                    return signAsOwner(key, signing, now, signer);
+                }
+            }
+
+            Entry current = slot.getNow(null);
+            if (current == null || now < current.evictAt) {
+                break;
+            }
+            // no longer served; the thread that swaps in a new slot signs it, the others wait for it
+            CompletableFuture<Entry> signing = new CompletableFuture<>();
+            if (entries.replace(key, slot, signing)) {
+                return signAsOwner(key, signing, now, signer);
+            }
+            slot = entries.get(key);
+        }
+
+        Entry entry = join(slot);
+        hits.increment();
+
+        if (now >= entry.refreshAt && entry.refreshing.compareAndSet(false, true)) {
+            CompletableFuture<Entry> refreshed = slot;
+            Signer background = signer.detach();
+            try {
+                executor.execute(() -> refresh(key, refreshed, entry, background));
+            }
+            catch (RejectedExecutionException e) {
+                // try again on a later hit; the entry is still served until it is evicted
+                entry.refreshing.set(false);
+            }
+        }
+
+        return entry.url;
+    }
+
+    private String signAsOwner(Key key, CompletableFuture<Entry> slot, long now, Signer signer) {
+        misses.increment();
+        Entry signed;
+        try {
+            signed = signer.sign(now);
+        }
+        catch (RuntimeException | Error e) {
+            entries.remove(key, slot);
+            slot.completeExceptionally(e);
+            throw e;
+        }
+        slot.complete(signed);
+
+        if (entries.size() > maximumSize) {
+            evict(now);
+        }
+        return signed.url;
+    }
+
+    private void refresh(Key key, CompletableFuture<Entry> slot, Entry entry, Signer signer) {
+        try {
+            if (entries.replace(key, slot, CompletableFuture.completedFuture(signer.sign(clock.millis())))) {
+                refreshes.increment();
+            }
+        }
+        catch (RuntimeException e) {
+            // keep serving the current URL; the next hit retries
+            entry.refreshing.set(false);
+        }
+    }
+
+    /**
+     * Drop entries that are no longer served, then those closest to being evicted anyway, until the cache is a tenth
+     * below its maximum size. URLs still being signed are kept. Only one thread evicts at a time; the others carry on.
+     */
+    private void evict(long now) {
+        if (!evicting.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            List<Map.Entry<Key, CompletableFuture<Entry>>> signed = new ArrayList<>();
+            for (Map.Entry<Key, CompletableFuture<Entry>> e : entries.entrySet()) {
+                Entry entry = e.getValue().getNow(null);
+                if (entry == null) {
+                    continue;
+                }
+                if (now >= entry.evictAt) {
+                    if (entries.remove(e.getKey(), e.getValue())) {
+                        evictions.increment();
+                    }
+                }
+                else {
+                    signed.add(e);
+                }
+            }
+
+            int target = maximumSize - maximumSize / 10;
+            if (entries.size() > target) {
+                signed.sort(Comparator.comparingLong(e -> e.getValue().join().evictAt));
+                for (int i = 0; i < signed.size() && entries.size() > target; i++) {
+                    if (entries.remove(signed.get(i).getKey(), signed.get(i).getValue())) {
+                        evictions.increment();
+                    }
+                }
+            }
+        }
+        finally {
+            evicting.set(false);
+        }
+    }
+
+    /**
+     * Wait for a URL another thread is signing, rethrowing its failure as is.
+     */
+    private static Entry join(CompletableFuture<Entry> slot) {
+        try {
+            return slot.join();
+        }
+        catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private interface Signer {
+        Entry sign(long now);
+
+        /**
+         * @return a signer that can run on another thread after the lookup has returned
+         */
+        default Signer detach() {
+            return this;
+        }
+    }
+
+    private static final class Entry {
+
+        final String url;
+
+        /** Epoch milliseconds after which a hit re-signs in the background. */
+        final long refreshAt;
+
+        /** Epoch milliseconds after which the URL is no longer served. */
+        final long evictAt;
+
+        final AtomicBoolean refreshing = new AtomicBoolean();
+
+        Entry(String url, long refreshAt, long evictAt) {
+            this.url = url;
+            this.refreshAt = refreshAt;
+            this.evictAt = evictAt;
+        }
+    }
+
+    private static final class Key {
+
+        /** The S3 signer, compared by identity, or the CloudFront signing inputs, compared by value. */
+        private final Object source;
+
+        private final String key;
+
+        private final S3UrlSigner.Options options;
+
+        private final String identity;
+
+        private final long ttl;
+
+        private final int hash;
+
+        Key(Object source, String key, S3UrlSigner.Options options, String identity, long ttl) {
+            this.source = source;
+            this.key = key;
+            this.options = options;
+            this.identity = identity;
+            this.ttl = ttl;
+
+            int result = source.hashCode();
+            result = 31 * result + (key != null ? key.hashCode() : 0);
+            result = 31 * result + (options != null ? options.hashCode() : 0);
+            result = 31 * result + (identity != null ? identity.hashCode() : 0);
+            result = 31 * result + Long.hashCode(ttl);
+            hash = result;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return hash == other.hash
+                && ttl == other.ttl
+                && source.equals(other.source)
+                && (key == null ? other.key == null : key.equals(other.key))
+                && (options == null ? other.options == null : options.equals(other.options))
+                && (identity == null ? other.identity == null : identity.equals(other.identity));
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * Configuration for a {@link SignedUrlCache}.
+     */
+    public static final class Builder {
+
+        private int maximumSize = 10_000;
+
+        private double refreshAfter = 0.5;
+
+        private double evictAfter = 0.9;
+
+        private Executor executor = ForkJoinPool.commonPool();
+
+        private Clock clock = Clock.systemUTC();
+
+        private Builder() {
+        }
+
+        /**
+         * Number of URLs to keep. Defaults to 10,000.
+         *
+         * @return this builder for method chaining
+         * @throws IllegalArgumentException if size is less than 1
+         */
+        public Builder maximumSize(int size) {
+            if (size < 1) {
+                throw new IllegalArgumentException("size must be at least 1");
+            }
+            maximumSize = size;
+            return this;
+        }
+
+        /**
+         * Fraction of its requested lifetime after which an entry is re-signed in the background. Defaults to 0.5.
+         *
+         * @return this builder for method chaining
+         * @throws IllegalArgumentException if fraction is not between 0 and 1
+         */
+        public Builder refreshAfter(double fraction) {
+            checkFraction(fraction);
+            refreshAfter = fraction;
+            return this;
+        }
+
+        /**
+         * Fraction of its requested lifetime after which an entry is no longer served. Defaults to 0.9.
+         *
+         * @return this builder for method chaining
+         * @throws IllegalArgumentException if fraction is not between 0 and 1
+         */
+        public Builder evictAfter(double fraction) {
+            checkFraction(fraction);
+            evictAfter = fraction;
+            return this;
+        }
+
+        /**
+         * Re-sign in the background on {@code executor}. Defaults to {@link ForkJoinPool#commonPool()}.
+         *
+         * @return this builder for method chaining
+         * @throws IllegalArgumentException if executor is null
+         */
+        public Builder usingExecutor(Executor executor) {
+            InternalUtils.checkNotNull(executor, "executor");
+            this.executor = executor;
+            return this;
+        }
+
+        /**
+         * @param clock source of the current time; defaults to {@link Clock#systemUTC()}
+         * @return this builder for method chaining
+         * @throws IllegalArgumentException if clock is null
+         */
+        public Builder usingClock(Clock clock) {
+            InternalUtils.checkNotNull(clock, "clock");
+            this.clock = clock;
+            return this;
+        }
+
+        /**
+         * @return a new, empty cache
+         * @throws IllegalStateException if entries would be evicted before they are refreshed
+         */
+        public SignedUrlCache build() {
+            if (evictAfter < refreshAfter) {
+                throw new IllegalStateException("evictAfter must not be less than refreshAfter.");
+            }
+            return new SignedUrlCache(this);
+        }
+
+        private static void checkFraction(double fraction) {
+            if (!(fraction > 0 && fraction <= 1)) {
+                throw new IllegalArgumentException("fraction must be greater than 0 and at most 1");
+            }
+        }
+    }
+}
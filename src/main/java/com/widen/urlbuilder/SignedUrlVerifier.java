@@ -0,0 +1,702 @@
+package com.widen.urlbuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.SignatureException;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Immutable, thread-safe verifier for presigned S3 (Signature Version 2) and Cloudfront canned and custom policy URLs.
+ * <p>
+ * A server in front of a cache can use it to check URLs made by {@link S3UrlBuilder}, {@link S3UrlSigner} and
+ * {@link CloudfrontUrlBuilder} without regenerating them: the URL is parsed once, the S3 HMAC is recomputed from
+ * the secret of its {@code AWSAccessKeyId}, and the Cloudfront RSA or ECDSA signature is checked against the public key
+ * of its {@code Key-Pair-Id}. Signatures are compared in constant time and expiry is checked against the
+ * configured {@link Clock}.
+ * <p>
+ * S3 keys share the pre-initialized MAC state used by the signers, and Cloudfront keys keep a pool of
+ * initialized {@link Signature} verifiers, so no provider lookup or key setup happens per URL.
+ * <p>
+ * <b>Typical usage:</b>
+ * <pre>
+ * SignedUrlVerifier verifier = SignedUrlVerifier.builder()
+ *     .withS3Credentials(awsKey, awsSecret)
+ *     .withCloudfrontKey("APKAIW7O5EPF5UBMJ7KQ", publicKey)
+ *     .build();
+ *
+ * if (verifier.verify(url) == SignedUrlVerifier.Verdict.VALID) { ... }
+ * </pre>
+ * <p>
+ * Every query parameter other than the authentication parameters is treated as signed, as the builders sign
+ * them; a URL with parameters added after signing does not verify.
+ *
+ * @see S3UrlBuilder
+ * @see CloudfrontUrlBuilder
+ * @since 3.0.0
+ */
+public final class SignedUrlVerifier {
+
+    private final Map<String, HmacKey> s3Keys;
+
+    private final Map<String, CloudfrontKey> cloudfrontKeys;
+
+    private final List<String> s3Endpoints;
+
+    private final Clock clock;
+
+    /**
+     * Outcome of verifying a URL.
+     */
+    public enum Verdict {
+        /** The signature matches and the URL has not expired. */
+        VALID,
+        /** The signature may or may not match, but the URL is past its expiry, or before the start of its custom policy. */
+        EXPIRED,
+        /** The signature does not match the URL. */
+        INVALID_SIGNATURE,
+        /** The access key or key pair id is not one this verifier was configured with. */
+        UNKNOWN_KEY,
+        /** The URL is not parseable or is missing or has unreadable authentication parameters. */
+        MALFORMED,
+        /** The URL is signed with a scheme this verifier does not check, such as S3 Signature Version 4. */
+        UNSUPPORTED
+    }
+
+    private SignedUrlVerifier(Builder builder) {
+        this.s3Keys = new HashMap<>(builder.s3Keys);
+        this.cloudfrontKeys = new HashMap<>(builder.cloudfrontKeys);
+        this.s3Endpoints = builder.s3Endpoints.isEmpty()
+            ? Collections.singletonList(S3Endpoints.DEFAULT_ENDPOINT)
+            : new ArrayList<>(builder.s3Endpoints);
+        this.clock = builder.clock;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return true if {@link #verify(String)} returns {@link Verdict#VALID}
+     */
+    public boolean isValid(String url) {
+        return verify(url) == Verdict.VALID;
+    }
+
+    /**
+     * Verify a URL presigned for a {@code GET} request.
+     *
+     * @param url absolute URL
+     */
+    public Verdict verify(String url) {
+        return verify("GET", url);
+    }
+
+    /**
+     * Verify a URL presigned for a request with the given HTTP verb. The verb is only signed by S3 URLs.
+     *
+     * @param method the HTTP verb of the request, e.g. {@code GET} or {@code PUT}
+     * @param url absolute URL
+     */
+    public Verdict verify(String method, String url) {
+        InternalUtils.checkNotNull(url, "url");
+
+        RawUrl rawUrl;
+        try {
+            byte[] bytes = url.getBytes(StandardCharsets.UTF_8);
+            rawUrl = RawUrl.parse(bytes, 0, bytes.length);
+        }
+        catch (UrlBuilder.NonParsableUrl e) {
+            return Verdict.MALFORMED;
+        }
+
+        return verify(method, rawUrl);
+    }
+
+    /**
+     * Verify an already parsed URL. The URL must include its hostname, which is part of what is signed.
+     *
+     * @param method the HTTP verb of the request, e.g. {@code GET} or {@code PUT}
+     * @param url absolute URL
+     */
+    public Verdict verify(String method, RawUrl url) {
+        InternalUtils.checkNotBlank(method, "method");
+        InternalUtils.checkNotNull(url, "url");
+
+        if (url.getHostname() == null) {
+            return Verdict.MALFORMED;
+        }
+
+        QueryString query = url.getQueryString();
+
+        if (query.contains("AWSAccessKeyId")) {
+            return verifyS3(method, url, query);
+        }
+        if (query.contains("Key-Pair-Id")) {
+            return verifyCloudfront(url, query);
+        }
+        if (query.contains("X-Amz-Signature")) {
+            return Verdict.UNSUPPORTED;
+        }
+        return Verdict.MALFORMED;
+    }
+
+    private Verdict verifyS3(String method, RawUrl url, QueryString query) {
+        String accessKey = null;
+        String expiresValue = null;
+        String signatureValue = null;
+        String sessionToken = null;
+
+        String[] pairs = new String[2 * query.size()];
+        int size = 0;
+
+        for (int i = 0; i < query.size(); i++) {
+            String name = query.getKey(i);
+            switch (name) {
+                case "AWSAccessKeyId":
+                    accessKey = query.getValue(i);
+                    break;
+                case "Expires":
+                    expiresValue = query.getValue(i);
+                    break;
+                case "Signature":
+                    signatureValue = query.getValue(i);
+                    break;
+                case "x-amz-security-token":
+                    sessionToken = query.getValue(i);
+                    break;
+                default:
+                    pairs[size++] = name;
+                    pairs[size++] = query.getValue(i);
+            }
+        }
+
+        long expires = parseSeconds(expiresValue);
+        if (expires < 0 || signatureValue == null) {
+            return Verdict.MALFORMED;
+        }
+
+        HmacKey key = s3Keys.get(accessKey);
+        if (key == null) {
+            return Verdict.UNKNOWN_KEY;
+        }
+
+        byte[] signature = decodeBase64(signatureValue, false);
+        if (signature == null) {
+            return Verdict.MALFORMED;
+        }
+
+        // S3 accepts a request up to and including the second in Expires
+        if (clock.millis() / 1000 > expires) {
+            return Verdict.EXPIRED;
+        }
+
+        return SigV2.verify(signature, key, method, expires, sessionToken, canonicalResource(url), pairs, size)
+            ? Verdict.VALID
+            : Verdict.INVALID_SIGNATURE;
+    }
+
+    private Verdict verifyCloudfront(RawUrl url, QueryString query) {
+        String keyPairId = null;
+        String expiresValue = null;
+        String policyValue = null;
+        String signatureValue = null;
+        String hashAlgorithm = null;
+
+        // The URL without its authentication parameters, which is what a policy names
+        String raw = url.toString();
+        StringBuilder resource = new StringBuilder(raw.length());
+
+        int queryStart = raw.indexOf('?');
+        char separator = '?';
+
+        resource.append(raw, 0, queryStart);
+        for (int i = 0; i < query.size(); i++) {
+            switch (query.getKey(i)) {
+                case "Key-Pair-Id":
+                    keyPairId = query.getValue(i);
+                    break;
+                case "Expires":
+                    expiresValue = query.getValue(i);
+                    break;
+                case "Policy":
+                    policyValue = query.getValue(i);
+                    break;
+                case "Signature":
+                    signatureValue = query.getValue(i);
+                    break;
+                case "Hash-Algorithm":
+                    hashAlgorithm = query.getValue(i);
+                    break;
+                default:
+                    // copied verbatim, so a parameter without a value stays without '='
+                    query.appendRaw(resource.append(separator), i);
+                    separator = '&';
+            }
+        }
+
+        long expires = policyValue != null ? 0 : parseSeconds(expiresValue);
+        if (expires < 0 || signatureValue == null) {
+            return Verdict.MALFORMED;
+        }
+
+        CloudfrontKey key = cloudfrontKeys.get(keyPairId);
+        if (key == null) {
+            return Verdict.UNKNOWN_KEY;
+        }
+
+        CloudfrontSignatureAlgorithm algorithm = CloudfrontSignatureAlgorithm.of(key.key, hashAlgorithm);
+        if (algorithm == null) {
+            return Verdict.UNSUPPORTED;
+        }
+
+        byte[] signature = decodeBase64(signatureValue, true);
+        if (signature == null) {
+            return Verdict.MALFORMED;
+        }
+
+        if (policyValue != null) {
+            return verifyCloudfrontPolicy(key, algorithm, signature, policyValue, resource.toString());
+        }
+
+        // The canned policy's condition is DateLessThan
+        if (clock.millis() / 1000 >= expires) {
+            return Verdict.EXPIRED;
+        }
+
+        String policy = "{\"Statement\":[{\"Resource\":\"" + resource + "\",\"Condition\":{\"DateLessThan\":{\"AWS:EpochTime\":" + expires + "}}}]}";
+
+        return key.verify(algorithm, policy.getBytes(StandardCharsets.UTF_8), signature)
+            ? Verdict.VALID
+            : Verdict.INVALID_SIGNATURE;
+    }
+
+    /**
+     * Verify a custom policy URL: the signature covers the policy as sent, which must then grant access to the
+     * URL at the current time. IP address conditions are not checked, since the client address is not known here.
+     */
+    private Verdict verifyCloudfrontPolicy(CloudfrontKey key, CloudfrontSignatureAlgorithm algorithm, byte[] signature,
+                                           String policyValue, String resource) {
+        byte[] policy = decodeBase64(policyValue, true);
+        if (policy == null) {
+            return Verdict.MALFORMED;
+        }
+
+        if (!key.verify(algorithm, policy, signature)) {
+            return Verdict.INVALID_SIGNATURE;
+        }
+
+        CustomPolicy decoded = CustomPolicy.parse(new String(policy, StandardCharsets.UTF_8));
+        if (decoded == null) {
+            return Verdict.UNSUPPORTED;
+        }
+
+        long now = clock.millis() / 1000;
+        if (now >= decoded.expires || (decoded.activeFrom != CustomPolicy.NOT_SET && now <= decoded.activeFrom)) {
+            return Verdict.EXPIRED;
+        }
+
+        return CloudfrontCustomPolicy.matches(decoded.resource, resource)
+            ? Verdict.VALID
+            : Verdict.INVALID_SIGNATURE;
+    }
+
+    /**
+     * Recover {@code /bucket/key} from the hostname and path, as laid out by the bucket encodings of
+     * {@link S3UrlBuilder}: bucket in the path on a known endpoint, bucket as a subdomain of a known endpoint,
+     * or any other hostname being the bucket itself.
+     */
+    private String canonicalResource(RawUrl url) {
+        String host = url.getHostname();
+        String key = StringUtilsInternal.join(url.getPathSegments(), "/");
+
+        for (String endpoint : s3Endpoints) {
+            int prefixLength = host.length() - endpoint.length();
+
+            if (prefixLength == 0 && host.equalsIgnoreCase(endpoint)) {
+                return "/" + key;
+            }
+            if (prefixLength > 1 && host.charAt(prefixLength - 1) == '.'
+                && host.regionMatches(true, prefixLength, endpoint, 0, endpoint.length())) {
+                return "/" + host.substring(0, prefixLength - 1) + "/" + key;
+            }
+        }
+
+        return "/" + host + "/" + key;
+    }
+
+    /**
+     * @return the value as a number of seconds, or -1 if it is missing or not a plain decimal number
+     */
+    private static long parseSeconds(String value) {
+        if (value == null || value.isEmpty() || value.length() > 18) {
+            return -1;
+        }
+
+        long seconds = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            seconds = seconds * 10 + (c - '0');
+        }
+        return seconds;
+    }
+
+    /**
+     * Decode standard Base64, or the Cloudfront variant that replaces {@code + = /} with {@code - _ ~}.
+     *
+     * @return the decoded bytes, or null if the value is not Base64
+     */
+    private static byte[] decodeBase64(String value, boolean cloudfront) {
+        byte[] bytes = new byte[value.length()];
+
+        for (int i = 0; i < bytes.length; i++) {
+            char c = value.charAt(i);
+            if (cloudfront) {
+                c = c == '-' ? '+' : c == '_' ? '=' : c == '~' ? '/' : c;
+            }
+            if (c >= 0x80) {
+                return null;
+            }
+            bytes[i] = (byte) c;
+        }
+
+        try {
+            return Base64.getDecoder().decode(bytes);
+        }
+        catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * The parts of a Cloudfront custom policy that a verifier can check. Only single-statement policies, such as
+     * those written by {@link CloudfrontCustomPolicy}, are read.
+     */
+    private static final class CustomPolicy {
+
+        static final long NOT_SET = Long.MIN_VALUE;
+
+        final String resource;
+
+        /** Epoch seconds of the {@code DateLessThan} condition. */
+        final long expires;
+
+        /** Epoch seconds of the {@code DateGreaterThan} condition, or {@link #NOT_SET}. */
+        final long activeFrom;
+
+        private CustomPolicy(String resource, long expires, long activeFrom) {
+            this.resource = resource;
+            this.expires = expires;
+            this.activeFrom = activeFrom;
+        }
+
+        /**
+         * @return the policy, or null if it has several statements or cannot be read
+         */
+        static CustomPolicy parse(String json) {
+            int resourceName = json.indexOf("\"Resource\"");
+            if (resourceName < 0 || json.indexOf("\"Resource\"", resourceName + 1) >= 0) {
+                return null;
+            }
+
+            StringBuilder resource = new StringBuilder(64);
+            if (readString(json, valueStart(json, resourceName + "\"Resource\"".length()), resource) < 0) {
+                return null;
+            }
+
+            long expires = epochTime(json, "\"DateLessThan\"");
+            long activeFrom = epochTime(json, "\"DateGreaterThan\"");
+            // DateLessThan is required; NOT_SET is negative too
+            if (expires < 0 || activeFrom == -1) {
+                return null;
+            }
+
+            return new CustomPolicy(resource.toString(), expires, activeFrom);
+        }
+
+        /**
+         * @return the value of {@code {"AWS:EpochTime": n}} following a condition name, {@link #NOT_SET} if the
+         * condition is absent, or -1 if it cannot be read
+         */
+        private static long epochTime(String json, String condition) {
+            int name = json.indexOf(condition);
+            if (name < 0) {
+                return NOT_SET;
+            }
+
+            int open = valueStart(json, name + condition.length());
+            if (open < 0 || json.charAt(open) != '{') {
+                return -1;
+            }
+
+            int key = skipWhitespace(json, open + 1);
+            if (!json.startsWith("\"AWS:EpochTime\"", key)) {
+                return -1;
+            }
+
+            int digits = valueStart(json, key + "\"AWS:EpochTime\"".length());
+            if (digits < 0) {
+                return -1;
+            }
+
+            int end = digits;
+            while (end < json.length() && json.charAt(end) >= '0' && json.charAt(end) <= '9') {
+                end++;
+            }
+            return parseSeconds(json.substring(digits, end));
+        }
+
+        /**
+         * @return the index of the value after {@code :} following {@code from}, or -1 if there is no colon
+         */
+        private static int valueStart(String json, int from) {
+            int colon = skipWhitespace(json, from);
+            if (colon >= json.length() || json.charAt(colon) != ':') {
+                return -1;
+            }
+            int value = skipWhitespace(json, colon + 1);
+            return value < json.length() ? value : -1;
+        }
+
+        private static int skipWhitespace(String json, int from) {
+            while (from < json.length() && Character.isWhitespace(json.charAt(from))) {
+                from++;
+            }
+            return from;
+        }
+
+        /**
+         * Read a JSON string starting at {@code from} into {@code out}.
+         *
+         * @return the index after the closing quote, or -1 if there is no string
+         */
+        private static int readString(String json, int from, StringBuilder out) {
+            if (from < 0 || json.charAt(from) != '"') {
+                return -1;
+            }
+
+            for (int i = from + 1; i < json.length(); i++) {
+                char c = json.charAt(i);
+                if (c == '"') {
+                    return i + 1;
+                }
+                if (c != '\\') {
+                    out.append(c);
+                    continue;
+                }
+                if (++i >= json.length()) {
+                    return -1;
+                }
+                switch (json.charAt(i)) {
+                    case '"':
+                    case '\\':
+                    case '/':
+                        out.append(json.charAt(i));
+                        break;
+                    case 'u':
+                        if (i + 4 >= json.length()) {
+                            return -1;
+                        }
+                        try {
+                            out.append((char) Integer.parseInt(json.substring(i + 1, i + 5), 16));
+                        }
+                        catch (NumberFormatException e) {
+                            return -1;
+                        }
+                        i += 4;
+                        break;
+                    default:
+                        // control characters have no place in a URL pattern
+                        return -1;
+                }
+            }
+
+            return -1;
+        }
+    }
+
+    /**
+     * A Cloudfront public key with lock-free pools of {@link Signature} instances initialized for verification, one
+     * per algorithm the key can be used with. Like the signing pools, each keeps at most
+     * {@link CloudfrontUrlBuilder.TrustedSignerCredentials#MAX_IDLE_SIGNERS} idle instances, so a burst of threads
+     * does not leave one behind per thread.
+     */
+    private static final class CloudfrontKey {
+
+        private final PublicKey key;
+
+        private final Map<CloudfrontSignatureAlgorithm, Queue<Signature>> pools = new EnumMap<>(CloudfrontSignatureAlgorithm.class);
+
+        /** Number of instances in each pool, kept alongside as {@link Queue#size()} is not constant-time. */
+        private final Map<CloudfrontSignatureAlgorithm, AtomicInteger> idle = new EnumMap<>(CloudfrontSignatureAlgorithm.class);
+
+        CloudfrontKey(PublicKey key) {
+            this.key = key;
+            // The map is filled before the key is shared and never changes afterwards
+            for (CloudfrontSignatureAlgorithm algorithm : CloudfrontSignatureAlgorithm.values()) {
+                if (CloudfrontSignatureAlgorithm.of(key, algorithm.getHashAlgorithm()) == algorithm) {
+                    Queue<Signature> pool = new ConcurrentLinkedQueue<>();
+                    pool.offer(newVerifier(algorithm));
+                    pools.put(algorithm, pool);
+                    idle.put(algorithm, new AtomicInteger(1));
+                }
+            }
+            if (pools.isEmpty()) {
+                throw new IllegalArgumentException("Unsupported key algorithm " + key.getAlgorithm() + "; Cloudfront keys are RSA or EC.");
+            }
+        }
+
+        boolean verify(CloudfrontSignatureAlgorithm algorithm, byte[] data, byte[] signature) {
+            Queue<Signature> pool = pools.get(algorithm);
+            Signature verifier = pool.poll();
+            if (verifier == null) {
+                verifier = newVerifier(algorithm);
+            }
+            else {
+                idle.get(algorithm).decrementAndGet();
+            }
+
+            try {
+                verifier.update(data);
+                boolean valid = verifier.verify(signature);
+                // verify() resets the instance to its initialized state, ready for the next URL
+                release(algorithm, verifier);
+                return valid;
+            }
+            catch (SignatureException e) {
+                // Unreadable signature; the instance is discarded since its state is unspecified
+                return false;
+            }
+        }
+
+        private void release(CloudfrontSignatureAlgorithm algorithm, Signature verifier) {
+            AtomicInteger count = idle.get(algorithm);
+            if (count.incrementAndGet() <= CloudfrontUrlBuilder.TrustedSignerCredentials.MAX_IDLE_SIGNERS) {
+                pools.get(algorithm).offer(verifier);
+            }
+            else {
+                count.decrementAndGet();
+            }
+        }
+
+        private Signature newVerifier(CloudfrontSignatureAlgorithm algorithm) {
+            try {
+                Signature verifier = Signature.getInstance(algorithm.getJcaName());
+                verifier.initVerify(key);
+                return verifier;
+            }
+            catch (GeneralSecurityException e) {
+                throw new IllegalStateException("Cannot initialize " + algorithm.getJcaName() + ": " + e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Mutable configuration for a {@link SignedUrlVerifier}.
+     */
+    public static final class Builder {
+
+        private final Map<String, HmacKey> s3Keys = new HashMap<>();
+
+        private final Map<String, CloudfrontKey> cloudfrontKeys = new HashMap<>();
+
+        private final List<String> s3Endpoints = new ArrayList<>();
+
+        private Clock clock = Clock.systemUTC();
+
+        private Builder() {
+        }
+
+        /**
+         * Accept S3 URLs signed with this access key. May be called once per access key.
+         *
+         * @return this builder for method chaining
+         * @throws IllegalArgumentException if either argument is blank
+         */
+        public Builder withS3Credentials(String accessKeyId, String secretAccessKey) {
+            InternalUtils.checkNotBlank(accessKeyId, "accessKeyId");
+            InternalUtils.checkNotBlank(secretAccessKey, "secretAccessKey");
+            s3Keys.put(accessKeyId, HmacKey.hmacSha1(secretAccessKey));
+            return this;
+        }
+
+        /**
+         * Add an S3 endpoint that URLs may use, either with the bucket in the path or as a subdomain.
+         * Defaults to {@code s3.amazonaws.com} if none is added. Hostnames matching no endpoint are taken to be
+         * the bucket name.
+         *
+         * @param endpoint fully-qualified DNS hostname of the S3 service
+         * @return this builder for method chaining
+         * @throws IllegalArgumentException if endpoint is blank
+         */
+        public Builder withS3Endpoint(String endpoint) {
+            InternalUtils.checkNotBlank(endpoint, "endpoint");
+            s3Endpoints.add(endpoint);
+            return this;
+        }
+
+        /**
+         * Add the S3 endpoint of an AWS region: {@code s3.$REGION.amazonaws.com}, or its dual-stack variant.
+         *
+         * @return this builder for method chaining
+         * @throws IllegalArgumentException if region is blank
+         */
+        public Builder inRegion(String region) {
+            InternalUtils.checkNotBlank(region, "region");
+            withS3Endpoint(S3Endpoints.serviceEndpoint(region, false, false));
+            return withS3Endpoint(S3Endpoints.serviceEndpoint(region, true, false));
+        }
+
+        /**
+         * Accept Cloudfront URLs signed by this key pair.
+         *
+         * @param keyPairId the {@code Key-Pair-Id} of signed URLs
+         * @param publicKey RSA or EC public key of the pair, see {@link CloudfrontPrivateKeyUtils#publicKeyFromPemString(String)}
+         * @return this builder for method chaining
+         * @throws IllegalArgumentException if keyPairId is blank, or publicKey is null or neither an RSA nor an EC key
+         * @throws IllegalStateException if the key cannot be used to verify signatures
+         */
+        public Builder withCloudfrontKey(String keyPairId, PublicKey publicKey) {
+            InternalUtils.checkNotBlank(keyPairId, "keyPairId");
+            InternalUtils.checkNotNull(publicKey, "publicKey");
+            cloudfrontKeys.put(keyPairId, new CloudfrontKey(publicKey));
+            return this;
+        }
+
+        /**
+         * Use a different source of the current time for expiry checks.
+         *
+         * @return this builder for method chaining
+         * @throws IllegalArgumentException if clock is null
+         */
+        public Builder usingClock(Clock clock) {
+            InternalUtils.checkNotNull(clock, "clock");
+            this.clock = clock;
+            return this;
+        }
+
+        /**
+         * @throws IllegalStateException if no S3 credentials or Cloudfront keys have been added
+         */
+        public SignedUrlVerifier build() {
+            if (s3Keys.isEmpty() && cloudfrontKeys.isEmpty()) {
+                throw new IllegalStateException("At least one set of S3 credentials or Cloudfront key must be specified when verifying signed URLs.");
+            }
+            return new SignedUrlVerifier(this);
+        }
+    }
+}
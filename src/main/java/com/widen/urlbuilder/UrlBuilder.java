@@ -63,6 +63,12 @@ public class UrlBuilder {
 
     private List<String> path = new ArrayList<>();
 
+    /** Rendered form of {@link #path} supplied by {@link #withPathSegments(List, String)}, or null. */
+    private String encodedPath;
+
+    /** True while {@link #path} is the caller's list from {@link #withPathSegments(List, String)}, not ours to modify. */
+    private boolean pathShared;
+
     private boolean trailingPathSlash = false;
 
     private String fragment;
@@ -133,6 +139,7 @@ public class UrlBuilder {
      * Exception thrown when a URL string cannot be parsed.
      *
      * @see UrlBuilder#UrlBuilder(String)
+     * @see RawUrl
      */
     public static class NonParsableUrl extends RuntimeException {
         /**
@@ -143,6 +150,15 @@ public class UrlBuilder {
         public NonParsableUrl(MalformedURLException e) {
             super(e);
         }
+
+        /**
+         * Construct a NonParsableUrl exception.
+         *
+         * @param message description of why the input could not be parsed
+         */
+        public NonParsableUrl(String message) {
+            super(message);
+        }
     }
 
     /**
@@ -307,6 +323,7 @@ public class UrlBuilder {
         LegacyEncoder legacyEncoder = new LegacyEncoder();
         this.pathEncoder = legacyEncoder;
         this.queryEncoder = legacyEncoder;
+        encodedPath = null;
         return this;
     }
 
@@ -321,6 +338,7 @@ public class UrlBuilder {
      */
     public UrlBuilder usingPathEncoder(Encoder encoder) {
         this.pathEncoder = encoder;
+        encodedPath = null;
         return this;
     }
 
@@ -363,6 +381,8 @@ public class UrlBuilder {
      */
     public UrlBuilder withPath(String newPath) {
         path = makePathSegments(newPath, true);
+        encodedPath = null;
+        pathShared = false;
 
         return this;
     }
@@ -379,6 +399,22 @@ public class UrlBuilder {
      */
     public UrlBuilder withPathEncoded(String newPath) {
         path = makePathSegments(newPath, false);
+        encodedPath = null;
+        pathShared = false;
+        return this;
+    }
+
+    /**
+     * Set path from segments that have already been split and rendered by the caller, replacing any previous path
+     * value. The segments are not copied or encoded again.
+     *
+     * @param segments unencoded, non-blank path segments
+     * @param encoded the segments encoded with the current path encoder and joined with '/'
+     */
+    UrlBuilder withPathSegments(List<String> segments, String encoded) {
+        path = segments;
+        encodedPath = encoded;
+        pathShared = true;
         return this;
     }
 
@@ -407,6 +443,15 @@ public class UrlBuilder {
         return list;
     }
 
+    private List<String> mutablePath() {
+        encodedPath = null;
+        if (pathShared) {
+            pathShared = false;
+            return new ArrayList<>(path);
+        }
+        return path;
+    }
+
     /**
      * Encode path segments using the current path encoder.
      * This is called at output time to allow encoder changes to take effect.
@@ -452,6 +497,7 @@ public class UrlBuilder {
      */
     public UrlBuilder addPathSegment(String value) {
         if (StringUtilsInternal.isNotBlank(value)) {
+            path = mutablePath();
             path.addAll(makePathSegments(value, true));
         }
         return this;
@@ -465,6 +511,7 @@ public class UrlBuilder {
      */
     public UrlBuilder addPrefixedPathSegment(String value) {
         if (StringUtilsInternal.isNotBlank(value)) {
+            path = mutablePath();
             path.addAll(0, makePathSegments(value, true));
         }
         return this;
@@ -513,12 +560,13 @@ public class UrlBuilder {
      * Append a Map of parameters to the query string. Both keys and values
      * will be escaped when added.
      *
-     * @param params map where String key = query parameter key, Object value = toString() will be used as the value
+     * @param params map where String key = query parameter key, Object value = toString() will be used as the value;
+     * a null value adds the key without a value, as {@link #addParameter(String, Object)} does
      * @return this builder for method chaining
      */
     public UrlBuilder addParameters(Map<String, ?> params) {
         for (Entry<String, ?> e : params.entrySet()) {
-            addParameter(e.getKey(), e.getValue().toString());
+            addParameter(e.getKey(), e.getValue());
         }
         return this;
     }
@@ -661,7 +709,7 @@ public class UrlBuilder {
         url.append("/");
 
         if (!path.isEmpty()) {
-            url.append(StringUtilsInternal.join(encodePathSegments(), "/"));
+            url.append(encodedPath != null ? encodedPath : StringUtilsInternal.join(encodePathSegments(), "/"));
 
             if (trailingPathSlash) {
                 url.append("/");
@@ -0,0 +1,377 @@
+package com.widen.urlbuilder;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Parallel parser for newline-delimited files of URLs, such as request URLs extracted from CDN access logs.
+ * <p>
+ * Input is split into chunks aligned on line boundaries. Each chunk is read into a buffer recycled between the chunks
+ * of a worker (or tokenized in place from a heap buffer) on a {@link ForkJoinPool}, so throughput scales with the
+ * number of cores.
+ * Lines are parsed with {@link RawUrl}: no {@link java.net.URL}, no regular expressions, and components are only
+ * decoded when the handler asks for them.
+ * <p>
+ * <b>Typical usage:</b>
+ * <pre>
+ * LongAdder images = new LongAdder();
+ *
+ * new UrlLogParser().parse(Paths.get("urls.log"), (offset, url) -&gt; {
+ *     if (url.getRawPath().endsWith(".jpg")) {
+ *         images.increment();
+ *     }
+ * });
+ * </pre>
+ * <p>
+ * Blank lines and lines starting with {@code #} (log headers) are skipped. Leading and trailing spaces, tabs and
+ * carriage returns are trimmed.
+ * <p>
+ * <b>The handler is called concurrently from several threads and must be thread-safe.</b> Lines within a chunk are
+ * delivered in file order, but there is no ordering between chunks. The {@link RawUrl} passed to the handler is
+ * reused for the next line of the same worker: it is only valid for the duration of the call, so copy out whatever
+ * is needed (e.g. with {@link RawUrl#toString()} or {@link RawUrl#toUrlBuilder()}).
+ *
+ * @see RawUrl
+ * @since 3.0.0
+ */
+public class UrlLogParser {
+
+    private static final int DEFAULT_CHUNK_SIZE = 8 * 1024 * 1024;
+
+    private static final int BOUNDARY_SCAN_SIZE = 4096;
+
+    private ForkJoinPool pool = ForkJoinPool.commonPool();
+
+    private int chunkSize = DEFAULT_CHUNK_SIZE;
+
+    /**
+     * Set the pool that parses chunks. Defaults to {@link ForkJoinPool#commonPool()}.
+     *
+     * @param pool the pool to submit chunk tasks to
+     * @return this parser for method chaining
+     */
+    public UrlLogParser usingPool(ForkJoinPool pool) {
+        InternalUtils.checkNotNull(pool, "pool");
+        this.pool = pool;
+        return this;
+    }
+
+    /**
+     * Set the target size of each chunk. Chunks are extended to the end of the line they stop in.
+     * Defaults to 8 MiB; smaller chunks balance better across workers, larger chunks have less overhead.
+     *
+     * @param bytes target chunk size in bytes
+     * @return this parser for method chaining
+     * @throws IllegalArgumentException if bytes is not positive
+     */
+    public UrlLogParser withChunkSize(int bytes) {
+        if (bytes <= 0) {
+            throw new IllegalArgumentException("chunkSize must be positive.");
+        }
+        this.chunkSize = bytes;
+        return this;
+    }
+
+    /**
+     * Parse every line of a file.
+     *
+     * @param file the newline-delimited file to parse
+     * @param handler receives each parsed URL, possibly from several threads at once
+     * @return the number of lines delivered to {@link Handler#onUrl(long, RawUrl)}
+     * @throws IOException if the file cannot be read
+     */
+    public long parse(Path file, Handler handler) throws IOException {
+        InternalUtils.checkNotNull(file, "file");
+        InternalUtils.checkNotNull(handler, "handler");
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            List<long[]> chunks = new ArrayList<>();
+            ByteBuffer scan = ByteBuffer.allocate(BOUNDARY_SCAN_SIZE);
+
+            long chunkStart = 0;
+            while (chunkStart < size) {
+                long chunkEnd = nextLineStart(channel, Math.min(size, chunkStart + chunkSize), size, scan);
+                chunks.add(new long[] {chunkStart, chunkEnd});
+                chunkStart = chunkEnd;
+            }
+
+            Queue<Worker> workers = new ConcurrentLinkedQueue<>();
+            AtomicBoolean aborted = new AtomicBoolean();
+            List<ForkJoinTask<Long>> tasks = new ArrayList<>(chunks.size());
+
+            for (long[] chunk : chunks) {
+                tasks.add(pool.submit(() -> {
+                    if (aborted.get()) {
+                        return 0L;
+                    }
+
+                    Worker worker = acquire(workers);
+                    try {
+                        int length = (int) (chunk[1] - chunk[0]);
+                        byte[] data = worker.buffer(length);
+                        read(channel, ByteBuffer.wrap(data, 0, length), chunk[0]);
+                        return parseLines(data, 0, length, chunk[0], worker.url, handler, aborted);
+                    }
+                    catch (IOException e) {
+                        aborted.set(true);
+                        throw new UncheckedIOException(e);
+                    }
+                    catch (RuntimeException | Error e) {
+                        aborted.set(true);
+                        throw e;
+                    }
+                    finally {
+                        workers.offer(worker);
+                    }
+                }));
+            }
+
+            try {
+                return joinAll(tasks);
+            }
+            catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    /**
+     * Parse every line between the position and limit of a buffer, such as a caller-supplied {@link MappedByteBuffer}.
+     * <p>
+     * The buffer's position is not changed. Offsets reported to the handler are relative to its position.
+     *
+     * @param buffer the newline-delimited input
+     * @param handler receives each parsed URL, possibly from several threads at once
+     * @return the number of lines delivered to {@link Handler#onUrl(long, RawUrl)}
+     */
+    public long parse(ByteBuffer buffer, Handler handler) {
+        InternalUtils.checkNotNull(buffer, "buffer");
+        InternalUtils.checkNotNull(handler, "handler");
+
+        ByteBuffer input = buffer.slice();
+        int size = input.remaining();
+        Queue<Worker> workers = new ConcurrentLinkedQueue<>();
+        AtomicBoolean aborted = new AtomicBoolean();
+        List<ForkJoinTask<Long>> tasks = new ArrayList<>();
+
+        int chunkStart = 0;
+        while (chunkStart < size) {
+            int chunkEnd = (int) Math.min(size, (long) chunkStart + chunkSize);
+            while (chunkEnd < size && input.get(chunkEnd - 1) != '\n') {
+                chunkEnd++;
+            }
+
+            int from = chunkStart;
+            int to = chunkEnd;
+
+            tasks.add(pool.submit(() -> {
+                if (aborted.get()) {
+                    return 0L;
+                }
+
+                Worker worker = acquire(workers);
+                try {
+                    if (input.hasArray()) {
+                        int base = input.arrayOffset();
+                        return parseLines(input.array(), base + from, base + to, -base, worker.url, handler, aborted);
+                    }
+
+                    ByteBuffer region = input.duplicate();
+                    region.limit(to).position(from);
+                    byte[] data = worker.buffer(to - from);
+                    region.get(data, 0, to - from);
+                    return parseLines(data, 0, to - from, from, worker.url, handler, aborted);
+                }
+                catch (RuntimeException | Error e) {
+                    aborted.set(true);
+                    throw e;
+                }
+                finally {
+                    workers.offer(worker);
+                }
+            }));
+
+            chunkStart = chunkEnd;
+        }
+
+        return joinAll(tasks);
+    }
+
+    /**
+     * @return the position just after the first newline at or after {@code from}, or {@code size} if there is none
+     */
+    private static long nextLineStart(FileChannel channel, long from, long size, ByteBuffer scan) throws IOException {
+        if (from >= size) {
+            return size;
+        }
+
+        // A chunk that already ends just after a newline needs no extension
+        long position = from - 1;
+
+        while (position < size) {
+            scan.clear();
+            int read = channel.read(scan, position);
+            if (read <= 0) {
+                return size;
+            }
+            for (int i = 0; i < read; i++) {
+                if (scan.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+
+        return size;
+    }
+
+    /**
+     * Fill a buffer from a file position; a single positional read may return less than requested.
+     */
+    private static void read(FileChannel channel, ByteBuffer target, long position) throws IOException {
+        while (target.hasRemaining()) {
+            int read = channel.read(target, position);
+            if (read < 0) {
+                throw new IOException("File truncated while parsing at offset " + position + ".");
+            }
+            position += read;
+        }
+    }
+
+    /**
+     * Tokenize the lines of {@code data[from, to)}, stopping early once another chunk has failed.
+     *
+     * @param offsetBase file offset corresponding to index 0 of {@code data}
+     */
+    private static long parseLines(byte[] data, int from, int to, long offsetBase, RawUrl url, Handler handler, AtomicBoolean aborted) {
+        long count = 0;
+        int lineStart = from;
+
+        while (lineStart < to && !aborted.get()) {
+            int lineEnd = lineStart;
+            while (lineEnd < to && data[lineEnd] != '\n') {
+                lineEnd++;
+            }
+
+            int start = lineStart;
+            int end = lineEnd;
+            while (start < end && isTrimmable(data[start])) {
+                start++;
+            }
+            while (end > start && isTrimmable(data[end - 1])) {
+                end--;
+            }
+
+            if (start < end && data[start] != '#') {
+                long offset = offsetBase + start;
+                boolean parsed = false;
+
+                try {
+                    url.reset(data, start, end);
+                    parsed = true;
+                }
+                catch (UrlBuilder.NonParsableUrl e) {
+                    handler.onError(offset, e);
+                }
+
+                if (parsed) {
+                    handler.onUrl(offset, url);
+                    count++;
+                }
+            }
+
+            lineStart = lineEnd + 1;
+        }
+
+        return count;
+    }
+
+    private static boolean isTrimmable(byte b) {
+        return b == ' ' || b == '\t' || b == '\r';
+    }
+
+    private static Worker acquire(Queue<Worker> workers) {
+        Worker worker = workers.poll();
+        return worker != null ? worker : new Worker();
+    }
+
+    /**
+     * Wait for every task, even after one fails, so that no task is still reading when the input is released.
+     * Tasks see the abort flag set by the failing task and finish without parsing further lines.
+     */
+    private static long joinAll(List<ForkJoinTask<Long>> tasks) {
+        long total = 0;
+        RuntimeException failure = null;
+
+        for (ForkJoinTask<Long> task : tasks) {
+            try {
+                total += task.join();
+            }
+            catch (RuntimeException e) {
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+        }
+
+        if (failure != null) {
+            throw failure;
+        }
+
+        return total;
+    }
+
+    /**
+     * Per-worker state recycled between chunks of a single parse.
+     */
+    private static class Worker {
+        final RawUrl url = new RawUrl();
+
+        private byte[] buffer = new byte[0];
+
+        byte[] buffer(int length) {
+            if (buffer.length < length) {
+                buffer = new byte[length];
+            }
+            return buffer;
+        }
+    }
+
+    /**
+     * Receives the result of each line. Implementations must be thread-safe.
+     */
+    public interface Handler {
+        /**
+         * Called for each line that parsed successfully.
+         *
+         * @param offset byte offset of the URL within the input
+         * @param url view over the line; only valid until this method returns
+         */
+        void onUrl(long offset, RawUrl url);
+
+        /**
+         * Called for each non-blank line that could not be parsed. Ignores the line by default;
+         * throw from this method to abort the whole parse: workers stop at their next line, skip chunks they have
+         * not started, and the first exception is rethrown once they have all finished. Lines already delivered
+         * by other workers are not undone.
+         *
+         * @param offset byte offset of the line within the input
+         * @param e the parse failure
+         */
+        default void onError(long offset, UrlBuilder.NonParsableUrl e) {
+        }
+    }
+}
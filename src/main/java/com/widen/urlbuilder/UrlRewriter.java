@@ -0,0 +1,536 @@
+package com.widen.urlbuilder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Rewrites URLs in bulk by applying scheme, host, path prefix and query parameter rules while copying every
+ * untouched span of the input verbatim.
+ * <p>
+ * Unlike a round trip through {@link UrlBuilder#UrlBuilder(String)} and {@link UrlBuilder#toString()}, nothing is
+ * decoded and re-encoded: a URL is split into spans by offset, and only the spans matched by a rule are replaced.
+ * Escapes, parameter order, ports, user info and fragments are preserved byte for byte.
+ * <p>
+ * <b>Typical usage:</b>
+ * <pre>
+ * UrlRewriter rewriter = new UrlRewriter()
+ *     .replaceScheme("http", "https")
+ *     .replaceHost("my-bucket.s3.amazonaws.com", "d1234.cloudfront.net")
+ *     .replacePathPrefix("/legacy/assets", "/assets")
+ *     .removeParameter("AWSAccessKeyId", "Signature", "Expires");
+ *
+ * rewriter.rewrite("http://my-bucket.s3.amazonaws.com/legacy/assets/cat.jpg?Expires=1&amp;w=100");
+ * // produces: https://d1234.cloudfront.net/assets/cat.jpg?w=100
+ *
+ * rewriter.rewrite(reader, writer); // one URL per line, streamed with bounded memory
+ * </pre>
+ * <p>
+ * Rules are matched in the order they were added; the first matching host and path prefix rule wins.
+ * Input that is not an absolute, protocol relative, or {@code /}-rooted URL is copied through unchanged.
+ * A configured rewriter holds no per-call state and may be shared between threads.
+ *
+ * @see RawUrl
+ * @since 3.0.0
+ */
+public class UrlRewriter {
+
+    private static final int DEFAULT_MAX_LINE_LENGTH = 64 * 1024;
+
+    private static final PathSegmentEncoder PATH_ENCODER = new PathSegmentEncoder();
+
+    private static final QueryParameterEncoder QUERY_ENCODER = new QueryParameterEncoder();
+
+    private String schemeFrom;
+
+    private String schemeTo;
+
+    private final List<String[]> hosts = new ArrayList<>();
+
+    private final List<String[]> pathPrefixes = new ArrayList<>();
+
+    private final List<byte[]> removedParameters = new ArrayList<>();
+
+    private final StringBuilder addedParameters = new StringBuilder();
+
+    private int maxLineLength = DEFAULT_MAX_LINE_LENGTH;
+
+    /**
+     * Replace the scheme of URLs using {@code from} (compared case-insensitively), e.g. {@code "http"} to {@code "https"}.
+     *
+     * @param from scheme to match
+     * @param to replacement scheme
+     * @return this rewriter for method chaining
+     */
+    public UrlRewriter replaceScheme(String from, String to) {
+        InternalUtils.checkNotBlank(from, "from");
+        InternalUtils.checkNotBlank(to, "to");
+        this.schemeFrom = from;
+        this.schemeTo = to;
+        return this;
+    }
+
+    /**
+     * Replace a hostname (compared case-insensitively). The port, if any, is kept.
+     *
+     * @param from hostname to match
+     * @param to replacement hostname; must be ASCII (use the punycode form of international names)
+     * @return this rewriter for method chaining
+     */
+    public UrlRewriter replaceHost(String from, String to) {
+        InternalUtils.checkNotBlank(from, "from");
+        InternalUtils.checkNotBlank(to, "to");
+        checkAscii(to, "to");
+        hosts.add(new String[] {from, to});
+        return this;
+    }
+
+    /**
+     * Replace a leading portion of the path. Prefixes match whole segments only, so {@code /img} matches
+     * {@code /img/a.jpg} but not {@code /images/a.jpg}.
+     * <p>
+     * Both values are given unencoded and are encoded with {@link PathSegmentEncoder} segment by segment.
+     *
+     * @param from path prefix to match, e.g. {@code "/legacy/assets"}
+     * @param to replacement prefix, e.g. {@code "/assets"}; may be {@code "/"} to strip the prefix
+     * @return this rewriter for method chaining
+     * @throws IllegalArgumentException if from is blank
+     */
+    public UrlRewriter replacePathPrefix(String from, String to) {
+        InternalUtils.checkNotBlank(from, "from");
+        InternalUtils.checkNotNull(to, "to");
+        pathPrefixes.add(new String[] {encodePath(from), encodePath(to)});
+        return this;
+    }
+
+    /**
+     * Remove query parameters by (decoded) key. Every occurrence of the key is removed.
+     *
+     * @param keys parameter keys to remove
+     * @return this rewriter for method chaining
+     */
+    public UrlRewriter removeParameter(String... keys) {
+        for (String key : keys) {
+            InternalUtils.checkNotNull(key, "key");
+            removedParameters.add(key.getBytes(StandardCharsets.UTF_8));
+        }
+        return this;
+    }
+
+    /**
+     * Append a query parameter to every rewritten URL, after any existing parameters.
+     *
+     * @param key unencoded parameter key
+     * @param value toString() result will be added as the value, encoded with {@link QueryParameterEncoder}
+     * @return this rewriter for method chaining
+     */
+    public UrlRewriter addParameter(String key, Object value) {
+        InternalUtils.checkNotBlank(key, "key");
+        if (addedParameters.length() > 0) {
+            addedParameters.append('&');
+        }
+        addedParameters.append(QUERY_ENCODER.encode(key));
+        String text = value != null ? value.toString() : null;
+        if (StringUtilsInternal.isNotBlank(text)) {
+            addedParameters.append('=').append(QUERY_ENCODER.encode(text));
+        }
+        return this;
+    }
+
+    /**
+     * Set the longest line the streaming methods will buffer. Longer lines are copied through unchanged so memory
+     * use stays bounded. Defaults to 64K characters.
+     *
+     * @param chars maximum line length in characters
+     * @return this rewriter for method chaining
+     */
+    public UrlRewriter withMaxLineLength(int chars) {
+        if (chars <= 0) {
+            throw new IllegalArgumentException("maxLineLength must be positive.");
+        }
+        this.maxLineLength = chars;
+        return this;
+    }
+
+    /**
+     * Rewrite a single URL.
+     *
+     * @param url the URL to rewrite
+     * @return the rewritten URL, or the same {@code url} instance if no rule applied
+     */
+    public String rewrite(String url) {
+        InternalUtils.checkNotNull(url, "url");
+        StringBuilder out = new StringBuilder(url.length() + addedParameters.length() + 16);
+        return rewrite(url, 0, url.length(), out) ? out.toString() : url;
+    }
+
+    /**
+     * Rewrite a stream of newline-delimited URLs. Line terminators are preserved.
+     *
+     * @param in source of URLs, one per line
+     * @param out destination; is not flushed or closed
+     * @return the number of lines that were changed
+     * @throws IOException if reading or writing fails
+     */
+    public long rewrite(Reader in, Writer out) throws IOException {
+        char[] buffer = new char[8192];
+        StringBuilder line = new StringBuilder(256);
+        StringBuilder rewritten = new StringBuilder(256);
+        boolean overflow = false;
+        long changed = 0;
+
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            int spanStart = 0;
+
+            for (int i = 0; i < read; i++) {
+                if (buffer[i] != '\n') {
+                    continue;
+                }
+
+                if (overflow) {
+                    out.write(buffer, spanStart, i + 1 - spanStart);
+                    overflow = false;
+                }
+                else {
+                    line.append(buffer, spanStart, i - spanStart);
+                    if (rewriteLine(line, rewritten, out)) {
+                        changed++;
+                    }
+                    out.write('\n');
+                }
+                spanStart = i + 1;
+            }
+
+            if (overflow) {
+                out.write(buffer, spanStart, read - spanStart);
+            }
+            else {
+                line.append(buffer, spanStart, read - spanStart);
+                if (line.length() > maxLineLength) {
+                    out.append(line);
+                    line.setLength(0);
+                    overflow = true;
+                }
+            }
+        }
+
+        if (!overflow && line.length() > 0 && rewriteLine(line, rewritten, out)) {
+            changed++;
+        }
+
+        return changed;
+    }
+
+    /**
+     * Rewrite a stream of newline-delimited URLs held as bytes. Bytes are mapped one-to-one onto characters
+     * (ISO-8859-1), so every byte outside a replaced span, valid UTF-8 or not, is copied exactly.
+     *
+     * @param in source of URLs, one per line
+     * @param out destination; is flushed but not closed
+     * @return the number of lines that were changed
+     * @throws IOException if reading or writing fails
+     */
+    public long rewrite(InputStream in, OutputStream out) throws IOException {
+        Writer writer = new OutputStreamWriter(out, StandardCharsets.ISO_8859_1);
+        long changed = rewrite(new InputStreamReader(in, StandardCharsets.ISO_8859_1), writer);
+        writer.flush();
+        return changed;
+    }
+
+    private boolean rewriteLine(StringBuilder line, StringBuilder rewritten, Writer out) throws IOException {
+        int end = line.length();
+        int trailer = end > 0 && line.charAt(end - 1) == '\r' ? 1 : 0;
+
+        rewritten.setLength(0);
+        boolean changed = rewrite(line, 0, end - trailer, rewritten);
+
+        if (changed) {
+            out.append(rewritten);
+            if (trailer > 0) {
+                out.write('\r');
+            }
+        }
+        else {
+            out.append(line);
+        }
+
+        line.setLength(0);
+        return changed;
+    }
+
+    /**
+     * Split {@code url[start, end)} into spans and append the rewritten URL to {@code out}.
+     *
+     * @return true if any rule changed the URL; when false the contents of {@code out} are unspecified
+     */
+    boolean rewrite(CharSequence url, int start, int end, StringBuilder out) {
+        if (start == end) {
+            return false;
+        }
+
+        boolean changed = false;
+        int i = start;
+
+        // Scheme
+        int schemeEnd = -1;
+        if (isAlpha(url.charAt(i))) {
+            int j = i + 1;
+            while (j < end && isSchemeChar(url.charAt(j))) {
+                j++;
+            }
+            if (j + 2 < end && url.charAt(j) == ':' && url.charAt(j + 1) == '/' && url.charAt(j + 2) == '/') {
+                schemeEnd = j;
+            }
+        }
+
+        if (schemeEnd >= 0) {
+            if (schemeFrom != null && regionEqualsIgnoreCase(url, start, schemeEnd, schemeFrom)) {
+                out.append(schemeTo);
+                changed = !schemeTo.contentEquals(url.subSequence(start, schemeEnd));
+            }
+            else {
+                out.append(url, start, schemeEnd);
+            }
+            out.append(':');
+            i = schemeEnd + 1;
+        }
+
+        // Authority
+        if (i + 1 < end && url.charAt(i) == '/' && url.charAt(i + 1) == '/') {
+            out.append("//");
+            i += 2;
+
+            int authorityEnd = i;
+            while (authorityEnd < end && !isAuthorityTerminator(url.charAt(authorityEnd))) {
+                authorityEnd++;
+            }
+
+            int hostStart = i;
+            for (int j = i; j < authorityEnd; j++) {
+                if (url.charAt(j) == '@') {
+                    hostStart = j + 1;
+                }
+            }
+
+            int hostEnd = authorityEnd;
+            if (hostStart < authorityEnd && url.charAt(hostStart) == '[') {
+                int close = PercentCodec.indexOf(url, ']', hostStart, authorityEnd);
+                hostEnd = close < 0 ? authorityEnd : close + 1;
+            }
+            else {
+                int colon = PercentCodec.indexOf(url, ':', hostStart, authorityEnd);
+                hostEnd = colon < 0 ? authorityEnd : colon;
+            }
+
+            out.append(url, i, hostStart);
+
+            String replacement = null;
+            for (String[] host : hosts) {
+                if (regionEqualsIgnoreCase(url, hostStart, hostEnd, host[0])) {
+                    replacement = host[1];
+                    break;
+                }
+            }
+
+            if (replacement != null) {
+                out.append(replacement);
+                changed |= !replacement.contentEquals(url.subSequence(hostStart, hostEnd));
+            }
+            else {
+                out.append(url, hostStart, hostEnd);
+            }
+
+            out.append(url, hostEnd, authorityEnd);
+            i = authorityEnd;
+        }
+        else if (schemeEnd >= 0 || url.charAt(i) != '/') {
+            return false;
+        }
+
+        // Path
+        int pathEnd = i;
+        while (pathEnd < end && url.charAt(pathEnd) != '?' && url.charAt(pathEnd) != '#') {
+            pathEnd++;
+        }
+
+        boolean prefixReplaced = false;
+        for (String[] prefix : pathPrefixes) {
+            if (pathPrefixMatches(url, i, pathEnd, prefix[0])) {
+                int rest = i + prefix[0].length();
+
+                out.append(prefix[1]);
+                if (rest == pathEnd && prefix[1].isEmpty()) {
+                    out.append('/');
+                }
+                out.append(url, rest, pathEnd);
+
+                changed |= !prefix[0].equals(prefix[1]);
+                prefixReplaced = true;
+                break;
+            }
+        }
+        if (!prefixReplaced) {
+            out.append(url, i, pathEnd);
+        }
+        i = pathEnd;
+
+        // Query
+        int queryEnd = i;
+        if (i < end && url.charAt(i) == '?') {
+            queryEnd = PercentCodec.indexOf(url, '#', i, end);
+            if (queryEnd < 0) {
+                queryEnd = end;
+            }
+        }
+
+        if (removedParameters.isEmpty() && addedParameters.length() == 0) {
+            out.append(url, i, queryEnd);
+        }
+        else {
+            changed |= rewriteQuery(url, i == queryEnd ? i : i + 1, queryEnd, i < queryEnd, out);
+        }
+
+        // Fragment
+        out.append(url, queryEnd, end);
+
+        return changed;
+    }
+
+    private boolean rewriteQuery(CharSequence url, int start, int end, boolean hadQuery, StringBuilder out) {
+        int mark = out.length();
+        boolean removed = false;
+        boolean first = true;
+
+        out.append('?');
+
+        int pairStart = start;
+        for (int i = start; i <= end; i++) {
+            if (i < end && url.charAt(i) != '&') {
+                continue;
+            }
+
+            if (isRemoved(url, pairStart, i)) {
+                removed = true;
+            }
+            else if (i > pairStart) {
+                if (!first) {
+                    out.append('&');
+                }
+                out.append(url, pairStart, i);
+                first = false;
+            }
+            pairStart = i + 1;
+        }
+
+        if (!removed && addedParameters.length() == 0) {
+            // Nothing to change; restore the original span exactly, including empty pairs
+            out.setLength(mark);
+            if (hadQuery) {
+                out.append('?').append(url, start, end);
+            }
+            return false;
+        }
+
+        if (addedParameters.length() > 0) {
+            if (!first) {
+                out.append('&');
+            }
+            out.append(addedParameters);
+            first = false;
+        }
+
+        if (first) {
+            out.setLength(mark);
+        }
+
+        return true;
+    }
+
+    private boolean isRemoved(CharSequence url, int pairStart, int pairEnd) {
+        if (pairStart == pairEnd || removedParameters.isEmpty()) {
+            return false;
+        }
+
+        int keyEnd = PercentCodec.indexOf(url, '=', pairStart, pairEnd);
+        if (keyEnd < 0) {
+            keyEnd = pairEnd;
+        }
+
+        for (byte[] key : removedParameters) {
+            if (PercentCodec.decodedEquals(url, pairStart, keyEnd, key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean pathPrefixMatches(CharSequence url, int pathStart, int pathEnd, String prefix) {
+        int length = prefix.length();
+        if (pathEnd - pathStart < length) {
+            return false;
+        }
+        for (int k = 0; k < length; k++) {
+            if (url.charAt(pathStart + k) != prefix.charAt(k)) {
+                return false;
+            }
+        }
+        return pathEnd - pathStart == length || url.charAt(pathStart + length) == '/';
+    }
+
+    /**
+     * Encode a path prefix as {@code /seg1/seg2}, without a trailing slash; the root path becomes the empty string.
+     */
+    private static String encodePath(String path) {
+        StringBuilder encoded = new StringBuilder(path.length() + 8);
+
+        for (String segment : path.split("/")) {
+            if (!segment.isEmpty()) {
+                encoded.append('/').append(PATH_ENCODER.encode(segment));
+            }
+        }
+
+        return encoded.toString();
+    }
+
+    private static boolean regionEqualsIgnoreCase(CharSequence text, int start, int end, String expected) {
+        if (end - start != expected.length()) {
+            return false;
+        }
+        for (int k = 0; k < expected.length(); k++) {
+            char a = text.charAt(start + k);
+            char b = expected.charAt(k);
+            if (a != b && Character.toLowerCase(a) != Character.toLowerCase(b)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void checkAscii(String s, String var) {
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) >= 0x80) {
+                throw new IllegalArgumentException(var + " must be ASCII.");
+            }
+        }
+    }
+
+    private static boolean isAuthorityTerminator(char c) {
+        return c == '/' || c == '?' || c == '#';
+    }
+
+    private static boolean isAlpha(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static boolean isSchemeChar(char c) {
+        return isAlpha(c) || (c >= '0' && c <= '9') || c == '+' || c == '-' || c == '.';
+    }
+}
@@ -0,0 +1,175 @@
+package com.widen.urlbuilder;
+
+/**
+ * Lenient, single-pass repair of user-supplied URLs.
+ * <p>
+ * Real-world input often mixes valid percent-escapes with raw spaces, non-ASCII characters and stray {@code %}
+ * signs, which {@link UrlBuilder#UrlBuilder(String)} cannot parse and which a full decode/re-encode would alter.
+ * The sanitizer walks the string once and only escapes characters that are illegal in the component they appear in:
+ * <ul>
+ *   <li>valid {@code %XX} triplets are kept as they are; a {@code %} not followed by two hex digits becomes {@code %25}</li>
+ *   <li>delimiters that structure the URL ({@code : / ? # [ ] @}) and sub-delimiters are kept where RFC 3986 allows them</li>
+ *   <li>everything else (spaces, quotes, {@code < > \ ^ ` { | }}, control and non-ASCII characters) is
+ *       percent-encoded as UTF-8</li>
+ * </ul>
+ * <p>
+ * The safe characters of each component come from the {@link PathSegmentEncoder} table ({@code pchar}),
+ * extended with {@code /} for paths, {@code / ?} for the query and fragment, and {@code [ ]} for the authority.
+ * <p>
+ * <b>Typical usage:</b>
+ * <pre>
+ * UrlSanitizer.sanitize("https://example.com/my file%20(1).pdf?q=50% off&amp;x=caf&eacute;")
+ * // produces: https://example.com/my%20file%20(1).pdf?q=50%25%20off&amp;x=caf%C3%A9
+ * </pre>
+ *
+ * @see PathSegmentEncoder
+ * @see QueryParameterEncoder
+ * @see <a href="https://www.rfc-editor.org/rfc/rfc3986#section-3">RFC 3986 Section 3</a>
+ * @since 3.0.0
+ */
+public class UrlSanitizer {
+
+    private static final boolean[] AUTHORITY = extend(PathSegmentEncoder.SAFE, "[]");
+
+    private static final boolean[] PATH = extend(PathSegmentEncoder.SAFE, "/");
+
+    private static final boolean[] QUERY = extend(PathSegmentEncoder.SAFE, "/?");
+
+    private static final int AUTHORITY_PART = 1;
+
+    private static final int PATH_PART = 2;
+
+    private static final int QUERY_PART = 3;
+
+    private static final int FRAGMENT_PART = 4;
+
+    /**
+     * Escape the characters of a URL that are illegal in their component, leaving everything else untouched.
+     * Leading and trailing whitespace is removed.
+     *
+     * @param url absolute or relative URL; may be null
+     * @return the sanitized URL, the same {@code url} instance if nothing needed changing, or null if {@code url} is null
+     */
+    public static String sanitize(String url) {
+        if (url == null) {
+            return null;
+        }
+
+        String text = url.trim();
+        int length = text.length();
+        StringBuilder out = null;
+
+        int i = schemeLength(text);
+        int part = PATH_PART;
+
+        if (i > 0 && i + 1 < length && text.charAt(i) == '/' && text.charAt(i + 1) == '/') {
+            i += 2;
+            part = AUTHORITY_PART;
+        }
+        else if (i == 0 && length > 1 && text.charAt(0) == '/' && text.charAt(1) == '/') {
+            i = 2;
+            part = AUTHORITY_PART;
+        }
+
+        while (i < length) {
+            char c = text.charAt(i);
+            int next = part;
+
+            if (c == '#' && part != FRAGMENT_PART) {
+                next = FRAGMENT_PART;
+            }
+            else if (c == '?' && part < QUERY_PART) {
+                next = QUERY_PART;
+            }
+            else if (c == '/' && part == AUTHORITY_PART) {
+                next = PATH_PART;
+            }
+
+            if (next != part || (c == '%' && isEscape(text, i, length))) {
+                int width = next != part ? 1 : 3;
+                if (out != null) {
+                    out.append(text, i, i + width);
+                }
+                part = next;
+                i += width;
+                continue;
+            }
+
+            if (c < 128 && allowed(part)[c]) {
+                if (out != null) {
+                    out.append(c);
+                }
+                i++;
+                continue;
+            }
+
+            if (out == null) {
+                out = new StringBuilder(length + 16);
+                out.append(text, 0, i);
+            }
+
+            if (c < 128) {
+                PercentCodec.appendEscaped(out, c);
+                i++;
+            }
+            else {
+                i += PercentCodec.appendEscapedUtf8(out, text, i, length);
+            }
+        }
+
+        if (out != null) {
+            return out.toString();
+        }
+        return text.length() == url.length() ? url : text;
+    }
+
+    /**
+     * @return the length of a leading {@code scheme:} (including the colon), or 0 if there is none
+     */
+    private static int schemeLength(String text) {
+        if (text.isEmpty() || !isAlpha(text.charAt(0))) {
+            return 0;
+        }
+
+        for (int i = 1; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == ':') {
+                return i + 1;
+            }
+            if (!isAlpha(c) && !(c >= '0' && c <= '9') && c != '+' && c != '-' && c != '.') {
+                return 0;
+            }
+        }
+
+        return 0;
+    }
+
+    private static boolean[] allowed(int part) {
+        switch (part) {
+            case AUTHORITY_PART:
+                return AUTHORITY;
+            case PATH_PART:
+                return PATH;
+            default:
+                return QUERY;
+        }
+    }
+
+    private static boolean isEscape(String text, int i, int length) {
+        return i + 2 < length
+            && PercentCodec.hexValue(text.charAt(i + 1)) >= 0
+            && PercentCodec.hexValue(text.charAt(i + 2)) >= 0;
+    }
+
+    private static boolean isAlpha(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static boolean[] extend(boolean[] table, String chars) {
+        boolean[] extended = table.clone();
+        for (int i = 0; i < chars.length(); i++) {
+            extended[chars.charAt(i)] = true;
+        }
+        return extended;
+    }
+}
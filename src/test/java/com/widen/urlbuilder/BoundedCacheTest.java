@@ -0,0 +1,101 @@
+package com.widen.urlbuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests for the bounded, least-recently-used cache of derived values.
+ */
+class BoundedCacheTest {
+
+    @Test
+    void computesEachKeyOnce() {
+        BoundedCache<String, String> cache = new BoundedCache<>(4);
+        AtomicInteger computed = new AtomicInteger();
+
+        String first = cache.get("a", k -> k + computed.incrementAndGet());
+        String again = cache.get("a", k -> k + computed.incrementAndGet());
+
+        assertSame(first, again);
+        assertEquals(1, computed.get());
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedEntry() {
+        BoundedCache<String, String> cache = new BoundedCache<>(2);
+        AtomicInteger computed = new AtomicInteger();
+
+        cache.get("a", k -> k + computed.incrementAndGet());
+        cache.get("b", k -> k + computed.incrementAndGet());
+        cache.get("a", k -> k + computed.incrementAndGet());
+        cache.get("c", k -> k + computed.incrementAndGet());
+
+        assertEquals(2, cache.size());
+        assertEquals("a1", cache.get("a", k -> k + computed.incrementAndGet()));
+        assertEquals("b4", cache.get("b", k -> k + computed.incrementAndGet()));
+    }
+
+    @Test
+    void failuresAreNotCached() {
+        BoundedCache<String, String> cache = new BoundedCache<>(2);
+
+        assertThrows(IllegalStateException.class, () -> cache.get("a", k -> {
+            throw new IllegalStateException("bad");
+        }));
+
+        assertEquals(0, cache.size());
+        assertEquals("ok", cache.get("a", k -> "ok"));
+    }
+
+    @Test
+    void concurrentMissesComputeOnce() throws Exception {
+        BoundedCache<String, String> cache = new BoundedCache<>(2);
+        AtomicInteger computed = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    return cache.get("key", k -> {
+                        computed.incrementAndGet();
+                        try {
+                            Thread.sleep(50);
+                        }
+                        catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        return "value";
+                    });
+                }));
+            }
+            start.countDown();
+
+            for (Future<String> result : results) {
+                assertEquals("value", result.get());
+            }
+            assertEquals(1, computed.get());
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void rejectsEmptyCapacity() {
+        assertThrows(IllegalArgumentException.class, () -> new BoundedCache<String, String>(0));
+    }
+}
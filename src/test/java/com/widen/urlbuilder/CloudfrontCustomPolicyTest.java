@@ -0,0 +1,146 @@
+package com.widen.urlbuilder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.Signature;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Base64;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CloudfrontCustomPolicyTest
+{
+
+    private static final String KEY_PAIR_ID = "APKAIW7O5EPF5UBMJ7KQ";
+
+    private String pem;
+
+    private CloudfrontUrlBuilder.TrustedSignerCredentials credentials;
+
+    @BeforeEach
+    void setup() throws IOException
+    {
+        pem = IOUtils.toString(getClass().getResourceAsStream("/test-cf.pem"));
+        credentials = new CloudfrontUrlBuilder.TrustedSignerCredentials(KEY_PAIR_ID, CloudfrontPrivateKeyUtils.fromPemString(pem), "SunRsaSign");
+    }
+
+    private static Map<String, String> query(String url)
+    {
+        Map<String, String> params = new HashMap<String, String>();
+        for (String pair : url.substring(url.indexOf('?') + 1).split("&"))
+        {
+            int eq = pair.indexOf('=');
+            params.put(pair.substring(0, eq), pair.substring(eq + 1));
+        }
+        return params;
+    }
+
+    private static byte[] cloudfrontDecode(String value)
+    {
+        return Base64.getDecoder().decode(value.replace("-", "+").replace("_", "=").replace("~", "/"));
+    }
+
+    @Test
+    void rendersPolicyStatement()
+    {
+        CloudfrontCustomPolicy policy = CloudfrontCustomPolicy.builder("https://d111111abcdef8.cloudfront.net/gallery/42/*")
+            .activeFrom(new Date(1381350000123L))
+            .fromIpAddress("192.0.2.0/24")
+            .build();
+
+        assertEquals("{\"Statement\":[{\"Resource\":\"https://d111111abcdef8.cloudfront.net/gallery/42/*\","
+            + "\"Condition\":{\"DateLessThan\":{\"AWS:EpochTime\":1381356586},"
+            + "\"DateGreaterThan\":{\"AWS:EpochTime\":1381350000},"
+            + "\"IpAddress\":{\"AWS:SourceIp\":\"192.0.2.0/24\"}}}]}", policy.toJson(1381356586L));
+        assertEquals("{\"Statement\":[{\"Resource\":\"*\",\"Condition\":{\"DateLessThan\":{\"AWS:EpochTime\":5}}}]}",
+            CloudfrontCustomPolicy.builder("*").build().toJson(5));
+        assertNull(CloudfrontCustomPolicy.builder("*").build().getActiveFrom());
+    }
+
+    @Test
+    void matchesWildcards()
+    {
+        CloudfrontCustomPolicy policy = CloudfrontCustomPolicy.builder("https://d111111abcdef8.cloudfront.net/gallery/*/?.jpg*").build();
+
+        assertTrue(policy.matches("https://d111111abcdef8.cloudfront.net/gallery/42/1.jpg"));
+        assertTrue(policy.matches("https://d111111abcdef8.cloudfront.net/gallery/a/b/c.jpg?response-content-type=image%2Fjpeg"));
+        assertFalse(policy.matches("https://d111111abcdef8.cloudfront.net/gallery/42/10.png"));
+        assertFalse(policy.matches("http://d111111abcdef8.cloudfront.net/gallery/42/1.jpg"));
+    }
+
+    @Test
+    void signsVerifiablePolicy() throws Exception
+    {
+        CloudfrontCustomPolicy policy = CloudfrontCustomPolicy.builder("http://dnnfhn216qiqy.cloudfront.net/gallery/*").build();
+
+        String url = new CloudfrontUrlBuilder("dnnfhn216qiqy.cloudfront.net", "/gallery/1.jpeg", credentials)
+            .withCustomPolicy(policy)
+            .expireAt(new Date(1381356586000L))
+            .toString();
+
+        assertTrue(url.startsWith("http://dnnfhn216qiqy.cloudfront.net/gallery/1.jpeg?Policy="));
+        assertFalse(url.contains("Expires="));
+
+        Map<String, String> params = query(url);
+        byte[] json = cloudfrontDecode(params.get("Policy"));
+        assertEquals(policy.toJson(1381356586L), new String(json, StandardCharsets.UTF_8));
+        assertEquals(KEY_PAIR_ID, params.get("Key-Pair-Id"));
+
+        Signature verifier = Signature.getInstance("SHA1WithRSA");
+        verifier.initVerify(CloudfrontPrivateKeyUtils.publicKeyFromPemString(pem));
+        verifier.update(json);
+        assertTrue(verifier.verify(cloudfrontDecode(params.get("Signature"))));
+    }
+
+    @Test
+    void reusesSignatureAcrossUrlsInWindow()
+    {
+        CloudfrontCustomPolicy policy = CloudfrontCustomPolicy.builder("https://dnnfhn216qiqy.cloudfront.net/gallery/*").build();
+        // One second into a 15-minute window
+        Clock start = Clock.fixed(Instant.ofEpochSecond(1381355101L), ZoneOffset.UTC);
+
+        CloudfrontUrlBuilder builder = new CloudfrontUrlBuilder("dnnfhn216qiqy.cloudfront.net", "/gallery/1.jpeg", credentials)
+            .withSsl()
+            .withCustomPolicy(policy)
+            .withExpiryPolicy(ExpiryPolicy.alignedTo(15, TimeUnit.MINUTES))
+            .usingClock(start)
+            .expireIn(1, TimeUnit.HOURS);
+
+        Map<String, String> first = query(builder.toString());
+        Map<String, String> second = query(builder.withKey("/gallery/2.jpeg").usingClock(Clock.offset(start, Duration.ofMinutes(5))).toString());
+
+        assertEquals(first, second);
+        assertSame(credentials.signPolicy(policy.toJson(1381359600L)), credentials.signPolicy(policy.toJson(1381359600L)));
+
+        Map<String, String> nextWindow = query(builder.usingClock(Clock.offset(start, Duration.ofMinutes(16))).toString());
+        assertNotEquals(first.get("Policy"), nextWindow.get("Policy"));
+    }
+
+    @Test
+    void rejectsUrlOutsideResource()
+    {
+        CloudfrontUrlBuilder builder = new CloudfrontUrlBuilder("dnnfhn216qiqy.cloudfront.net", "/private/1.jpeg", credentials)
+            .withCustomPolicy(CloudfrontCustomPolicy.builder("http://dnnfhn216qiqy.cloudfront.net/gallery/*").build())
+            .expireAt(new Date(1381356586000L));
+
+        assertThrows(IllegalStateException.class, builder::toString);
+        assertThrows(IllegalArgumentException.class, () -> CloudfrontCustomPolicy.builder(" "));
+    }
+}
@@ -0,0 +1,115 @@
+package com.widen.urlbuilder;
+
+import java.io.IOException;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.interfaces.ECPrivateKey;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Date;
+import java.util.Map;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CloudfrontSignatureAlgorithmTest
+{
+
+    private static final String KEY_PAIR_ID = "K2JCJMDEHXQW5F";
+
+    private PrivateKey rsa;
+
+    private PrivateKey ec;
+
+    private SignedUrlVerifier verifier;
+
+    @BeforeEach
+    void setup() throws IOException
+    {
+        String rsaPem = IOUtils.toString(getClass().getResourceAsStream("/test-cf.pem"));
+        rsa = CloudfrontPrivateKeyUtils.fromPemString(rsaPem);
+        ec = CloudfrontPrivateKeyUtils.fromPemString(IOUtils.toString(getClass().getResourceAsStream("/test-cf-ec.pem")));
+
+        PublicKey ecPublic = CloudfrontPrivateKeyUtils.publicKeyFromPemString(IOUtils.toString(getClass().getResourceAsStream("/test-cf-ec-public.pem")));
+        verifier = SignedUrlVerifier.builder()
+            .withCloudfrontKey("APKAIW7O5EPF5UBMJ7KQ", CloudfrontPrivateKeyUtils.publicKeyFromPemString(rsaPem))
+            .withCloudfrontKey(KEY_PAIR_ID, ecPublic)
+            .usingClock(Clock.fixed(Instant.ofEpochSecond(1381356000L), ZoneOffset.UTC))
+            .build();
+    }
+
+    @Test
+    void loadsEcKeysInEveryForm() throws IOException
+    {
+        PrivateKey pkcs8 = CloudfrontPrivateKeyUtils.fromPemString(IOUtils.toString(getClass().getResourceAsStream("/test-cf-ec-pkcs8.pem")));
+        PrivateKey der = CloudfrontPrivateKeyUtils.fromDerBinary(getClass().getResourceAsStream("/test-cf-ec.der"));
+
+        assertEquals("EC", ec.getAlgorithm());
+        assertEquals(((ECPrivateKey) ec).getS(), ((ECPrivateKey) pkcs8).getS());
+        assertEquals(((ECPrivateKey) ec).getS(), ((ECPrivateKey) der).getS());
+    }
+
+    @Test
+    void defaultsFollowKeyType()
+    {
+        assertEquals(CloudfrontSignatureAlgorithm.RSA_SHA1, CloudfrontSignatureAlgorithm.defaultFor(rsa));
+        assertEquals(CloudfrontSignatureAlgorithm.ECDSA_SHA256, CloudfrontSignatureAlgorithm.defaultFor(ec));
+        assertEquals(CloudfrontSignatureAlgorithm.RSA_SHA256, CloudfrontSignatureAlgorithm.of(rsa, "SHA256"));
+        assertEquals(null, CloudfrontSignatureAlgorithm.of(ec, "SHA1"));
+        assertThrows(IllegalArgumentException.class, () -> CloudfrontSignatureAlgorithm.defaultFor(null));
+    }
+
+    @Test
+    void rsaSha1OmitsHashAlgorithm()
+    {
+        String url = new CloudfrontUrlBuilder("dnnfhn216qiqy.cloudfront.net", "/0/b/c/d/test.jpeg", "APKAIW7O5EPF5UBMJ7KQ", rsa).expireAt(new Date(1381356586000L)).toString();
+
+        assertFalse(url.contains("Hash-Algorithm"));
+        assertEquals(SignedUrlVerifier.Verdict.VALID, verifier.verify(url));
+    }
+
+    @Test
+    void rsaSha256NamesHashAlgorithm()
+    {
+        String url = new CloudfrontUrlBuilder("dnnfhn216qiqy.cloudfront.net", "/0/b/c/d/test.jpeg", "APKAIW7O5EPF5UBMJ7KQ", rsa, CloudfrontSignatureAlgorithm.RSA_SHA256)
+            .expireAt(new Date(1381356586000L))
+            .toString();
+
+        assertTrue(url.endsWith("&Key-Pair-Id=APKAIW7O5EPF5UBMJ7KQ&Hash-Algorithm=SHA256"));
+        assertEquals(SignedUrlVerifier.Verdict.VALID, verifier.verify(url));
+        assertEquals(SignedUrlVerifier.Verdict.INVALID_SIGNATURE, verifier.verify(url.replace("&Hash-Algorithm=SHA256", "")));
+    }
+
+    @Test
+    void ecdsaSignsVerifiableUrls()
+    {
+        CloudfrontUrlBuilder builder = new CloudfrontUrlBuilder("dnnfhn216qiqy.cloudfront.net", "/0/b/c/d/test.jpeg", KEY_PAIR_ID, ec)
+            .withAttachmentFilename("test.jpg")
+            .expireAt(new Date(1381356586000L));
+
+        String url = builder.toString();
+
+        assertTrue(url.endsWith("&Key-Pair-Id=K2JCJMDEHXQW5F&Hash-Algorithm=SHA256"));
+        assertEquals(SignedUrlVerifier.Verdict.VALID, verifier.verify(url));
+        assertEquals(SignedUrlVerifier.Verdict.UNSUPPORTED, verifier.verify(url.replace("Hash-Algorithm=SHA256", "Hash-Algorithm=SHA1")));
+    }
+
+    @Test
+    void cookiesNameHashAlgorithm()
+    {
+        CloudfrontUrlBuilder.TrustedSignerCredentials credentials = new CloudfrontUrlBuilder.TrustedSignerCredentials(KEY_PAIR_ID, ec, null);
+        Map<String, String> cookies = CloudfrontSignedCookies.builder(credentials, CloudfrontCustomPolicy.builder("*").build())
+            .build()
+            .cookies(new Date(1381356586000L));
+
+        assertEquals(CloudfrontSignatureAlgorithm.ECDSA_SHA256, credentials.getAlgorithm());
+        assertEquals("SHA256", cookies.get(CloudfrontSignedCookies.HASH_ALGORITHM));
+    }
+}
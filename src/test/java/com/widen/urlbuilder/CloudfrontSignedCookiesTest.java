@@ -0,0 +1,89 @@
+package com.widen.urlbuilder;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class CloudfrontSignedCookiesTest
+{
+
+    private CloudfrontUrlBuilder.TrustedSignerCredentials credentials;
+
+    private CloudfrontCustomPolicy policy;
+
+    @BeforeEach
+    void setup() throws IOException
+    {
+        String pem = IOUtils.toString(getClass().getResourceAsStream("/test-cf.pem"));
+        credentials = new CloudfrontUrlBuilder.TrustedSignerCredentials("APKAIW7O5EPF5UBMJ7KQ", CloudfrontPrivateKeyUtils.fromPemString(pem), "SunRsaSign");
+        policy = CloudfrontCustomPolicy.builder("https://media.example.com/*").build();
+    }
+
+    @Test
+    void cookiesMatchUrlPolicy()
+    {
+        CloudfrontSignedCookies cookies = CloudfrontSignedCookies.builder(credentials, policy).build();
+
+        Map<String, String> values = cookies.cookies(new Date(1381356586000L));
+        CloudfrontUrlBuilder.SignedPolicy signed = credentials.signPolicy(policy.toJson(1381356586L));
+
+        assertEquals(Arrays.asList("CloudFront-Policy", "CloudFront-Signature", "CloudFront-Key-Pair-Id"), Arrays.asList(values.keySet().toArray()));
+        assertEquals(signed.policy, values.get("CloudFront-Policy"));
+        assertEquals(signed.signature, values.get("CloudFront-Signature"));
+        assertEquals("APKAIW7O5EPF5UBMJ7KQ", values.get("CloudFront-Key-Pair-Id"));
+    }
+
+    @Test
+    void rendersSetCookieHeaders()
+    {
+        CloudfrontSignedCookies cookies = CloudfrontSignedCookies.builder(credentials, policy)
+            .withDomain("media.example.com")
+            .withPath("/assets")
+            .withSameSite("Lax")
+            .usingClock(Clock.fixed(Instant.ofEpochSecond(1381355101L), ZoneOffset.UTC))
+            .withExpiryPolicy(ExpiryPolicy.alignedTo(15, TimeUnit.MINUTES))
+            .build();
+
+        List<String> headers = cookies.setCookieHeaders(1, TimeUnit.HOURS);
+        Map<String, String> values = cookies.cookies(new Date(1381359600000L));
+        String attributes = "; Domain=media.example.com; Path=/assets; Expires=Wed, 09 Oct 2013 23:00:00 GMT; Secure; HttpOnly; SameSite=Lax";
+
+        assertEquals(Arrays.asList(
+            "CloudFront-Policy=" + values.get("CloudFront-Policy") + attributes,
+            "CloudFront-Signature=" + values.get("CloudFront-Signature") + attributes,
+            "CloudFront-Key-Pair-Id=APKAIW7O5EPF5UBMJ7KQ" + attributes), headers);
+    }
+
+    @Test
+    void omitsDisabledAttributes()
+    {
+        CloudfrontSignedCookies cookies = CloudfrontSignedCookies.builder(credentials, policy)
+            .usingSecure(false)
+            .usingHttpOnly(false)
+            .build();
+
+        assertEquals("CloudFront-Key-Pair-Id=APKAIW7O5EPF5UBMJ7KQ; Path=/; Expires=Wed, 09 Oct 2013 22:09:46 GMT",
+            cookies.setCookieHeaders(new Date(1381356586000L)).get(2));
+    }
+
+    @Test
+    void rejectsInvalidArguments()
+    {
+        assertThrows(IllegalArgumentException.class, () -> CloudfrontSignedCookies.builder(null, policy));
+        assertThrows(IllegalArgumentException.class, () -> CloudfrontSignedCookies.builder(credentials, null));
+        assertThrows(IllegalArgumentException.class, () -> CloudfrontSignedCookies.builder(credentials, policy).withDomain(""));
+    }
+}
@@ -2,13 +2,28 @@ package com.widen.urlbuilder;
 
 import java.io.IOException;
 import java.security.PrivateKey;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Base64;
 import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.io.IOUtils;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class CloudfrontUrlBuilderTest
 {
@@ -45,4 +60,100 @@ class CloudfrontUrlBuilderTest
         assertEquals("http://dnnfhn216qiqy.cloudfront.net/0/b/c/d/test.jpeg?response-content-disposition=attachment%3B%20filename%3D%22%2Boo.jpg%22%3B%20filename%2A%3DUTF-8%27%27%252B%25C6%2592oo.jpg&Expires=1381356586&Signature=XpZvVljTm8RzudHPB8xxgVdiJ~GEgEZ-mJr-d40XaHvHJLlX-iU949TIa6EF3J7KMYXNF8nD~DM6lYZ9qlQH0Pjamj05DC3tKXqSIH89wGN3iDtUP9eCqUeAayCZQDNIeNPHJxU9TS1fNS4HRkW4sQMjM1FfNwPTMvaaCKixJJpweszNe~ii24rE~CB6DZDEVOL5206eba9jZZELjIJA6GNSIAqO8Hi88bB8X9GC7Bd2vdGABtkXYqHrs78BNoqcZFXLsNj9ehjElkDLDNxtbL-~sZqNsi6me6r0kKh1XNRCE83BcirZXRO1NTAscEcnVvB9THyaHoehE9F2cI9SEA__&Key-Pair-Id=APKAIW7O5EPF5UBMJ7KQ", builder.toString());
     }
 
+    @Test
+    void expiryPolicyIssuesIdenticalUrlsWithinWindow()
+    {
+        Clock start = Clock.fixed(Instant.ofEpochSecond(1381356000L), ZoneOffset.UTC);
+        CloudfrontUrlBuilder builder = new CloudfrontUrlBuilder("dnnfhn216qiqy.cloudfront.net", "/0/b/c/d/test.jpeg", "APKAIW7O5EPF5UBMJ7KQ", pem)
+            .expireIn(1, TimeUnit.HOURS)
+            .withExpiryPolicy(ExpiryPolicy.alignedTo(1, TimeUnit.HOURS))
+            .usingClock(Clock.offset(start, Duration.ofSeconds(1)));
+
+        String url = builder.toString();
+
+        assertTrue(url.contains("?Expires=1381363200&"));
+        assertEquals(url, builder.usingClock(Clock.offset(start, Duration.ofMinutes(59))).toString());
+    }
+
+    @Test
+    void sharedCredentialsSignConcurrently() throws Exception
+    {
+        CloudfrontUrlBuilder.TrustedSignerCredentials credentials = new CloudfrontUrlBuilder.TrustedSignerCredentials("APKAIW7O5EPF5UBMJ7KQ", pem, "SunRsaSign");
+
+        int threads = 8;
+        int keys = 64;
+        List<String> expected = new ArrayList<String>();
+        for (int i = 0; i < keys; i++)
+        {
+            expected.add(new CloudfrontUrlBuilder("dnnfhn216qiqy.cloudfront.net", "/stress/" + i + ".jpeg", "APKAIW7O5EPF5UBMJ7KQ", pem).expireAt(new Date(1381356586000L)).toString());
+        }
+        assertNotEquals(expected.get(0), expected.get(1));
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try
+        {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<List<String>>> results = new ArrayList<Future<List<String>>>();
+            for (int t = 0; t < threads; t++)
+            {
+                int offset = t;
+                results.add(executor.submit(() -> {
+                    start.await();
+                    List<String> urls = new ArrayList<String>();
+                    for (int round = 0; round < 4; round++)
+                    {
+                        for (int i = 0; i < keys; i++)
+                        {
+                            int k = (i + offset) % keys;
+                            urls.add(k + " " + new CloudfrontUrlBuilder("dnnfhn216qiqy.cloudfront.net", "/stress/" + k + ".jpeg", credentials).expireAt(new Date(1381356586000L)));
+                        }
+                    }
+                    return urls;
+                }));
+            }
+            start.countDown();
+
+            for (Future<List<String>> result : results)
+            {
+                for (String url : result.get(1, TimeUnit.MINUTES))
+                {
+                    int space = url.indexOf(' ');
+                    assertEquals(expected.get(Integer.parseInt(url.substring(0, space))), url.substring(space + 1));
+                }
+            }
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+
+        assertTrue(credentials.idleSigners() >= 1);
+        assertTrue(credentials.idleSigners() <= CloudfrontUrlBuilder.TrustedSignerCredentials.MAX_IDLE_SIGNERS);
+    }
+
+    @Test
+    void encodesCloudfrontBase64Directly()
+    {
+        Random random = new Random(42);
+        for (int length = 0; length < 64; length++)
+        {
+            byte[] bytes = new byte[length];
+            random.nextBytes(bytes);
+            assertEquals(Base64.getEncoder().encodeToString(bytes).replace("+", "-").replace("=", "_").replace("/", "~"), CloudfrontUrlBuilder.cloudfrontSafeBase64(bytes));
+        }
+    }
+
+    @Test
+    void changesAfterRenderingInvalidateResource()
+    {
+        CloudfrontUrlBuilder builder = new CloudfrontUrlBuilder("dnnfhn216qiqy.cloudfront.net", "/0/b/c/d/test.jpeg", "APKAIW7O5EPF5UBMJ7KQ", pem).expireAt(new Date(1381356586000L));
+        String plain = builder.toString();
+
+        assertEquals(plain, builder.toString());
+        assertTrue(plain.startsWith("http://dnnfhn216qiqy.cloudfront.net/0/b/c/d/test.jpeg?Expires=1381356586&Signature="));
+
+        String withParameter = builder.addParameter("size", "large").withSsl().toString();
+        assertTrue(withParameter.startsWith("https://dnnfhn216qiqy.cloudfront.net/0/b/c/d/test.jpeg?size=large&Expires=1381356586&Signature="));
+        assertEquals(withParameter, new CloudfrontUrlBuilder("dnnfhn216qiqy.cloudfront.net", "/0/b/c/d/test.jpeg", "APKAIW7O5EPF5UBMJ7KQ", der, "BC").addParameter("size", "large").withSsl().expireAt(new Date(1381356586000L)).toString());
+    }
 }
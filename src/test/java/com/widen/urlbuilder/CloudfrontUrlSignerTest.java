@@ -0,0 +1,171 @@
+package com.widen.urlbuilder;
+
+import java.io.IOException;
+import java.security.PrivateKey;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CloudfrontUrlSignerTest
+{
+
+    private static final String HOSTNAME = "dnnfhn216qiqy.cloudfront.net";
+
+    private static final String KEY_PAIR_ID = "APKAIW7O5EPF5UBMJ7KQ";
+
+    private static final Date EXPIRES = new Date(1381356586000L);
+
+    private PrivateKey pem;
+
+    private CloudfrontUrlBuilder.TrustedSignerCredentials credentials;
+
+    @BeforeEach
+    void setup() throws IOException
+    {
+        pem = CloudfrontPrivateKeyUtils.fromPemString(IOUtils.toString(getClass().getResourceAsStream("/test-cf.pem")));
+        credentials = new CloudfrontUrlBuilder.TrustedSignerCredentials(KEY_PAIR_ID, pem, "SunRsaSign");
+    }
+
+    private List<String> keys(int count)
+    {
+        List<String> keys = new ArrayList<String>();
+        for (int i = 0; i < count; i++)
+        {
+            keys.add("/hls/720p/segment-" + i + ".ts");
+        }
+        return keys;
+    }
+
+    private String expected(String key)
+    {
+        return new CloudfrontUrlBuilder(HOSTNAME, key, KEY_PAIR_ID, pem).withSsl().addParameter("rendition", "720p").expireAt(EXPIRES).toString();
+    }
+
+    @Test
+    void signMatchesBuilder()
+    {
+        CloudfrontUrlSigner signer = CloudfrontUrlSigner.builder(HOSTNAME, credentials).build();
+
+        String url = signer.sign("/0/b/c/d/test.jpeg", EXPIRES, CloudfrontUrlSigner.Options.NONE.withAttachmentFilename("test.jpg").withContentType("image/jpeg"));
+
+        assertEquals(new CloudfrontUrlBuilder(HOSTNAME, "/0/b/c/d/test.jpeg", KEY_PAIR_ID, pem).withAttachmentFilename("test.jpg").withContentType("image/jpeg").expireAt(EXPIRES).toString(), url);
+    }
+
+    @Test
+    void signForDurationWithOptions()
+    {
+        CloudfrontUrlSigner signer = CloudfrontUrlSigner.builder(HOSTNAME, credentials)
+            .usingClock(Clock.fixed(Instant.ofEpochMilli(EXPIRES.getTime() - 3_600_000L), ZoneOffset.UTC))
+            .build();
+        CloudfrontUrlSigner.Options options = CloudfrontUrlSigner.Options.NONE.withContentType("image/jpeg").withParameter("size", "large");
+
+        assertEquals(signer.sign("/0/b/c/d/test.jpeg", EXPIRES, options), signer.sign("/0/b/c/d/test.jpeg", 1, TimeUnit.HOURS, options));
+        assertThrows(IllegalArgumentException.class, () -> signer.sign("/0/b/c/d/test.jpeg", 1, TimeUnit.HOURS, null));
+    }
+
+    @Test
+    void parameterValueIsRequired()
+    {
+        assertThrows(NullPointerException.class, () -> CloudfrontUrlSigner.Options.NONE.withParameter("size", null));
+    }
+
+    @Test
+    void signAllPreservesOrderAcrossWorkers()
+    {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try
+        {
+            CloudfrontUrlSigner signer = CloudfrontUrlSigner.builder(HOSTNAME, credentials)
+                .usingSsl()
+                .usingExecutor(executor)
+                .withParallelism(4)
+                .build();
+
+            List<String> keys = keys(5 * CloudfrontUrlSigner.BATCH_CHUNK_SIZE + 7);
+            List<String> urls = signer.signAll(keys, EXPIRES, key -> CloudfrontUrlSigner.Options.NONE.withParameter("rendition", "720p"));
+
+            assertEquals(keys.size(), urls.size());
+            for (int i = 0; i < keys.size(); i++)
+            {
+                assertEquals(expected(keys.get(i)), urls.get(i));
+            }
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void signAllAsyncCompletesOnExecutor() throws Exception
+    {
+        AtomicInteger submitted = new AtomicInteger();
+        CloudfrontUrlSigner signer = CloudfrontUrlSigner.builder(HOSTNAME, credentials)
+            .usingSsl()
+            .usingExecutor(task -> {
+                submitted.incrementAndGet();
+                new Thread(task).start();
+            })
+            .withParallelism(3)
+            .build();
+
+        List<String> keys = keys(3 * CloudfrontUrlSigner.BATCH_CHUNK_SIZE);
+        CompletableFuture<List<String>> future = signer.signAllAsync(keys, EXPIRES, key -> CloudfrontUrlSigner.Options.NONE.withParameter("rendition", "720p"));
+
+        List<String> urls = future.get(1, TimeUnit.MINUTES);
+        assertEquals(3, submitted.get());
+        assertEquals(expected(keys.get(0)), urls.get(0));
+        assertEquals(expected(keys.get(keys.size() - 1)), urls.get(keys.size() - 1));
+        assertEquals(Collections.<String>emptyList(), signer.signAllAsync(Collections.<String>emptyList(), EXPIRES, key -> CloudfrontUrlSigner.Options.NONE).get());
+    }
+
+    @Test
+    void smallBatchesStayOnCallingThread()
+    {
+        CloudfrontUrlSigner signer = CloudfrontUrlSigner.builder(HOSTNAME, credentials)
+            .usingExecutor(task -> {
+                throw new AssertionError("small batches are not submitted");
+            })
+            .build();
+
+        List<String> urls = signer.signAll(Stream.of("/a.jpg", "/b.jpg"), EXPIRES, key -> CloudfrontUrlSigner.Options.NONE);
+
+        assertEquals(new CloudfrontUrlBuilder(HOSTNAME, "/b.jpg", KEY_PAIR_ID, pem).expireAt(EXPIRES).toString(), urls.get(1));
+    }
+
+    @Test
+    void failuresPropagate()
+    {
+        CloudfrontUrlSigner signer = CloudfrontUrlSigner.builder(HOSTNAME, credentials).withParallelism(2).build();
+        List<String> keys = keys(3 * CloudfrontUrlSigner.BATCH_CHUNK_SIZE);
+        keys.set(keys.size() - 1, null);
+
+        assertThrows(IllegalArgumentException.class, () -> signer.signAll(keys, EXPIRES));
+        ExecutionException failure = assertThrows(ExecutionException.class, () -> signer.signAllAsync(keys, EXPIRES, key -> CloudfrontUrlSigner.Options.NONE).get());
+        assertTrue(failure.getCause() instanceof IllegalArgumentException);
+
+        assertThrows(IllegalArgumentException.class, () -> CloudfrontUrlSigner.builder(HOSTNAME, credentials).withParallelism(0));
+        assertThrows(IllegalArgumentException.class, () -> CloudfrontUrlSigner.builder(" ", credentials));
+        assertThrows(IllegalArgumentException.class, () -> signer.signAll(Arrays.asList("/a.jpg"), null));
+    }
+}
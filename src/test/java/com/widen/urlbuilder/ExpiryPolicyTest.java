@@ -0,0 +1,48 @@
+package com.widen.urlbuilder;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ExpiryPolicyTest {
+
+    private static final long may24 = 1369353600L;
+
+    @Test
+    void exactPolicyAddsDuration() {
+        assertEquals(may24 + 3600, ExpiryPolicy.EXACT.expiresAt(may24 * 1000, 3600_000));
+        assertEquals(may24 + 1, ExpiryPolicy.EXACT.expiresAt(may24 * 1000 + 999, 1));
+        assertEquals(may24, ExpiryPolicy.EXACT.signedAt(may24 * 1000 + 999));
+    }
+
+    @Test
+    void alignedPolicyRoundsUpToNextBoundary() {
+        ExpiryPolicy policy = ExpiryPolicy.alignedTo(15, TimeUnit.MINUTES);
+
+        assertEquals(may24 + 3600, policy.expiresAt(may24 * 1000, 3600_000));
+        assertEquals(may24 + 4500, policy.expiresAt(may24 * 1000 + 1000, 3600_000));
+        assertEquals(may24 + 4500, policy.expiresAt((may24 + 899) * 1000, 3600_000));
+        assertEquals(may24 + 900, policy.signedAt((may24 + 1799) * 1000 + 999));
+    }
+
+    @Test
+    void minimumTtlExtendsShortDurations() {
+        ExpiryPolicy policy = ExpiryPolicy.alignedTo(15, TimeUnit.MINUTES).withMinimumTtl(1, TimeUnit.HOURS);
+
+        assertEquals(may24 + 4500, policy.expiresAt(may24 * 1000 + 1000, 60_000));
+        assertEquals(may24 + 2 * 3600, policy.expiresAt(may24 * 1000, 2 * 3600_000));
+        assertEquals(900, policy.getWindowSeconds());
+        assertEquals(3600, policy.getMinimumTtlSeconds());
+        assertEquals(ExpiryPolicy.alignedTo(900, TimeUnit.SECONDS).withMinimumTtl(60, TimeUnit.MINUTES), policy);
+    }
+
+    @Test
+    void rejectsInvalidArguments() {
+        assertThrows(IllegalArgumentException.class, () -> ExpiryPolicy.alignedTo(999, TimeUnit.MILLISECONDS));
+        assertThrows(IllegalArgumentException.class, () -> ExpiryPolicy.alignedTo(1, null));
+        assertThrows(IllegalArgumentException.class, () -> ExpiryPolicy.EXACT.withMinimumTtl(-1, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,146 @@
+package com.widen.urlbuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * Tests for reusable, pre-initialized HMAC keys.
+ */
+class HmacKeyTest {
+
+    private static byte[] utf8(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void matchesRfc2202TestVector() {
+        HmacKey key = new HmacKey("HmacSHA1", utf8("Jefe"));
+
+        byte[] signature = key.sign(utf8("what do ya want for nothing?"));
+
+        assertEquals("7/zfauXrL6LSdBbV8YTfnCWafHk=", Base64.getEncoder().encodeToString(signature));
+    }
+
+    @Test
+    void reusedMacsStartFromCleanState() {
+        HmacKey key = new HmacKey("HmacSHA1", utf8("secret"));
+
+        byte[] first = key.sign(utf8("GET\n\n\n1522540800\n/bucket/key"));
+        key.sign(utf8("something else"));
+        byte[] again = key.sign(utf8("GET\n\n\n1522540800\n/bucket/key"));
+
+        assertArrayEquals(first, again);
+    }
+
+    @Test
+    void sessionsOpenedWhileTheFirstIsInUseSignAlike() {
+        HmacKey key = new HmacKey("HmacSHA1", utf8("secret"));
+        byte[] expected = key.sign(utf8("payload"));
+
+        HmacKey.Session first = key.acquire();
+        first.append("pay");
+        HmacKey.Session second = key.acquire();
+        try {
+            assertArrayEquals(expected, second.append("payload").finish());
+            assertArrayEquals(expected, first.append("load").finish());
+        }
+        finally {
+            key.release(second);
+            key.release(first);
+        }
+    }
+
+    @Test
+    void secretIsEncodedAsUtf8() throws Exception {
+        Mac mac = Mac.getInstance("HmacSHA1");
+        mac.init(new SecretKeySpec(utf8("sëcret/ø"), "HmacSHA1"));
+
+        assertArrayEquals(mac.doFinal(utf8("data")), HmacKey.hmacSha1("sëcret/ø").sign(utf8("data")));
+    }
+
+    @Test
+    void sha1KeyIsDerivedOncePerCredentials() {
+        S3Credentials credentials = new S3Credentials("AKIDEXAMPLE", "shared");
+
+        assertSame(credentials.signingKey(), credentials.signingKey());
+    }
+
+    @Test
+    void concurrentSigningProducesConsistentResults() throws Exception {
+        HmacKey key = new HmacKey("HmacSHA1", utf8("secret"));
+        byte[] expected = key.sign(utf8("payload"));
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                results.add(executor.submit(() -> {
+                    for (int i = 0; i < 2000; i++) {
+                        if (!Arrays.equals(expected, key.sign(utf8("payload")))) {
+                            return false;
+                        }
+                    }
+                    return true;
+                }));
+            }
+            for (Future<Boolean> result : results) {
+                assertEquals(true, result.get());
+            }
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void sessionStreamsUtf8TextIntoMac() {
+        HmacKey key = new HmacKey("HmacSHA1", utf8("secret"));
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            text.append("ключ/😀/").append(i);
+        }
+
+        HmacKey.Session session = key.acquire();
+        byte[] streamed;
+        try {
+            streamed = session.append("GET\n").append(1522540800L).append('\n').append(text).finish().clone();
+        }
+        finally {
+            key.release(session);
+        }
+
+        assertArrayEquals(key.sign(utf8("GET\n1522540800\n" + text)), streamed);
+    }
+
+    @Test
+    void releasedSessionDiscardsUnfinishedInput() {
+        HmacKey key = new HmacKey("HmacSHA1", utf8("secret"));
+        HmacKey.Session session = key.acquire();
+        session.append("partial");
+        key.release(session);
+
+        assertArrayEquals(new HmacKey("HmacSHA1", utf8("secret")).sign(utf8("data")), key.sign(utf8("data")));
+        session = key.acquire();
+        try {
+            assertArrayEquals(key.sign(utf8("data")), session.append("data").finish());
+        }
+        finally {
+            key.release(session);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.widen.urlbuilder;
+
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for the chunked batch runner shared by the signers.
+ */
+class ParallelBatchTest {
+
+    @Test
+    void coversEveryIndexOnce() {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            AtomicIntegerArray seen = new AtomicIntegerArray(1003);
+            new ParallelBatch(seen.length(), 10, (from, to) -> {
+                for (int i = from; i < to; i++) {
+                    seen.incrementAndGet(i);
+                }
+            }).run(executor, 4);
+
+            for (int i = 0; i < seen.length(); i++) {
+                assertEquals(1, seen.get(i));
+            }
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void singleChunkRunsOnCallingThread() {
+        Thread caller = Thread.currentThread();
+        new ParallelBatch(5, 10, (from, to) -> assertEquals(caller, Thread.currentThread())).run(task -> {
+            throw new AssertionError("single chunks are not submitted");
+        }, 4);
+    }
+
+    @Test
+    void submitsNoMoreWorkersThanParallelism() {
+        AtomicInteger submitted = new AtomicInteger();
+        new ParallelBatch(100, 1, (from, to) -> { }).run(task -> {
+            submitted.incrementAndGet();
+            task.run();
+        }, 3);
+
+        assertEquals(2, submitted.get());
+    }
+
+    @Test
+    void failureStopsRemainingChunks() {
+        AtomicInteger ran = new AtomicInteger();
+        ParallelBatch batch = new ParallelBatch(100, 1, (from, to) -> {
+            ran.incrementAndGet();
+            throw new IllegalArgumentException("bad");
+        });
+
+        assertThrows(IllegalArgumentException.class, () -> batch.run(Runnable::run, 1));
+        assertEquals(1, ran.get());
+    }
+
+    @Test
+    void callerFailureWaitsForWorkers() {
+        Thread caller = Thread.currentThread();
+        CountDownLatch claimed = new CountDownLatch(1);
+        AtomicBoolean workerDone = new AtomicBoolean();
+        ParallelBatch batch = new ParallelBatch(2, 1, (from, to) -> {
+            if (Thread.currentThread() == caller) {
+                throw new IllegalArgumentException("bad");
+            }
+            claimed.countDown();
+            try {
+                Thread.sleep(100);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            workerDone.set(true);
+        });
+
+        // the worker claims the first chunk before the calling thread starts on the second
+        assertThrows(IllegalArgumentException.class, () -> batch.run(task -> {
+            new Thread(task).start();
+            try {
+                claimed.await();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, 2));
+        assertTrue(workerDone.get());
+    }
+
+    @Test
+    void runAsyncCompletesExceptionally() {
+        ParallelBatch batch = new ParallelBatch(100, 1, (from, to) -> {
+            throw new IllegalStateException("bad");
+        });
+
+        CompletionException failure = assertThrows(CompletionException.class, () -> batch.runAsync(Runnable::run, 2).join());
+        assertTrue(failure.getCause() instanceof IllegalStateException);
+    }
+}
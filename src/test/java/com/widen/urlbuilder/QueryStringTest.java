@@ -0,0 +1,189 @@
+package com.widen.urlbuilder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for the lazily decoded QueryString view.
+ */
+class QueryStringTest {
+
+    @ParameterizedTest
+    @ValueSource(strings = {"", "?", "&", "&&&"})
+    void emptyInputHasNoParameters(String input) {
+        QueryString query = QueryString.parse(input);
+
+        assertTrue(query.isEmpty());
+        assertEquals(0, query.size());
+        assertNull(query.get("a"));
+    }
+
+    @Test
+    void nullInputHasNoParameters() {
+        assertTrue(QueryString.parse(null).isEmpty());
+    }
+
+    @Test
+    void indexesKeysAndValuesInOrder() {
+        QueryString query = QueryString.parse("a=1&b=2&c=3");
+
+        assertEquals(3, query.size());
+        assertEquals("a", query.getKey(0));
+        assertEquals("1", query.getValue(0));
+        assertEquals("c", query.getKey(2));
+        assertEquals("3", query.getValue(2));
+    }
+
+    @Test
+    void stripsLeadingQuestionMark() {
+        QueryString query = QueryString.parse("?a=1");
+
+        assertEquals("a", query.getKey(0));
+        assertEquals("1", query.get("a"));
+    }
+
+    @Test
+    void skipsEmptyPairs() {
+        QueryString query = QueryString.parse("&a=1&&b=2&");
+
+        assertEquals(2, query.size());
+        assertEquals("b", query.getKey(1));
+    }
+
+    @Test
+    void keyWithoutEqualsHasEmptyValue() {
+        QueryString query = QueryString.parse("a&b=");
+
+        assertEquals("", query.get("a"));
+        assertEquals("", query.get("b"));
+        assertEquals("", query.getRawValue(0));
+    }
+
+    @Test
+    void onlyFirstEqualsSeparatesKeyFromValue() {
+        QueryString query = QueryString.parse("a=b=c");
+
+        assertEquals("a", query.getKey(0));
+        assertEquals("b=c", query.getValue(0));
+    }
+
+    @Test
+    void decodesLazilyAndKeepsRawForm() {
+        QueryString query = QueryString.parse("a%20b=c%20d&e=%E4%B8%AD");
+
+        assertEquals("a%20b", query.getRawKey(0));
+        assertEquals("c%20d", query.getRawValue(0));
+        assertEquals("a b", query.getKey(0));
+        assertEquals("c d", query.getValue(0));
+        assertEquals("中", query.get("e"));
+    }
+
+    @Test
+    void getMatchesEncodedKeys() {
+        QueryString query = QueryString.parse("x=0&a%26b=1&%C3%A9=2");
+
+        assertEquals("1", query.get("a&b"));
+        assertEquals("2", query.get("é"));
+        assertNull(query.get("a%26b"));
+        assertNull(query.get("a"));
+    }
+
+    @Test
+    void getMatchesRawNonAsciiKeys() {
+        QueryString query = QueryString.parse("été=summer&😀=smile");
+
+        assertEquals("summer", query.get("été"));
+        assertEquals("smile", query.get("😀"));
+    }
+
+    @Test
+    void getReturnsFirstValueAndGetAllReturnsEvery() {
+        QueryString query = QueryString.parse("c=3&a=x&c=4&a");
+
+        assertEquals("3", query.get("c"));
+        assertEquals(Arrays.asList("3", "4"), query.getAll("c"));
+        assertEquals(Arrays.asList("x", ""), query.getAll("a"));
+        assertEquals(Collections.emptyList(), query.getAll("z"));
+    }
+
+    @Test
+    void keyEqualsComparesDecodedForm() {
+        QueryString query = QueryString.parse("a%2Bb=1");
+
+        assertTrue(query.keyEquals(0, "a+b"));
+        assertFalse(query.keyEquals(0, "a"));
+        assertFalse(query.keyEquals(0, "a+bc"));
+        assertFalse(query.keyEquals(0, null));
+    }
+
+    @Test
+    void containsAndIndexOf() {
+        QueryString query = QueryString.parse("a=1&b=2");
+
+        assertTrue(query.contains("b"));
+        assertFalse(query.contains("c"));
+        assertEquals(1, query.indexOf("b"));
+        assertEquals(-1, query.indexOf("c"));
+    }
+
+    @Test
+    void invalidEscapesPassThrough() {
+        QueryString query = QueryString.parse("a=100%&b=%GG");
+
+        assertEquals("100%", query.get("a"));
+        assertEquals("%GG", query.get("b"));
+    }
+
+    @Test
+    void visitorCanStopEarly() {
+        QueryString query = QueryString.parse("a=1&b=2&c=3");
+        List<String> seen = new ArrayList<>();
+
+        query.forEach((q, i) -> {
+            seen.add(q.getKey(i));
+            return !q.keyEquals(i, "b");
+        });
+
+        assertEquals(Arrays.asList("a", "b"), seen);
+    }
+
+    @Test
+    void toMapMatchesUrlBuilder() {
+        String url = "https://my.host.com/bar?a=x&b=2&c=3&c=4&a&d";
+
+        assertEquals(new UrlBuilder(url).getQueryParameters(), QueryString.parse("a=x&b=2&c=3&c=4&a&d").toMap());
+    }
+
+    @Test
+    void indexOutOfRangeThrows() {
+        QueryString query = QueryString.parse("a=1");
+
+        assertThrows(IndexOutOfBoundsException.class, () -> query.getKey(1));
+        assertThrows(IndexOutOfBoundsException.class, () -> query.getValue(-1));
+    }
+
+    @Test
+    void growsBeyondInitialCapacity() {
+        StringBuilder raw = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            raw.append("k").append(i).append("=v").append(i).append('&');
+        }
+
+        QueryString query = QueryString.parse(raw.toString());
+
+        assertEquals(100, query.size());
+        assertEquals("v99", query.get("k99"));
+    }
+}
@@ -0,0 +1,254 @@
+package com.widen.urlbuilder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RefreshingS3CredentialsProviderTest {
+
+    private static final Clock clock = Clock.fixed(Instant.ofEpochSecond(1369353600L), ZoneOffset.UTC);
+
+    private static final Date expireAt = new Date(clock.millis() + 3600_000);
+
+    private static S3Credentials credentials(int n) {
+        return new S3Credentials("AKIA" + n, "secret" + n, "token" + n, null);
+    }
+
+    private static void awaitUntil(java.util.function.BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+
+    @Test
+    void refreshesAheadOfExpiration() {
+        AtomicReference<S3Credentials> next = new AtomicReference<>(credentials(1));
+
+        try (RefreshingS3CredentialsProvider provider = RefreshingS3CredentialsProvider.builder(next::get)
+            .refreshAhead(5, TimeUnit.MINUTES)
+            .refreshEvery(1, TimeUnit.HOURS)
+            .retryAfter(30, TimeUnit.SECONDS)
+            .usingClock(clock)
+            .build()) {
+
+            Date inTwoHours = new Date(clock.millis() + TimeUnit.HOURS.toMillis(2));
+            Date inThirtyMinutes = new Date(clock.millis() + TimeUnit.MINUTES.toMillis(30));
+            Date inOneMinute = new Date(clock.millis() + TimeUnit.MINUTES.toMillis(1));
+
+            assertEquals(TimeUnit.HOURS.toMillis(1), provider.delayFor(credentials(1)));
+            assertEquals(TimeUnit.HOURS.toMillis(1), provider.delayFor(new S3Credentials("a", "b", "c", inTwoHours)));
+            assertEquals(TimeUnit.MINUTES.toMillis(25), provider.delayFor(new S3Credentials("a", "b", "c", inThirtyMinutes)));
+            assertEquals(TimeUnit.SECONDS.toMillis(30), provider.delayFor(new S3Credentials("a", "b", "c", inOneMinute)));
+        }
+    }
+
+    @Test
+    void rotatesInBackground() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+
+        try (RefreshingS3CredentialsProvider provider = RefreshingS3CredentialsProvider.builder(() -> credentials(loads.incrementAndGet()))
+            .refreshEvery(10, TimeUnit.MILLISECONDS)
+            .retryAfter(1, TimeUnit.MILLISECONDS)
+            .build()) {
+
+            assertEquals("AKIA1", provider.getCredentials().getAccessKeyId());
+            awaitUntil(() -> loads.get() >= 3);
+            assertNotEquals("AKIA1", provider.getCredentials().getAccessKeyId());
+        }
+    }
+
+    @Test
+    void keepsSnapshotWhenReloadFails() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+
+        try (RefreshingS3CredentialsProvider provider = RefreshingS3CredentialsProvider.builder(() -> {
+                if (loads.incrementAndGet() > 1) {
+                    throw new IllegalStateException("STS unavailable");
+                }
+                return credentials(1);
+            })
+            .refreshEvery(1, TimeUnit.MILLISECONDS)
+            .retryAfter(1, TimeUnit.MILLISECONDS)
+            .build()) {
+
+            awaitUntil(() -> loads.get() >= 3);
+            assertEquals("AKIA1", provider.getCredentials().getAccessKeyId());
+        }
+    }
+
+    @Test
+    void stopsReloadingWhenClosed() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+
+        RefreshingS3CredentialsProvider provider = RefreshingS3CredentialsProvider.builder(() -> credentials(loads.incrementAndGet()))
+            .refreshEvery(1, TimeUnit.MILLISECONDS)
+            .retryAfter(1, TimeUnit.MILLISECONDS)
+            .build();
+        provider.close();
+
+        int afterClose = loads.get();
+        Thread.sleep(50);
+
+        assertTrue(loads.get() <= afterClose + 1);
+        assertEquals("AKIA" + loads.get(), provider.getCredentials().getAccessKeyId());
+    }
+
+    @Test
+    void closeDuringRescheduleCancelsTheNewReload() throws Exception {
+        AtomicReference<RefreshingS3CredentialsProvider> provider = new AtomicReference<>();
+        AtomicReference<Thread> closer = new AtomicReference<>();
+        List<ScheduledFuture<?>> scheduled = new CopyOnWriteArrayList<>();
+        AtomicInteger loads = new AtomicInteger();
+
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1) {
+            @Override
+            public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+                if (loads.get() > 1) {
+                    // close() lands between the closed check and the next reload being published
+                    while (provider.get() == null) {
+                        Thread.yield();
+                    }
+                    Thread thread = new Thread(provider.get()::close);
+                    thread.start();
+                    closer.set(thread);
+                    try {
+                        thread.join(100);
+                    }
+                    catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                ScheduledFuture<?> future = super.schedule(command, delay, unit);
+                scheduled.add(future);
+                return future;
+            }
+        };
+
+        try {
+            // the first snapshot is reloaded right away, the second one an hour later
+            Date soon = new Date(System.currentTimeMillis() + 1);
+            provider.set(RefreshingS3CredentialsProvider.builder(() -> loads.incrementAndGet() == 1 ? new S3Credentials("AKIA1", "secret1", null, soon) : credentials(2))
+                .refreshAhead(0, TimeUnit.MILLISECONDS)
+                .refreshEvery(1, TimeUnit.HOURS)
+                .retryAfter(1, TimeUnit.MILLISECONDS)
+                .usingScheduler(scheduler)
+                .build());
+
+            awaitUntil(() -> closer.get() != null && !closer.get().isAlive());
+
+            assertEquals(2, scheduled.size());
+            assertTrue(scheduled.get(1).isCancelled());
+        }
+        finally {
+            scheduler.shutdownNow();
+        }
+    }
+
+    @Test
+    void derivesSigningKeysBeforePublishing() {
+        AtomicReference<S3Credentials> next = new AtomicReference<>(credentials(1));
+        long now = clock.millis() / 1000;
+
+        try (RefreshingS3CredentialsProvider provider = RefreshingS3CredentialsProvider.builder(next::get)
+            .refreshEvery(1, TimeUnit.HOURS)
+            .usingClock(clock)
+            .build()) {
+
+            SigV4.signingKey(provider.getCredentials(), now, "eu-west-1", "s3");
+
+            S3Credentials rotated = credentials(2);
+            next.set(rotated);
+            assertSame(rotated, provider.refresh());
+
+            assertTrue(rotated.hasSigningKeys(now, "eu-west-1", "s3"));
+        }
+    }
+
+    @Test
+    void failsFastWhenFirstLoadFails() {
+        assertThrows(IllegalStateException.class, () -> RefreshingS3CredentialsProvider.builder(() -> null).build());
+        assertThrows(IllegalArgumentException.class, () -> RefreshingS3CredentialsProvider.builder(null));
+    }
+
+    @Test
+    void buildersSignWithCurrentSnapshot() {
+        AtomicReference<S3Credentials> current = new AtomicReference<>(credentials(1));
+        S3CredentialsProvider provider = current::get;
+
+        S3UrlBuilder builder = new S3UrlBuilder("bucketuno", "foo.jpg").expireAt(expireAt).usingCredentials(provider);
+        S3UrlSigner signer = S3UrlSigner.builder("bucketuno").usingCredentials(provider).usingClock(clock).build();
+
+        assertEquals(new S3UrlBuilder("bucketuno", "foo.jpg").expireAt(expireAt).usingCredentials("AKIA1", "secret1", "token1").toString(), builder.toString());
+        assertEquals(builder.toString(), signer.sign("foo.jpg", expireAt));
+
+        current.set(credentials(2));
+
+        assertEquals(new S3UrlBuilder("bucketuno", "foo.jpg").expireAt(expireAt).usingCredentials("AKIA2", "secret2", "token2").toString(), builder.toString());
+        assertEquals(builder.toString(), signer.sign("foo.jpg", expireAt));
+        assertTrue(signer.signAll(Arrays.asList("a.jpg", "b.jpg"), expireAt).get(1).contains("AWSAccessKeyId=AKIA2"));
+    }
+
+    @Test
+    void readsProfileFile() throws IOException {
+        Path file = Files.createTempFile("credentials", "");
+        try {
+            Files.write(file, ("[default]\n"
+                + "aws_access_key_id = AKIADEFAULT\n"
+                + "aws_secret_access_key = defaultsecret\n"
+                + "\n"
+                + "# temporary\n"
+                + "[rotating]\n"
+                + "aws_access_key_id=ASIAROTATING\n"
+                + "aws_secret_access_key=rotatingsecret\n"
+                + "aws_session_token=tok/en==\n").getBytes(StandardCharsets.UTF_8));
+
+            S3Credentials defaults = S3Credentials.fromProfileFile(file, "default");
+            assertEquals("AKIADEFAULT", defaults.getAccessKeyId());
+            assertEquals("defaultsecret", defaults.getSecretAccessKey());
+            assertNull(defaults.getSessionToken());
+            assertNull(defaults.getExpiration());
+
+            S3Credentials rotating = S3Credentials.fromProfileFile(file, "rotating");
+            assertEquals("ASIAROTATING", rotating.getAccessKeyId());
+            assertEquals("tok/en==", rotating.getSessionToken());
+            assertSame(rotating, rotating.getCredentials());
+
+            assertThrows(IllegalArgumentException.class, () -> S3Credentials.fromProfileFile(file, "missing"));
+        }
+        finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    void snapshotHidesSecrets() {
+        String text = new S3Credentials("AKIA1", "verysecret", "sessiontoken").toString();
+
+        assertTrue(text.contains("AKIA1"));
+        assertTrue(!text.contains("verysecret") && !text.contains("sessiontoken"));
+    }
+}
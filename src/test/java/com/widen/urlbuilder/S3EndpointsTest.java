@@ -0,0 +1,75 @@
+package com.widen.urlbuilder;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class S3EndpointsTest {
+
+    private static final S3UrlBuilder.BucketEncoding DNS = S3UrlBuilder.BucketEncoding.DNS;
+
+    private static final S3UrlBuilder.BucketEncoding PATH = S3UrlBuilder.BucketEncoding.PATH;
+
+    private static final S3UrlBuilder.BucketEncoding VIRTUAL_DNS = S3UrlBuilder.BucketEncoding.VIRTUAL_DNS;
+
+    @Test
+    void serviceEndpoints() {
+        assertEquals("s3.amazonaws.com", S3Endpoints.serviceEndpoint(null, false, false));
+        assertEquals("s3.eu-west-1.amazonaws.com", S3Endpoints.serviceEndpoint("eu-west-1", false, false));
+        assertEquals("s3.cn-north-1.amazonaws.com.cn", S3Endpoints.serviceEndpoint("cn-north-1", false, false));
+        assertEquals("s3.dualstack.us-east-1.amazonaws.com", S3Endpoints.serviceEndpoint(null, true, false));
+        assertEquals("s3.dualstack.eu-west-1.amazonaws.com", S3Endpoints.serviceEndpoint("eu-west-1", true, false));
+        assertEquals("s3-accelerate.amazonaws.com", S3Endpoints.serviceEndpoint("eu-west-1", false, true));
+        assertEquals("s3-accelerate.dualstack.amazonaws.com", S3Endpoints.serviceEndpoint(null, true, true));
+    }
+
+    @Test
+    void resolvesBucketEncodings() {
+        S3Endpoints.Endpoint hostname = S3Endpoints.resolve("bucketuno", null, "eu-west-1", DNS, true, false);
+        assertEquals("bucketuno.s3.dualstack.eu-west-1.amazonaws.com", hostname.hostname);
+        assertFalse(hostname.bucketInPath);
+
+        S3Endpoints.Endpoint path = S3Endpoints.resolve("bucketuno", null, "eu-west-1", PATH, false, false);
+        assertEquals("s3.eu-west-1.amazonaws.com", path.hostname);
+        assertTrue(path.bucketInPath);
+
+        assertEquals("cdn.example.com", S3Endpoints.resolve("cdn.example.com", null, null, VIRTUAL_DNS, false, false).hostname);
+        assertEquals("bucketuno.s3-accelerate.amazonaws.com", S3Endpoints.resolve("bucketuno", null, null, DNS, false, true).hostname);
+    }
+
+    @Test
+    void nonDnsBucketsGoInPath() {
+        S3Endpoints.Endpoint endpoint = S3Endpoints.resolve("Bucket_Uno", null, null, DNS, false, false);
+
+        assertEquals("s3.amazonaws.com", endpoint.hostname);
+        assertTrue(endpoint.bucketInPath);
+    }
+
+    @Test
+    void customEndpointWins() {
+        S3Endpoints.Endpoint endpoint = S3Endpoints.resolve("bucketuno", "minio.local", "eu-west-1", DNS, true, false);
+
+        assertEquals("bucketuno.minio.local", endpoint.hostname);
+    }
+
+    @Test
+    void resolvesOncePerCombination() {
+        S3Endpoints.Endpoint first = S3Endpoints.resolve("bucketuno", null, "us-west-2", DNS, false, false);
+
+        assertSame(first, S3Endpoints.resolve(new String("bucketuno"), null, new String("us-west-2"), DNS, false, false));
+        assertSame(first.hostname, S3Endpoints.resolve("bucketuno", null, "us-west-2", DNS, false, false).hostname);
+    }
+
+    @Test
+    void accelerationRequiresCompatibleBucket() {
+        assertThrows(IllegalStateException.class, () -> S3Endpoints.resolve("bucket.uno", null, null, DNS, false, true));
+        assertThrows(IllegalStateException.class, () -> S3Endpoints.resolve("Bucket_Uno", null, null, DNS, false, true));
+        assertThrows(IllegalStateException.class, () -> S3Endpoints.resolve("bucketuno", null, null, PATH, false, true));
+        assertThrows(IllegalStateException.class, () -> S3Endpoints.resolve("bucketuno", null, null, VIRTUAL_DNS, false, true));
+        assertThrows(IllegalStateException.class, () -> S3Endpoints.resolve("bucketuno", "minio.local", null, DNS, false, true));
+    }
+}
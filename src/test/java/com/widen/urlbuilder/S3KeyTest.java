@@ -0,0 +1,44 @@
+package com.widen.urlbuilder;
+
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class S3KeyTest {
+
+    @Test
+    void rendersEveryFormOnce() {
+        S3Key key = S3Key.of("/photos//cat (1)~+.jpg");
+
+        assertEquals(Arrays.asList("photos", "cat (1)~+.jpg"), key.segments);
+        assertEquals("photos/cat (1)~+.jpg", key.path);
+        assertEquals("photos/cat%20(1)~+.jpg", key.encodedPath);
+        assertEquals("/photos/cat%20%281%29~%2B.jpg", key.canonicalUri);
+    }
+
+    @Test
+    void prependsBucket() {
+        S3Key key = S3Key.of("a b.jpg");
+
+        assertEquals("bucketuno/a%20b.jpg", key.encodedPathInBucket("bucketuno"));
+        assertEquals("/bucketuno/a%20b.jpg", key.canonicalUriInBucket("bucketuno"));
+    }
+
+    @Test
+    void keepsEmptyKeyAtRoot() {
+        S3Key key = S3Key.of("/ /");
+
+        assertEquals(0, key.segments.size());
+        assertEquals("", key.path);
+        assertEquals("/", key.canonicalUri);
+        assertEquals("bucketuno", key.encodedPathInBucket("bucketuno"));
+        assertEquals("/bucketuno", key.canonicalUriInBucket("bucketuno"));
+    }
+
+    @Test
+    void keepsPercentSignsLiteral() {
+        assertEquals("100%25/a%2525.jpg", S3Key.of("100%/a%25.jpg").encodedPath);
+    }
+}
@@ -0,0 +1,78 @@
+package com.widen.urlbuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * Tests for SigV4 signing key derivation and caching.
+ */
+class SigV4Test {
+
+    private static final String SECRET = "wJalrXUtnFEMI/K7MDENG+bPxRfiCYEXAMPLEKEY";
+
+    private final S3Credentials credentials = new S3Credentials("AKIDEXAMPLE", SECRET);
+
+    private static long epochSecond(String instant) {
+        return Instant.parse(instant).getEpochSecond();
+    }
+
+    @Test
+    void derivesDocumentedSigningKey() throws Exception {
+        // https://docs.aws.amazon.com/IAM/latest/UserGuide/reference_sigv-create-signed-request.html
+        byte[] expectedKey = hex("c4afb1cc5771d871763a393e44b703571b55cc28424d1a5e86da6ed3c154a4b9");
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(expectedKey, "HmacSHA256"));
+        byte[] data = "string to sign".getBytes(StandardCharsets.UTF_8);
+
+        HmacKey key = SigV4.signingKey(credentials, epochSecond("2015-08-30T12:36:00Z"), "us-east-1", "iam");
+
+        assertArrayEquals(mac.doFinal(data), key.sign(data));
+    }
+
+    @Test
+    void cachesKeyForTheUtcDay() {
+        HmacKey morning = SigV4.signingKey(credentials, epochSecond("2015-08-30T00:00:00Z"), "us-east-1", "s3");
+        HmacKey evening = SigV4.signingKey(credentials, epochSecond("2015-08-30T23:59:59Z"), "us-east-1", "s3");
+
+        assertSame(morning, evening);
+    }
+
+    @Test
+    void rotatesKeyAtUtcMidnight() {
+        HmacKey before = SigV4.signingKey(credentials, epochSecond("2015-08-30T23:59:59Z"), "eu-west-1", "s3");
+        HmacKey after = SigV4.signingKey(credentials, epochSecond("2015-08-31T00:00:00Z"), "eu-west-1", "s3");
+
+        assertNotSame(before, after);
+    }
+
+    @Test
+    void keysAreScopedToRegion() {
+        long now = epochSecond("2015-08-30T12:00:00Z");
+
+        assertNotSame(SigV4.signingKey(credentials, now, "us-east-1", "s3"), SigV4.signingKey(credentials, now, "us-west-2", "s3"));
+    }
+
+    @Test
+    void formatsAmzDate() {
+        assertEquals("20130524T000000Z", SigV4.amzDate(epochSecond("2013-05-24T00:00:00Z")));
+        assertEquals("19991231T235959Z", SigV4.amzDate(epochSecond("1999-12-31T23:59:59Z")));
+    }
+
+    private static byte[] hex(String hex) {
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+        }
+        return bytes;
+    }
+}
@@ -13,6 +13,9 @@
  */
 package com.widen.urlbuilder;
 
+import java.util.Arrays;
+import java.util.Collections;
+
 import org.junit.jupiter.api.Test;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -56,4 +59,15 @@ class UrlBuilderTest
         String url = new UrlBuilder("my.host.com", "foo/bar/baz.html").withFragment("chapter/1").toString();
         assertEquals("http://my.host.com/foo/bar/baz.html#chapter/1", url);
     }
+
+    @Test
+    void appendsToSuppliedSegmentsAfterEncoderChange()
+    {
+        UrlBuilder builder = new UrlBuilder("my.host.com", null)
+            .withPathSegments(Collections.unmodifiableList(Arrays.asList("foo", "bar")), "foo/bar")
+            .usingPathEncoder(new PathSegmentEncoder());
+
+        assertEquals("http://my.host.com/foo/bar/baz", builder.addPathSegment("baz").toString());
+        assertEquals("http://my.host.com/top/foo/bar/baz", builder.addPrefixedPathSegment("top").toString());
+    }
 }
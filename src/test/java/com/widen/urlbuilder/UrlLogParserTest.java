@@ -0,0 +1,173 @@
+package com.widen.urlbuilder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for chunked, parallel parsing of newline-delimited URL files.
+ */
+class UrlLogParserTest {
+
+    private ForkJoinPool pool;
+
+    private Path file;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        pool = new ForkJoinPool(4);
+        file = Files.createTempFile("urls", ".log");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        pool.shutdown();
+        Files.deleteIfExists(file);
+    }
+
+    private static String lines(int count) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            sb.append("https://cdn.example.com/assets/").append(i).append(".jpg?w=").append(i % 7).append('\n');
+        }
+        return sb.toString();
+    }
+
+    @Test
+    void parsesEveryLineAcrossManySmallChunks() throws IOException {
+        Files.write(file, lines(5000).getBytes(StandardCharsets.US_ASCII));
+        Map<String, String> seen = new ConcurrentHashMap<>();
+
+        long count = new UrlLogParser()
+            .usingPool(pool)
+            .withChunkSize(1000)
+            .parse(file, (offset, url) -> seen.put(url.getPathSegments().get(1), url.getQueryString().get("w")));
+
+        assertEquals(5000, count);
+        assertEquals(5000, seen.size());
+        assertEquals("3", seen.get("10.jpg"));
+        assertEquals("1", seen.get("4999.jpg"));
+    }
+
+    @Test
+    void chunkSmallerThanALineStillAlignsOnLineBoundaries() throws IOException {
+        Files.write(file, lines(200).getBytes(StandardCharsets.US_ASCII));
+        List<String> hosts = Collections.synchronizedList(new ArrayList<>());
+
+        long count = new UrlLogParser().usingPool(pool).withChunkSize(3).parse(file, (offset, url) -> hosts.add(url.getHostname()));
+
+        assertEquals(200, count);
+        assertEquals(Collections.nCopies(200, "cdn.example.com"), hosts);
+    }
+
+    @Test
+    void skipsBlankAndHeaderLinesAndTrims() throws IOException {
+        String input = "#Version: 1.0\r\n\r\n  /foo?a=1\t\r\n\n/bar\r\nhttp://h/baz";
+        Files.write(file, input.getBytes(StandardCharsets.US_ASCII));
+        Map<Long, String> seen = new ConcurrentHashMap<>();
+
+        long count = new UrlLogParser().usingPool(pool).parse(file, (offset, url) -> seen.put(offset, url.toString()));
+
+        assertEquals(3, count);
+        assertEquals("/foo?a=1", seen.get((long) input.indexOf("/foo")));
+        assertEquals("/bar", seen.get((long) input.indexOf("/bar")));
+        assertEquals("http://h/baz", seen.get((long) input.indexOf("http")));
+    }
+
+    @Test
+    void reportsUnparsableLines() throws IOException {
+        Files.write(file, "/ok\nnot a url\n/fine\n".getBytes(StandardCharsets.US_ASCII));
+        List<Long> errors = Collections.synchronizedList(new ArrayList<>());
+
+        long count = new UrlLogParser().usingPool(pool).parse(file, new UrlLogParser.Handler() {
+            @Override
+            public void onUrl(long offset, RawUrl url) {
+            }
+
+            @Override
+            public void onError(long offset, UrlBuilder.NonParsableUrl e) {
+                errors.add(offset);
+            }
+        });
+
+        assertEquals(2, count);
+        assertEquals(Collections.singletonList(4L), errors);
+    }
+
+    @Test
+    void parsesHeapAndDirectBuffers() {
+        byte[] bytes = lines(1000).getBytes(StandardCharsets.US_ASCII);
+        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+        direct.put(bytes).flip();
+
+        UrlLogParser parser = new UrlLogParser().usingPool(pool).withChunkSize(512);
+
+        assertEquals(1000, parser.parse(ByteBuffer.wrap(bytes), (offset, url) -> { }));
+        assertEquals(1000, parser.parse(direct, (offset, url) -> { }));
+        assertEquals(0, direct.position());
+    }
+
+    @Test
+    void heapBufferOffsetsAreRelativeToPosition() {
+        byte[] bytes = "xx/a\n/b\n".getBytes(StandardCharsets.US_ASCII);
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        buffer.position(2);
+        Map<String, Long> offsets = new ConcurrentHashMap<>();
+
+        new UrlLogParser().usingPool(pool).parse(buffer, (offset, url) -> offsets.put(url.toString(), offset));
+
+        assertEquals(0L, (long) offsets.get("/a"));
+        assertEquals(3L, (long) offsets.get("/b"));
+    }
+
+    @Test
+    void handlerExceptionAbortsParse() throws IOException {
+        Files.write(file, lines(10).getBytes(StandardCharsets.US_ASCII));
+
+        assertThrows(IllegalStateException.class, () -> new UrlLogParser().usingPool(pool).parse(file, (offset, url) -> {
+            throw new IllegalStateException("stop");
+        }));
+    }
+
+    @Test
+    void handlerExceptionStopsRemainingChunks() throws IOException {
+        Files.write(file, lines(5000).getBytes(StandardCharsets.US_ASCII));
+        AtomicInteger delivered = new AtomicInteger();
+
+        assertThrows(IllegalStateException.class, () -> new UrlLogParser().usingPool(pool).withChunkSize(100).parse(file, (offset, url) -> {
+            delivered.incrementAndGet();
+            throw new IllegalStateException("stop");
+        }));
+
+        // At most one line per pool thread, plus the joining caller, can be in flight when the first failure is seen
+        assertTrue(delivered.get() <= pool.getParallelism() + 1, "delivered " + delivered.get());
+    }
+
+    @Test
+    void missingFileThrowsIOException() {
+        assertThrows(NoSuchFileException.class, () -> new UrlLogParser().parse(file.resolveSibling("missing-" + file.getFileName()), (offset, url) -> { }));
+    }
+
+    @Test
+    void emptyFileParsesNothing() throws IOException {
+        assertEquals(0, new UrlLogParser().parse(file, (offset, url) -> { }));
+    }
+}
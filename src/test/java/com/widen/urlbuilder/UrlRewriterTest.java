@@ -0,0 +1,140 @@
+package com.widen.urlbuilder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * Tests for span-preserving URL rewriting.
+ */
+class UrlRewriterTest {
+
+    private final UrlRewriter migration = new UrlRewriter()
+        .replaceScheme("http", "https")
+        .replaceHost("my-bucket.s3.amazonaws.com", "d1234.cloudfront.net")
+        .replacePathPrefix("/legacy/assets", "/assets")
+        .removeParameter("AWSAccessKeyId", "Signature", "Expires");
+
+    @Test
+    void appliesEveryRule() {
+        assertEquals(
+            "https://d1234.cloudfront.net/assets/cat.jpg?w=100",
+            migration.rewrite("http://my-bucket.s3.amazonaws.com/legacy/assets/cat.jpg?Expires=1&AWSAccessKeyId=A&w=100&Signature=x%3D"));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+        "https://other.example.com/images/cat.jpg?w=100",
+        "/images/a%2Fb%20c.jpg?x=%41&y",
+        "not a url",
+        ""
+    })
+    void returnsSameInstanceWhenNothingChanges(String url) {
+        assertSame(url, migration.rewrite(url));
+    }
+
+    @Test
+    void preservesEscapesPortsUserInfoAndFragments() {
+        assertEquals(
+            "https://user@d1234.cloudfront.net:8443/assets/%E4%B8%AD%2f?b=%7e&a=1#frag?x",
+            migration.rewrite("http://user@MY-BUCKET.s3.amazonaws.com:8443/legacy/assets/%E4%B8%AD%2f?b=%7e&Signature=1&a=1#frag?x"));
+    }
+
+    @Test
+    void pathPrefixMatchesWholeSegmentsOnly() {
+        UrlRewriter rewriter = new UrlRewriter().replacePathPrefix("img", "/static/img");
+
+        assertEquals("/static/img/a.jpg", rewriter.rewrite("/img/a.jpg"));
+        assertEquals("/static/img", rewriter.rewrite("/img"));
+        assertEquals("/images/a.jpg", rewriter.rewrite("/images/a.jpg"));
+    }
+
+    @Test
+    void pathPrefixCanBeStripped() {
+        UrlRewriter rewriter = new UrlRewriter().replacePathPrefix("/bucket/", "/");
+
+        assertEquals("http://h/a/b.jpg", rewriter.rewrite("http://h/bucket/a/b.jpg"));
+        assertEquals("http://h/", rewriter.rewrite("http://h/bucket"));
+    }
+
+    @Test
+    void pathPrefixIsEncoded() {
+        UrlRewriter rewriter = new UrlRewriter().replacePathPrefix("/my files", "/shared docs");
+
+        assertEquals("/shared%20docs/a.txt", rewriter.rewrite("/my%20files/a.txt"));
+    }
+
+    @Test
+    void removesEncodedKeysAndDropsEmptyQuery() {
+        UrlRewriter rewriter = new UrlRewriter().removeParameter("a b");
+
+        assertEquals("/x#f", rewriter.rewrite("/x?a%20b=1&a%20b#f"));
+        assertEquals("/x?c=2", rewriter.rewrite("/x?a%20b=1&&c=2"));
+    }
+
+    @Test
+    void addsParametersAfterExisting() {
+        UrlRewriter rewriter = new UrlRewriter().addParameter("v", "2 0").addParameter("flag", null);
+
+        assertEquals("/x?a=1&v=2%200&flag", rewriter.rewrite("/x?a=1"));
+        assertEquals("http://h?v=2%200&flag#top", rewriter.rewrite("http://h#top"));
+    }
+
+    @Test
+    void schemeChangeOnlyWhenMatched() {
+        UrlRewriter rewriter = new UrlRewriter().replaceScheme("HTTP", "https");
+
+        assertEquals("https://h/a", rewriter.rewrite("http://h/a"));
+        assertEquals("ftp://h/a", rewriter.rewrite("ftp://h/a"));
+    }
+
+    @Test
+    void rewritesReaderLineByLine() throws IOException {
+        StringWriter out = new StringWriter();
+
+        long changed = migration.rewrite(new StringReader(
+            "http://my-bucket.s3.amazonaws.com/a.jpg\r\n"
+                + "junk line\n"
+                + "\n"
+                + "https://other/a.jpg?Expires=1"), out);
+
+        assertEquals(2, changed);
+        assertEquals("https://d1234.cloudfront.net/a.jpg\r\njunk line\n\nhttps://other/a.jpg", out.toString());
+    }
+
+    @Test
+    void copiesOverlongLinesUnchanged() throws IOException {
+        StringBuilder longUrl = new StringBuilder("http://my-bucket.s3.amazonaws.com/");
+        for (int i = 0; i < 20000; i++) {
+            longUrl.append('a');
+        }
+        String input = longUrl + "\nhttp://my-bucket.s3.amazonaws.com/b\n";
+        StringWriter out = new StringWriter();
+
+        long changed = new UrlRewriter().withMaxLineLength(100).replaceHost("my-bucket.s3.amazonaws.com", "cdn").rewrite(new StringReader(input), out);
+
+        assertEquals(1, changed);
+        assertEquals(longUrl + "\nhttp://cdn/b\n", out.toString());
+    }
+
+    @Test
+    void rewritesBytesExactly() throws IOException {
+        byte[] input = "http://my-bucket.s3.amazonaws.com/été?Expires=1\n/raw/ÿ\n".getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        migration.rewrite(new ByteArrayInputStream(input), out);
+
+        assertArrayEquals("https://d1234.cloudfront.net/été\n/raw/ÿ\n".getBytes(StandardCharsets.UTF_8), out.toByteArray());
+    }
+}
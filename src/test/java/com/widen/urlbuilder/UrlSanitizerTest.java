@@ -0,0 +1,93 @@
+package com.widen.urlbuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * Tests for lenient, single-pass URL sanitizing.
+ */
+class UrlSanitizerTest {
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+        "https://example.com/foo/bar?a=1&b=2#frag",
+        "https://user:pw@[::1]:8080/a%20b?q=x%2By+z",
+        "/images/cat.jpg?w=100",
+        "//cdn.example.com/a/b/",
+        "mailto:someone@example.com",
+        "/a;b=c/d!$'()*,?x=/?&y=@:#/?"
+    })
+    void validUrlsAreReturnedAsIs(String url) {
+        assertSame(url, UrlSanitizer.sanitize(url));
+    }
+
+    @Test
+    void escapesSpacesAndKeepsExistingEscapes() {
+        assertEquals(
+            "https://example.com/my%20file%20(1).pdf?q=50%25%20off&x=caf%C3%A9",
+            UrlSanitizer.sanitize("https://example.com/my file%20(1).pdf?q=50% off&x=café"));
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+        "/100%,            /100%25",
+        "/a%2,             /a%252",
+        "/a%zz,            /a%25zz",
+        "/a%2F,            /a%2F",
+        "/a|b,             /a%7Cb",
+        "/{x}^`\\,         /%7Bx%7D%5E%60%5C",
+        "/a?q=<b>,         /a?q=%3Cb%3E",
+        "/a#x#y,           /a#x%23y",
+        "/a[0],            /a%5B0%5D",
+        "/a\"b,            /a%22b"
+    })
+    void escapesOnlyInvalidCharacters(String input, String expected) {
+        assertEquals(expected, UrlSanitizer.sanitize(input));
+    }
+
+    @Test
+    void bracketsAreAllowedInAuthorityOnly() {
+        assertEquals("http://[::1]/%5Bx%5D", UrlSanitizer.sanitize("http://[::1]/[x]"));
+    }
+
+    @Test
+    void encodesSupplementaryCharactersAsUtf8() {
+        assertEquals("/%F0%9F%98%80", UrlSanitizer.sanitize("/😀"));
+        assertEquals("/%3F", UrlSanitizer.sanitize("/\uD83D"));
+    }
+
+    @Test
+    void escapesControlCharacters() {
+        assertEquals("/a%09b%0Ac", UrlSanitizer.sanitize("/a\tb\nc"));
+    }
+
+    @Test
+    void trimsSurroundingWhitespace() {
+        assertEquals("http://h/a%20b", UrlSanitizer.sanitize("  http://h/a b \n"));
+        assertEquals("http://h/", UrlSanitizer.sanitize(" http://h/ "));
+    }
+
+    @Test
+    void resultParsesAndDecodesBackToInput() {
+        byte[] bytes = UrlSanitizer.sanitize("http://example.com/a b/ü?k=v w").getBytes(StandardCharsets.US_ASCII);
+        RawUrl url = RawUrl.parse(bytes, 0, bytes.length);
+
+        assertEquals(Arrays.asList("a b", "ü"), url.getPathSegments());
+        assertEquals("v w", url.getQueryString().get("k"));
+    }
+
+    @Test
+    void nullAndEmpty() {
+        assertNull(UrlSanitizer.sanitize(null));
+        assertEquals("", UrlSanitizer.sanitize(""));
+    }
+}